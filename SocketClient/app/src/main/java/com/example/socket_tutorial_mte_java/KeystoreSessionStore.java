@@ -0,0 +1,134 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+
+//---------------------------------------------------------------------------------------
+// KeystoreSessionStore is the SessionStore of the app. Values are encrypted with AES-GCM
+// using a key which lives in the Android Keystore and never leaves it, and are then kept
+// in the app's private SharedPreferences as "IV + ciphertext", Base64 encoded.
+//---------------------------------------------------------------------------------------
+class KeystoreSessionStore implements SessionStore {
+
+  private static final String KEYSTORE = "AndroidKeyStore";
+  private static final String KEY_ALIAS = "MteSessionStore";
+  private static final String PREFS_NAME = "mte_sessions";
+  private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+  private static final int IV_SIZE = 12;
+  private static final int TAG_BITS = 128;
+
+  private final String TAG = this.getClass().getSimpleName();
+  private final SharedPreferences prefs;
+  private SecretKey key;
+
+
+  KeystoreSessionStore(Context context) {
+    prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+  }
+
+
+  @Override
+  public void put(String name, byte[] value) {
+    try {
+      Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+      cipher.init(Cipher.ENCRYPT_MODE, getKey());
+      byte[] encrypted = cipher.doFinal(value);
+      ByteBuffer stored = ByteBuffer.allocate(IV_SIZE + encrypted.length);
+      stored.put(cipher.getIV(), 0, IV_SIZE);
+      stored.put(encrypted);
+      prefs.edit().putString(name, Base64.encodeToString(stored.array(), Base64.NO_WRAP)).apply();
+    } catch (GeneralSecurityException | IOException e) {
+      if (BuildConfig.DEBUG)
+        Log.d(TAG, "put(): encryption failed, " + e.getMessage());
+    }
+  }
+
+
+  @Override
+  public byte[] get(String name) {
+    String value = prefs.getString(name, null);
+    if (value == null)
+      return null;
+    try {
+      byte[] stored = Base64.decode(value, Base64.NO_WRAP);
+      Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+      cipher.init(Cipher.DECRYPT_MODE, getKey(), new GCMParameterSpec(TAG_BITS, stored, 0, IV_SIZE));
+      return cipher.doFinal(stored, IV_SIZE, stored.length - IV_SIZE);
+    } catch (GeneralSecurityException | IOException | IllegalArgumentException e) {
+      if (BuildConfig.DEBUG)
+        Log.d(TAG, "get(): decryption failed, " + e.getMessage());
+      return null;
+    }
+  }
+
+
+  @Override
+  public void remove(String name) {
+    prefs.edit().remove(name).apply();
+  }
+
+
+  //-----------------------------------------------------------------
+  // getKey() fetches our key from the Android Keystore, creating it
+  // the very first time.
+  //-----------------------------------------------------------------
+  private synchronized SecretKey getKey() throws GeneralSecurityException, IOException {
+    if (key != null)
+      return key;
+    KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+    keyStore.load(null);
+    if (keyStore.containsAlias(KEY_ALIAS)) {
+      key = (SecretKey) keyStore.getKey(KEY_ALIAS, null);
+    } else {
+      KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+      keyGenerator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+              KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+          .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+          .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+          .build());
+      key = keyGenerator.generateKey();
+    }
+    return key;
+  }
+}
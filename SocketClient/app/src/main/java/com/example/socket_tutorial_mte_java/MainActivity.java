@@ -43,7 +43,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 
@@ -52,7 +52,7 @@ public class MainActivity extends AppCompatActivity implements SocketCallback {
   private final String TAG = this.getClass().getSimpleName();
   private static final int SETUP_DIALOG = 100;
   private MyApplication myApp;
-  enum CommStatus {Offline, Opening, Connected, Secured, Wait4Answer}
+  enum CommStatus {Offline, Opening, Connected, Secured, Wait4Answer, Reconnecting}
   CommStatus commStatus;
 
   @SuppressLint("ClickableViewAccessibility")
@@ -97,7 +97,7 @@ public class MainActivity extends AppCompatActivity implements SocketCallback {
     if (!myApp.isCommOpen()) {
       // Run the communication setup dialog
       Intent i = new Intent(this, SetupDialog.class);
-      MyApplication.SetupParams setupParams = myApp.getSetupParams();
+      SecureSession.SetupParams setupParams = myApp.getSetupParams();
       i.putExtra("ipAddress", setupParams.ipAddress);
       i.putExtra("port", setupParams.port);
       //noinspection deprecation
@@ -105,6 +105,7 @@ public class MainActivity extends AppCompatActivity implements SocketCallback {
     } else {
       // Communication is already open,
       // so lets run the MTE setup.
+      commStatus = CommStatus.Connected;
       if (!myApp.setupMTE(null))
         init(false);
     }
@@ -147,7 +148,7 @@ public class MainActivity extends AppCompatActivity implements SocketCallback {
   protected void onActivityResult(int requestCode, int resultCode, Intent data) {
     super.onActivityResult(requestCode, resultCode, data);
     if ((requestCode == SETUP_DIALOG) && (resultCode == RESULT_OK)) {
-      MyApplication.SetupParams setupParams = myApp.getSetupParams();
+      SecureSession.SetupParams setupParams = myApp.getSetupParams();
       setupParams.ipAddress = data.getStringExtra("ipAddress");
       setupParams.port = data.getIntExtra("port", setupParams.port);
       commStatus = CommStatus.Opening;
@@ -174,37 +175,50 @@ public class MainActivity extends AppCompatActivity implements SocketCallback {
 
 
   public void sendDataClicked(View view) {
-    if (!view.isEnabled())
+    if (!view.isEnabled() || myApp.isPipelineFull())
       return;
     if (BuildConfig.DEBUG)
       Log.d(TAG, "sendDataClicked() Enter");
     findViewById(R.id.userInput).clearFocus();  // just take the cursor away from userInput
-    // Encode the plaintext
-    EditText userInput = findViewById(R.id.userInput);
-    byte[] encoded = myApp.encodeData(userInput.getText().toString().getBytes(StandardCharsets.UTF_8));
-    // Check the status and update the Encoder text field
+    // Clear the fields of the previous message
     TextView tv = findViewById(R.id.textViewRecvd);
     tv.setText("");
     tv = findViewById(R.id.textViewDec);
     tv.setText("");
-    tv = findViewById(R.id.textViewEnc);
-    if (encoded == null) {
+    // Encode and send the plaintext. Both happen in the background,
+    // sendRequest() returns right away and requestSent() will be
+    // called with the result. If the send queue is full, the message
+    // is not sent and the user has to try again later.
+    EditText userInput = findViewById(R.id.userInput);
+    commStatus = CommStatus.Wait4Answer;
+    myApp.sendRequest(userInput.getText().toString().getBytes(StandardCharsets.UTF_8),
+                      this::requestSent);
+    if (BuildConfig.DEBUG)
+      Log.d(TAG, "sendDataClicked() Exit");
+  }
+
+
+  private void requestSent(SecureSession.Request request) {
+    // Check the status and update the Encoder text field
+    TextView tv = findViewById(R.id.textViewEnc);
+    if ((request == null) || (request.encoded == null)) {
       tv.setBackgroundColor(getColor(R.color.red));
-      tv.setText(R.string.enc_no_encode);
-      if (BuildConfig.DEBUG)
-        Log.d(TAG, "sendDataClicked() Exit");
-      return;
+      tv.setText((request == null) ? R.string.send_busy : R.string.enc_no_encode);
+      if (myApp.requestsInFlight() == 0)
+        commStatus = CommStatus.Secured;
+      findViewById(R.id.button).setEnabled(true);
     } else {
       // We take the "encoded" byte array and convert it to a Base64 string
       // so we can show it here for demonstration purposes.
       tv.setBackgroundColor(getColor(R.color.green));
-      tv.setText(Base64.encodeToString(encoded, Base64.NO_WRAP));
+      tv.setText(Base64.encodeToString(request.encoded, Base64.NO_WRAP));
     }
-    commStatus = CommStatus.Wait4Answer;
-    myApp.sendToServer('m', encoded, MyApplication.ReceiveMode.WAIT_MESSAGE);
-    view.setEnabled(false);
-    if (BuildConfig.DEBUG)
-      Log.d(TAG, "sendDataClicked() Exit");
+    //----------------------------------------------------------
+    // More requests may be sent while we are waiting for answers
+    // until the pipeline window is full.
+    //----------------------------------------------------------
+    if (myApp.isPipelineFull())
+      findViewById(R.id.button).setEnabled(false);
   }
 
 
@@ -252,25 +266,36 @@ public class MainActivity extends AppCompatActivity implements SocketCallback {
         userInput.setText("ping");
         sendDataClicked(userInput);
         break;
+      case Secured:
       case Wait4Answer:
-        // Try to decode the response
-        byte[] decoded = myApp.decodeData(Arrays.copyOfRange(data, 1, data.length));
-        // check the result and update the fields
-        // We take the "data" byte array and convert it to a Base64 string
-        // so we can show it here for demonstration purposes.
-        TextView tv = findViewById(R.id.textViewRecvd);
-        tv.setText(Base64.encodeToString(data, Base64.NO_WRAP));
-        tv = findViewById(R.id.textViewDec);
-        if (decoded == null) {
-          tv.setBackgroundColor(getColor(R.color.red));
-          tv.setText(R.string.dec_no_decode);
+        //---------------------------------------------------------
+        // The connection has been lost; the session will reconnect
+        // by itself (see SetupParams.autoReconnect).
+        //---------------------------------------------------------
+        s = new String(data);
+        if (s.equals("Reconnecting")) {
+          commStatus = CommStatus.Reconnecting;
+          findViewById(R.id.button).setEnabled(false);
+          Toast.makeText(this, R.string.reconnecting, Toast.LENGTH_SHORT).show();
+        }
+        else if (s.equals("Error")) {
+          // The session is gone and will not come back by itself.
+          commStatus = CommStatus.Offline;
+          init(false);
+        }
+        break;
+      case Reconnecting:
+        s = new String(data);
+        if (s.equals("Ready")) {
+          // Unanswered requests have been sent again, their answers are still to come.
+          commStatus = (myApp.requestsInFlight() > 0) ? CommStatus.Wait4Answer
+                                                      : CommStatus.Secured;
+          findViewById(R.id.button).setEnabled(!myApp.isPipelineFull());
+          if (BuildConfig.DEBUG)
+            Log.d(TAG, "answerFromServer(): communication secured again");
         } else {
-          tv.setBackgroundColor(getColor(R.color.green));
-          tv.setText(new String(decoded));
+          init(false);
         }
-        commStatus = CommStatus.Secured;
-        findViewById(R.id.userInput).setEnabled(true);
-        findViewById(R.id.button).setEnabled(true);
         break;
       default:
         if (BuildConfig.DEBUG)
@@ -279,4 +304,58 @@ public class MainActivity extends AppCompatActivity implements SocketCallback {
     }
     Log.d(TAG, "answerFromServer() Exit");
   }
+
+
+  @Override
+  public void replyFromServer(long requestId, InboundFrame frame, byte[] decoded) {
+    if (BuildConfig.DEBUG)
+      Log.d(TAG, "replyFromServer() Enter, request #" + requestId);
+    // The response has already been decoded, in the order in which
+    // it was received. Check the result and update the fields.
+    // We take the received payload and convert it to a Base64 string
+    // so we can show it here for demonstration purposes.
+    TextView tv = findViewById(R.id.textViewRecvd);
+    tv.setText(Base64.encodeToString(frame.array(), frame.payloadOffset(),
+                                     frame.payloadLength(), Base64.NO_WRAP));
+    frame.release();
+    tv = findViewById(R.id.textViewDec);
+    if (decoded == null) {
+      tv.setBackgroundColor(getColor(R.color.red));
+      tv.setText(R.string.dec_no_decode);
+    } else {
+      tv.setBackgroundColor(getColor(R.color.green));
+      tv.setText(new String(decoded));
+    }
+    if (myApp.requestsInFlight() == 0)
+      commStatus = CommStatus.Secured;
+    findViewById(R.id.userInput).setEnabled(true);
+    findViewById(R.id.button).setEnabled(true);
+    if (BuildConfig.DEBUG)
+      Log.d(TAG, "replyFromServer() Exit");
+  }
+
+
+  //---------------------------------------------------------------------
+  // Replies which came in within one display frame arrive here together.
+  // The views only ever show the last one, so they are updated once per
+  // batch instead of once per reply.
+  //---------------------------------------------------------------------
+  @Override
+  public void repliesFromServer(List<Reply> replies) {
+    if (BuildConfig.DEBUG)
+      Log.d(TAG, "repliesFromServer(): " + replies.size() + " replies");
+    for (int i = 0; i < replies.size() - 1; i++)
+      replies.get(i).frame.release();
+    Reply last = replies.get(replies.size() - 1);
+    replyFromServer(last.requestId, last.frame, last.decoded);
+  }
+
+
+  @Override
+  public void messagesFromServer(List<byte[]> messages) {
+    // This demo does not send any messages (see MyApplication.sendMessage()),
+    // so there is nothing to show; we just log what we got.
+    if (BuildConfig.DEBUG)
+      Log.d(TAG, "messagesFromServer(): " + messages.size() + " message(s) received");
+  }
 }
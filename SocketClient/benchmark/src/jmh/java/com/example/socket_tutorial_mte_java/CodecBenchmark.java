@@ -0,0 +1,147 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+//---------------------------------------------------------------------------------------
+// CodecBenchmark measures SecureSession.encodeData() and decodeData() for several payload
+// sizes, on a session secured against the ReferenceServer. The data to decode is encoded
+// by the server's Encoder of the same connection, a batch at a time, outside of the
+// measurement.
+//---------------------------------------------------------------------------------------
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+  private static final int DECODE_BATCH = 64;
+
+
+  @State(Scope.Thread)
+  public static abstract class Secured {
+    @Param({"16", "256", "4096", "65536"})
+    public int payloadSize;
+
+    ReferenceServer server;
+    SessionManager manager;
+    SecureSession session;
+    byte[] payload;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+      server = new ReferenceServer();
+      manager = new SessionManager();
+      session = LoadClient.openSecured(manager, server.getPort(), false);
+      payload = new byte[payloadSize];
+      new Random(payloadSize).nextBytes(payload);
+      opened();
+    }
+
+    void opened() {
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+      manager.closeAll();
+      server.close();
+    }
+  }
+
+
+  @State(Scope.Thread)
+  public static class Encoding extends Secured {
+    byte[] out;
+
+    @Override
+    void opened() {
+      out = new byte[session.getEncodedSize(payloadSize)];
+    }
+  }
+
+
+  @State(Scope.Thread)
+  public static class Decoding extends Secured {
+    final byte[][] encoded = new byte[DECODE_BATCH][];
+
+    @Setup(Level.Invocation)
+    public void encodeBatch() {
+      ReferenceServer.Connection connection = server.lastConnection();
+      for (int i = 0; i < DECODE_BATCH; i++)
+        encoded[i] = connection.encode(payload);
+    }
+  }
+
+
+  @Benchmark
+  public byte[] encodeData(Encoding state) {
+    return state.session.encodeData(state.payload);
+  }
+
+
+  @Benchmark
+  public int encodeDataIntoBuffer(Encoding state) {
+    return state.session.encodeData(state.payload, 0, state.payloadSize, state.out, 0);
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(DECODE_BATCH)
+  public void decodeData(Decoding state, Blackhole blackhole) {
+    for (byte[] data : state.encoded)
+      blackhole.consume(state.session.decodeData(data));
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(DECODE_BATCH)
+  public void decodeDataInPlace(Decoding state, Blackhole blackhole) {
+    for (byte[] data : state.encoded)
+      blackhole.consume(state.session.decodeData(data, 0, data.length));
+  }
+}
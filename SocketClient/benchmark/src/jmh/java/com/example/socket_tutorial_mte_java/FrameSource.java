@@ -0,0 +1,94 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.InputStream;
+
+
+//---------------------------------------------------------------------------------------
+// FrameSource is an endless input stream of one and the same frame, for a FrameReader to
+// read from. It only hands out as many frames as it has been allowed to (see allow()),
+// and blocks until it is allowed more, so the reader never runs ahead of a benchmark.
+//---------------------------------------------------------------------------------------
+class FrameSource extends InputStream {
+
+  private final byte[] frame;
+  private int pos;
+  private long bytesAllowed;
+  private boolean closed;
+
+
+  FrameSource(int type, byte[] payload) {
+    frame = new byte[5 + payload.length];
+    frame[0] = (byte) (payload.length >>> 24);
+    frame[1] = (byte) (payload.length >>> 16);
+    frame[2] = (byte) (payload.length >>> 8);
+    frame[3] = (byte) payload.length;
+    frame[4] = (byte) type;
+    System.arraycopy(payload, 0, frame, 5, payload.length);
+  }
+
+
+  synchronized void allow(int frames) {
+    bytesAllowed += (long) frames * frame.length;
+    notifyAll();
+  }
+
+
+  @Override
+  public int read() {
+    byte[] b = new byte[1];
+    return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xFF;
+  }
+
+
+  @Override
+  public synchronized int read(byte[] b, int off, int len) {
+    while ((bytesAllowed == 0) && !closed) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return -1;
+      }
+    }
+    if (closed)
+      return -1;
+    int n = (int) Math.min(len, Math.min(bytesAllowed, frame.length - pos));
+    System.arraycopy(frame, pos, b, off, n);
+    pos = (pos + n) % frame.length;
+    bytesAllowed -= n;
+    return n;
+  }
+
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+}
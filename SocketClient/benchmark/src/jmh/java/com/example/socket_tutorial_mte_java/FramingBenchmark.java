@@ -0,0 +1,182 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+//---------------------------------------------------------------------------------------
+// FramingBenchmark measures the length + type framing on its own, without a socket: the
+// FrameWriter writes to a stream which throws everything away, the FrameReader reads
+// from a FrameSource. Both run their own thread just like on a connection, so every
+// operation includes the hand-over between the threads; a batch of frames is sent or
+// read per invocation, and the benchmark waits until all of them are through.
+//---------------------------------------------------------------------------------------
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FramingBenchmark {
+
+  private static final int BATCH = 64;
+
+
+  @State(Scope.Thread)
+  public static class Writing {
+    @Param({"16", "1024", "16384"})
+    public int payloadSize;
+
+    FrameWriter writer;
+    byte[] payload;
+    final Semaphore batchSent = new Semaphore(0);
+    final FrameTransport.SendCallback lastFrameSent = success -> batchSent.release();
+
+    @Setup(Level.Trial)
+    public void start() {
+      writer = new FrameWriter(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+      }, BATCH);
+      writer.start();
+      payload = new byte[payloadSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+      writer.stop();
+    }
+  }
+
+
+  @State(Scope.Thread)
+  public static class Reading {
+    @Param({"16", "1024", "16384"})
+    public int payloadSize;
+
+    FrameSource source;
+    FrameReader reader;
+    final Semaphore framesRead = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void start() {
+      FrameDispatcher dispatcher = new FrameDispatcher();
+      dispatcher.setDefaultHandler(frame -> {
+        frame.release();
+        framesRead.release();
+      });
+      source = new FrameSource('m', new byte[payloadSize]);
+      reader = new FrameReader(source, dispatcher);
+      reader.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+      reader.stop();
+      source.close();
+    }
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void writeFrames(Writing state) throws InterruptedException {
+    for (int i = 0; i < BATCH; i++) {
+      FrameTransport.SendCallback callback = (i == BATCH - 1) ? state.lastFrameSent : null;
+      while (!state.writer.send(0, 'm', state.payload, callback))
+        Thread.yield();
+    }
+    state.batchSent.acquire();
+  }
+
+
+  //------------------------------------------------------------------
+  // writeCopiedFrames() and writePooledFrames() compare the two ways
+  // encoded data gets to the writer: in a fresh array per frame, as
+  // encodeData(byte[]) returns it, or in an array of the shared
+  // FrameBufferPool, which the writer gives back once the frame has
+  // been written (see SecureSession.encodeAndSend()). Run with the gc
+  // profiler and compare gc.alloc.rate.norm.
+  //------------------------------------------------------------------
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void writeCopiedFrames(Writing state) throws InterruptedException {
+    for (int i = 0; i < BATCH; i++) {
+      FrameTransport.SendCallback callback = (i == BATCH - 1) ? state.lastFrameSent : null;
+      byte[] frame = Arrays.copyOf(state.payload, state.payloadSize);
+      while (!state.writer.send(0, 'm', frame, callback))
+        Thread.yield();
+    }
+    state.batchSent.acquire();
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void writePooledFrames(Writing state) throws InterruptedException {
+    FrameBufferPool framePool = FrameBufferPool.getShared();
+    for (int i = 0; i < BATCH; i++) {
+      FrameTransport.SendCallback callback = (i == BATCH - 1) ? state.lastFrameSent : null;
+      byte[] buffer = framePool.acquire(state.payloadSize);
+      System.arraycopy(state.payload, 0, buffer, 0, state.payloadSize);
+      while (!state.writer.sendPooled(0, 'm', buffer, state.payloadSize, callback))
+        Thread.yield();
+    }
+    state.batchSent.acquire();
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void readFrames(Reading state) throws InterruptedException {
+    state.source.allow(BATCH);
+    state.framesRead.acquire(BATCH);
+  }
+}
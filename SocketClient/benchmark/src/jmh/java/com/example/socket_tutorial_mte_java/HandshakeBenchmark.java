@@ -0,0 +1,87 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+//---------------------------------------------------------------------------------------
+// HandshakeBenchmark measures a whole session setup against the ReferenceServer: opening
+// the socket, setupMTE() with the four values and "ACK" (or the compact handshake) and
+// closing the session again. The EcdhKeyPool is not started, so both key pairs are
+// created during the setup, which is the worst case for the app.
+//---------------------------------------------------------------------------------------
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandshakeBenchmark {
+
+  @Param({"false", "true"})
+  public boolean compactHandshake;
+
+  private ReferenceServer server;
+  private SessionManager manager;
+
+
+  @Setup
+  public void start() throws IOException {
+    server = new ReferenceServer();
+    manager = new SessionManager();
+  }
+
+
+  @TearDown
+  public void stop() throws IOException {
+    manager.closeAll();
+    server.close();
+  }
+
+
+  @Benchmark
+  public SecureSession setupMTE() throws IOException {
+    SecureSession session = LoadClient.openSecured(manager, server.getPort(), compactHandshake);
+    manager.closeSession(session);
+    return session;
+  }
+}
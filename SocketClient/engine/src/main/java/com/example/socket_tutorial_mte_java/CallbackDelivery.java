@@ -0,0 +1,205 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+//---------------------------------------------------------------------------------------
+// CallbackDelivery hands the callbacks of a session to the app without flooding the
+// callback executor (on Android, the message queue of the main UI thread) with one task
+// per received frame. Callbacks are queued, and a single delivery task runs all of them
+// at once, in the order they were posted:
+//  - If no delivery is on its way, the delivery task is handed to the executor right
+//    away, so a single reply to an idle session does not wait at all. It takes whatever
+//    has been queued until the executor gets to it.
+//  - Callbacks which are queued while a delivery runs wait for the next one, which is
+//    handed to the executor "intervalMs" later (see SetupParams.deliveryInterval), so
+//    everything that comes in within that interval - e.g. one display frame - is
+//    delivered together. With an interval of 0, it is handed over right away.
+//  - Two or more replies which follow each other in the queue go to
+//    SocketCallback.repliesFromServer() in a single call.
+//  - There is never more than one delivery task on its way, so callbacks run one after
+//    the other even on an executor with several threads.
+//  - A callback of the app which throws does not keep the others from being delivered:
+//    they hold pooled frames which would never be released otherwise. The exception is
+//    thrown again once the delivery is done.
+//---------------------------------------------------------------------------------------
+class CallbackDelivery {
+
+  private static final ScheduledExecutorService timer =
+      Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "MteDelivery");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private static class Pending {
+    final Runnable callback;
+    final SocketCallback.Reply reply;
+    final long postedAt;
+
+    Pending(Runnable callback, SocketCallback.Reply reply, long postedAt) {
+      this.callback = callback;
+      this.reply = reply;
+      this.postedAt = postedAt;
+    }
+  }
+
+  private final Executor executor;
+  private final long intervalMs;
+  private final SocketCallback socketCallback;
+  private final SessionMetrics metrics;
+  private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+  private boolean deliveryScheduled;
+
+
+  CallbackDelivery(Executor executor, long intervalMs, SocketCallback socketCallback,
+                   SessionMetrics metrics) {
+    this.executor = executor;
+    this.intervalMs = intervalMs;
+    this.socketCallback = socketCallback;
+    this.metrics = metrics;
+  }
+
+
+  void post(Runnable callback) {
+    queue(new Pending(callback, null, metrics.callbackPosted()));
+  }
+
+
+  //------------------------------------------------------------------
+  // postReply() queues a reply for SocketCallback.repliesFromServer().
+  //------------------------------------------------------------------
+  void postReply(long requestId, InboundFrame frame, byte[] decoded) {
+    queue(new Pending(null, new SocketCallback.Reply(requestId, frame, decoded),
+                      metrics.callbackPosted()));
+  }
+
+
+  private synchronized void queue(Pending callback) {
+    pending.addLast(callback);
+    if (!deliveryScheduled) {
+      deliveryScheduled = true;
+      executor.execute(this::deliver);
+    }
+  }
+
+
+  //------------------------------------------------------------------
+  // scheduleNext() hands the next delivery to the executor once the
+  // interval is over, so more callbacks can join it until then.
+  //------------------------------------------------------------------
+  private void scheduleNext() {
+    if (intervalMs > 0)
+      timer.schedule(() -> executor.execute(this::deliver), intervalMs, TimeUnit.MILLISECONDS);
+    else
+      executor.execute(this::deliver);
+  }
+
+
+  //------------------------------------------------------------------
+  // deliver() runs on the callback executor. Callbacks which are
+  // queued while it runs are left for the next delivery.
+  //------------------------------------------------------------------
+  private void deliver() {
+    long start = System.nanoTime();
+    List<Pending> callbacks;
+    synchronized (this) {
+      callbacks = new ArrayList<>(pending);
+      pending.clear();
+    }
+    RuntimeException failure = null;
+    try {
+      List<SocketCallback.Reply> replies = new ArrayList<>();
+      for (Pending callback : callbacks) {
+        metrics.callbackRun(callback.postedAt);
+        if (callback.reply != null) {
+          replies.add(callback.reply);
+          continue;
+        }
+        failure = deliverReplies(replies, failure);
+        try {
+          callback.callback.run();
+        } catch (RuntimeException e) {
+          failure = callbackFailed(failure, e);
+        }
+      }
+      failure = deliverReplies(replies, failure);
+    } finally {
+      metrics.deliveryDone(start);
+      synchronized (this) {
+        if (pending.isEmpty())
+          deliveryScheduled = false;
+        else
+          scheduleNext();
+      }
+    }
+    if (failure != null)
+      throw failure;
+  }
+
+
+  private RuntimeException deliverReplies(List<SocketCallback.Reply> replies,
+                                          RuntimeException failure) {
+    if (replies.isEmpty())
+      return failure;
+    try {
+      if (replies.size() == 1) {
+        SocketCallback.Reply reply = replies.get(0);
+        socketCallback.replyFromServer(reply.requestId, reply.frame, reply.decoded);
+      } else {
+        socketCallback.repliesFromServer(new ArrayList<>(replies));
+      }
+    } catch (RuntimeException e) {
+      failure = callbackFailed(failure, e);
+    } finally {
+      replies.clear();
+    }
+    return failure;
+  }
+
+
+  //------------------------------------------------------------------
+  // callbackFailed() keeps the first exception of a delivery; later
+  // ones are added to it as suppressed.
+  //------------------------------------------------------------------
+  private static RuntimeException callbackFailed(RuntimeException first, RuntimeException e) {
+    if (EngineLog.isEnabled())
+      EngineLog.d("CallbackDelivery", "deliver(): callback failed: " + e);
+    if (first == null)
+      return e;
+    first.addSuppressed(e);
+    return first;
+  }
+}
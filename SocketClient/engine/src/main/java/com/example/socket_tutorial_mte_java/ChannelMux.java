@@ -0,0 +1,419 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+//---------------------------------------------------------------------------------------
+// ChannelMux lets several logical channels share one connection. Each channel is a
+// FrameTransport of its own with its own send queue and its own FrameDispatcher, so a
+// SecureSession runs on a channel exactly like it runs on a connection. Channel 0 is the
+// connection's original channel; its frames go over the wire unchanged. Frames of all
+// other channels are wrapped in a CHANNEL_FRAME (see FrameTransport).
+//
+// The send queues of the channels are served round robin, one frame per channel and
+// turn, and only TRANSPORT_WINDOW frames are handed to the transport at a time. A channel
+// sending a large stream therefore never holds up the other channels for more than a few
+// frames. Within a channel, frames are sent and dispatched in order.
+// Control frames (see sendControl()) skip the send queues and the window altogether.
+//
+// There are no frames to open or close a channel. A channel exists for the server as
+// soon as its first frame (the start of the MTE setup) arrives, and channel numbers are
+// never reused on a connection, so a late frame can never reach the wrong session. A
+// closed channel simply falls silent; the server keeps its MTE state until the connection
+// is closed, which costs a few KB per channel on a connection which is kept open for a
+// long time with many short-lived channels. When the connection goes down - it fails, or
+// channel 0 is stopped - every channel still open is told through its StopListener.
+//---------------------------------------------------------------------------------------
+class ChannelMux {
+
+  //-------------------------------------------------------------
+  // Max. number of frames of the channels waiting in the
+  // transport's own queue. The transport gets CONTROL_ROOM places
+  // more than that for the control frames.
+  //-------------------------------------------------------------
+  static final int TRANSPORT_WINDOW = 16;
+  static final int CONTROL_ROOM = 4;
+  static final int TRANSPORT_QUEUE_CAPACITY = TRANSPORT_WINDOW + CONTROL_ROOM;
+  private static final int MAX_CHANNEL = 0xFFFF;
+
+  private static class Frame {
+    final int header;
+    final byte[] data;
+    final int length;
+    final boolean pooled;
+    final FrameTransport.SendCallback callback;
+
+    Frame(int header, byte[] data, int length, boolean pooled,
+          FrameTransport.SendCallback callback) {
+      this.header = header;
+      this.data = data;
+      this.length = length;
+      this.pooled = pooled;
+      this.callback = callback;
+    }
+  }
+
+  private final FrameDispatcher dispatcher = new FrameDispatcher();
+  private final ConcurrentHashMap<Integer, Channel> channels = new ConcurrentHashMap<>();
+  private final AtomicInteger lastChannel = new AtomicInteger();
+  private FrameTransport transport;
+  //-----------------------------------------------------------
+  // The send queues of all channels, the round robin order of
+  // the channels with frames to send and the number of frames
+  // handed to the transport are guarded by this lock.
+  //-----------------------------------------------------------
+  private final Object lock = new Object();
+  private final ArrayDeque<Channel> ready = new ArrayDeque<>();
+  private int framesInTransport;
+
+
+  ChannelMux() {
+    dispatcher.setHandler(FrameTransport.CHANNEL_FRAME, this::channelFrameReceived);
+    dispatcher.setDefaultHandler(frame -> dispatchTo(0, frame));
+  }
+
+
+  //-----------------------------------------------------------------
+  // The transport of the connection has to be created with this
+  // dispatcher and then be attached to the ChannelMux.
+  //-----------------------------------------------------------------
+  FrameDispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+
+  void attach(FrameTransport transport) {
+    this.transport = transport;
+    transport.setStopListener(e -> {
+      for (Channel channel : channels.values())
+        channel.transportStopped(e);
+    });
+  }
+
+
+  //-----------------------------------------------------------------
+  // Returns the next unused channel number, or -1 if all have been
+  // used up. Channel numbers are never reused on a connection.
+  //-----------------------------------------------------------------
+  int nextChannelNumber() {
+    int number = lastChannel.incrementAndGet();
+    return (number <= MAX_CHANNEL) ? number : -1;
+  }
+
+
+  //-----------------------------------------------------------------
+  // openChannel() returns the FrameTransport of the given channel.
+  // Starting channel 0 starts the connection's transport, stopping
+  // channel 0 stops it and with it all other channels; any other
+  // channel only comes and goes.
+  //-----------------------------------------------------------------
+  Channel openChannel(int number, FrameDispatcher channelDispatcher, int queueCapacity) {
+    return new Channel(number, channelDispatcher, queueCapacity);
+  }
+
+
+  //-----------------------------------------------------------------
+  // sendControl() hands a control frame of channel 0, e.g. a PING of
+  // the Heartbeat, straight to the transport, ahead of all frames
+  // waiting in the send queues of the channels. It is not counted in
+  // the transport window, so it only waits for the few frames already
+  // handed to the transport, and only fails if the transport has not
+  // written anything for a long time (or is not running).
+  //-----------------------------------------------------------------
+  boolean sendControl(int header, byte[] data) {
+    FrameTransport connection = transport;
+    return (connection != null) && connection.send(0, header, data, null);
+  }
+
+
+  private void channelFrameReceived(InboundFrame frame) {
+    if (frame.payloadLength() < 3) {
+      frame.release();
+      return;
+    }
+    int number = frame.channel();
+    dispatchTo(number, frame.unwrap());
+  }
+
+
+  private void dispatchTo(int number, InboundFrame frame) {
+    Channel channel = channels.get(number);
+    if (channel == null)
+      frame.release();
+    else
+      channel.dispatcher.dispatch(frame);
+  }
+
+
+  //--------------------------------------------------------------
+  // pump() hands frames to the transport, taking one frame of each
+  // ready channel in turn, until the transport window is full.
+  // Senders waiting for room (see Channel.awaitRoom()) are woken
+  // up. The caller must hold the lock.
+  //--------------------------------------------------------------
+  private void pump() {
+    if ((framesInTransport < TRANSPORT_WINDOW) && !ready.isEmpty())
+      lock.notifyAll();
+    while ((framesInTransport < TRANSPORT_WINDOW) && !ready.isEmpty()) {
+      Channel channel = ready.poll();
+      Frame frame = channel.queue.poll();
+      if (!channel.queue.isEmpty())
+        ready.add(channel);
+      framesInTransport++;
+      FrameTransport.SendCallback sent = success -> {
+        synchronized (lock) {
+          framesInTransport--;
+          channel.unsent--;
+          pump();
+        }
+        if (frame.callback != null)
+          frame.callback.sendCompleted(success);
+      };
+      boolean queued = frame.pooled
+          ? transport.sendPooled(channel.number, frame.header, frame.data, frame.length, sent)
+          : transport.send(channel.number, frame.header, frame.data, sent);
+      if (!queued) {
+        framesInTransport--;
+        channel.unsent--;
+        if (frame.pooled)
+          FrameBufferPool.getShared().release(frame.data);
+        if (frame.callback != null)
+          frame.callback.sendCompleted(false);
+      }
+    }
+  }
+
+
+  //--------------------------------------------------------------
+  // A Channel is the FrameTransport of one channel. Besides the
+  // frames in its send queue, it keeps track of the frames which
+  // have been handed to the transport but not written yet.
+  //
+  // A place in the send queue can be reserved before a frame is
+  // encoded (see reserve()), so that an encoded frame can never be
+  // turned away because the queue filled up while it was being
+  // encoded: once the Encoder has run, the frame MUST be sent, or
+  // the server's Decoder falls out of step.
+  //--------------------------------------------------------------
+  class Channel implements FrameTransport {
+    final int number;
+    final FrameDispatcher dispatcher;
+    final int queueCapacity;
+    final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    // Guarded by the lock:
+    private int unsent;     // Queued or handed to the transport.
+    private int reserved;   // Places in the queue set aside by reserve().
+    private StopListener stopListener;
+    private volatile boolean running;
+
+    Channel(int number, FrameDispatcher dispatcher, int queueCapacity) {
+      this.number = number;
+      this.dispatcher = dispatcher;
+      this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public void setStopListener(StopListener listener) {
+      stopListener = listener;
+    }
+
+    @Override
+    public void start() {
+      running = true;
+      channels.put(number, this);
+      if (number == 0)
+        transport.start();
+    }
+
+    @Override
+    public void stop() {
+      if (!running)
+        return;
+      running = false;
+      channels.remove(number, this);
+      failPendingFrames();
+      if (number == 0) {
+        transport.stop();
+        //-------------------------------------------------------
+        // The transport does not tell its StopListener if it is
+        // stopped on purpose, so the other channels are told here.
+        //-------------------------------------------------------
+        IOException closed = new IOException("connection closed");
+        for (Channel channel : channels.values())
+          channel.transportStopped(closed);
+      }
+    }
+
+    //-----------------------------------------------------------
+    // The channel number is added by the ChannelMux; for a channel
+    // itself, only its own channel 0 exists.
+    //-----------------------------------------------------------
+    @Override
+    public boolean send(int channel, int header, byte[] data, SendCallback callback) {
+      return queue(channel, new Frame(header, data, data.length, false, callback), false);
+    }
+
+    @Override
+    public boolean sendPooled(int channel, int header, byte[] buffer, int length,
+                              SendCallback callback) {
+      return queue(channel, new Frame(header, buffer, length, true, callback), false);
+    }
+
+    //-----------------------------------------------------------
+    // reserve() sets aside a place in the send queue for the next
+    // frame sent with sendReserved() or sendPooledReserved(); no
+    // other frame can take it. It returns false if the queue is
+    // full or the channel is not running. A place which is not
+    // going to be used must be given back with cancelReservation().
+    //-----------------------------------------------------------
+    boolean reserve() {
+      synchronized (lock) {
+        if (!running || (queue.size() + reserved >= queueCapacity))
+          return false;
+        reserved++;
+        return true;
+      }
+    }
+
+    void cancelReservation() {
+      synchronized (lock) {
+        if (reserved > 0)
+          reserved--;
+        lock.notifyAll();
+      }
+    }
+
+    //-----------------------------------------------------------
+    // A frame sent into a reserved place is only turned away if
+    // the channel stopped in the meantime.
+    //-----------------------------------------------------------
+    boolean sendReserved(int header, byte[] data, SendCallback callback) {
+      return queue(0, new Frame(header, data, data.length, false, callback), true);
+    }
+
+    boolean sendPooledReserved(int header, byte[] buffer, int length, SendCallback callback) {
+      return queue(0, new Frame(header, buffer, length, true, callback), true);
+    }
+
+    private boolean queue(int channel, Frame frame, boolean intoReserved) {
+      if (channel != 0)
+        throw new IllegalArgumentException("channels cannot be nested");
+      synchronized (lock) {
+        if (intoReserved && (reserved > 0))
+          reserved--;
+        else
+          intoReserved = false;
+        if (!running || (!intoReserved && (queue.size() + reserved >= queueCapacity)))
+          return false;
+        queue.add(frame);
+        unsent++;
+        if (queue.size() == 1)
+          ready.add(this);
+        pump();
+      }
+      return true;
+    }
+
+    //-----------------------------------------------------------
+    // Reserved places count as taken.
+    //-----------------------------------------------------------
+    @Override
+    public int pendingFrames() {
+      synchronized (lock) {
+        return queue.size() + reserved;
+      }
+    }
+
+    //-----------------------------------------------------------
+    // awaitRoom() blocks until there is a free place in the send
+    // queue. It returns false if the channel stopped.
+    //-----------------------------------------------------------
+    boolean awaitRoom() throws InterruptedException {
+      synchronized (lock) {
+        while (running && (queue.size() + reserved >= queueCapacity))
+          lock.wait();
+        return running;
+      }
+    }
+
+    //-----------------------------------------------------------
+    // awaitReservation() waits until a place could be reserved, see
+    // reserve(). It returns false if the channel stopped.
+    //-----------------------------------------------------------
+    boolean awaitReservation() throws InterruptedException {
+      while (!reserve()) {
+        if (!awaitRoom())
+          return false;
+      }
+      return true;
+    }
+
+    //-----------------------------------------------------------
+    // unsentFrames() returns the number of frames which have not
+    // been written to the connection yet, including those already
+    // handed to the transport.
+    //-----------------------------------------------------------
+    int unsentFrames() {
+      synchronized (lock) {
+        return unsent;
+      }
+    }
+
+    void transportStopped(IOException e) {
+      running = false;
+      channels.remove(number, this);
+      failPendingFrames();
+      if (stopListener != null)
+        stopListener.transportStopped(e);
+    }
+
+    private void failPendingFrames() {
+      List<Frame> dropped;
+      synchronized (lock) {
+        dropped = new ArrayList<>(queue);
+        unsent -= queue.size();
+        queue.clear();
+        reserved = 0;
+        ready.remove(this);
+        lock.notifyAll();
+      }
+      for (Frame frame : dropped) {
+        if (frame.pooled)
+          FrameBufferPool.getShared().release(frame.data);
+        if (frame.callback != null)
+          frame.callback.sendCompleted(false);
+      }
+    }
+  }
+}
@@ -0,0 +1,48 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.IOException;
+
+
+//---------------------------------------------------------------------------------------
+// A Compressor shrinks data before it is MTE encoded; encoded data looks random and can
+// not be compressed any more. The compressor of a session is set in SetupParams and offered
+// to the server by its name during setupMTE(); data is only compressed once the server has
+// accepted it. Compressed frames have the COMPRESSED bit set in their type byte.
+// A Compressor may be shared by several sessions, so it has to be thread safe.
+//---------------------------------------------------------------------------------------
+public interface Compressor {
+
+  int COMPRESSED = 0x80;
+
+  String name();
+
+  byte[] compress(byte[] data, int off, int length);
+
+  byte[] decompress(byte[] data, int off, int length) throws IOException;
+}
@@ -0,0 +1,248 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+//---------------------------------------------------------------------------------------
+// A ConnectionSupervisor brings the connection of a session back after it has been lost
+// (see SetupParams.autoReconnect). It keeps trying with exponential backoff: before the
+// n-th attempt it waits BASE_DELAY_MS * 2^n, capped at MAX_DELAY_MS, half of which is
+// random jitter so that many clients dropped at the same moment do not all come back at
+// the same moment. After "maxAttempts" failed attempts it gives up.
+// An attempt only counts as successful once the session is secured again (see secured());
+// if the MTE setup fails (see setupFailed()), the connection breaks down again or the
+// setup does not finish within "setupTimeoutMs", the connection of the attempt is
+// abandoned and the next attempt follows.
+// The attempts of all sessions run on a single background thread.
+//---------------------------------------------------------------------------------------
+class ConnectionSupervisor {
+
+  static final long BASE_DELAY_MS = 500;
+  static final long MAX_DELAY_MS = 30000;
+
+  //-----------------------------------------------------------------
+  // A Reconnector makes one attempt to connect and returns whether it
+  // succeeded and the MTE setup has been started; it is run on the
+  // supervisor's thread and may block. abandon() drops the connection
+  // of an attempt whose setup did not succeed.
+  //-----------------------------------------------------------------
+  interface Reconnector {
+    boolean reconnect();
+    void abandon();
+  }
+
+  private static final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "MteReconnect");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final String TAG;
+  private final int maxAttempts;
+  private final long setupTimeoutMs;
+  private final Reconnector reconnector;
+  private final Runnable gaveUp;
+  private boolean reconnecting;
+  private boolean stopped;
+  private boolean awaitingSetup;
+  private int attempt;
+  private ScheduledFuture<?> nextAttempt;
+  private ScheduledFuture<?> setupTimer;
+
+
+  ConnectionSupervisor(String tag, int maxAttempts, long setupTimeoutMs,
+                       Reconnector reconnector, Runnable gaveUp) {
+    TAG = tag;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.setupTimeoutMs = setupTimeoutMs;
+    this.reconnector = reconnector;
+    this.gaveUp = gaveUp;
+  }
+
+
+  //------------------------------------------------------------------
+  // connectionLost() starts reconnecting and returns true, unless we
+  // have been stopped. If the connection of an attempt breaks down
+  // before the session is secured, the next attempt follows instead.
+  //------------------------------------------------------------------
+  boolean connectionLost() {
+    int failedAttempt;
+    synchronized (this) {
+      if (stopped)
+        return false;
+      if (!reconnecting) {
+        reconnecting = true;
+        attempt = 0;
+        scheduleAttempt();
+        return true;
+      }
+      failedAttempt = attempt;
+    }
+    attemptFailed(failedAttempt, true);
+    return false;
+  }
+
+
+  //------------------------------------------------------------------
+  // secured() is called once the MTE setup has finished; only then is
+  // the attempt under way a success.
+  //------------------------------------------------------------------
+  synchronized void secured() {
+    if (!awaitingSetup)
+      return;
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "secured(): reconnected after " + attempt + " attempt(s)");
+    awaitingSetup = false;
+    reconnecting = false;
+    cancelSetupTimer();
+  }
+
+
+  //------------------------------------------------------------------
+  // setupFailed() is called if the MTE setup has failed. While we are
+  // reconnecting, the connection of the attempt under way is abandoned
+  // and the next attempt follows; true is returned, so the app is not
+  // told about it. Otherwise false is returned.
+  //------------------------------------------------------------------
+  boolean setupFailed() {
+    int failedAttempt;
+    synchronized (this) {
+      if (!reconnecting)
+        return false;
+      failedAttempt = attempt;
+    }
+    attemptFailed(failedAttempt, true);
+    return true;
+  }
+
+
+  //------------------------------------------------------------------
+  // stop() cancels any pending attempt; the supervisor will not try to
+  // reconnect ever again. An attempt which is running right now is
+  // finished, but its result is ignored.
+  //------------------------------------------------------------------
+  synchronized void stop() {
+    stopped = true;
+    if (nextAttempt != null)
+      nextAttempt.cancel(false);
+    nextAttempt = null;
+    awaitingSetup = false;
+    cancelSetupTimer();
+  }
+
+
+  synchronized boolean isStopped() {
+    return stopped;
+  }
+
+
+  private void scheduleAttempt() {
+    long delay = backoffDelay(attempt++);
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "scheduleAttempt(): attempt #" + attempt + " in " + delay + " ms");
+    nextAttempt = scheduler.schedule(this::runAttempt, delay, TimeUnit.MILLISECONDS);
+  }
+
+
+  private void runAttempt() {
+    int thisAttempt;
+    synchronized (this) {
+      nextAttempt = null;
+      if (stopped)
+        return;
+      //-------------------------------------------------------------
+      // The setup may succeed or fail before reconnect() returns, so
+      // we are waiting for it from now on.
+      //-------------------------------------------------------------
+      awaitingSetup = true;
+      thisAttempt = attempt;
+      setupTimer = scheduler.schedule(() -> setupTimedOut(thisAttempt),
+                                      setupTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+    if (!reconnector.reconnect())
+      attemptFailed(thisAttempt, false);
+  }
+
+
+  private void setupTimedOut(int timedOutAttempt) {
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "setupTimedOut(): attempt #" + timedOutAttempt + " not secured in time");
+    attemptFailed(timedOutAttempt, true);
+  }
+
+
+  //------------------------------------------------------------------
+  // attemptFailed() ends the given attempt, unless it has already been
+  // ended otherwise, and schedules the next one or gives up.
+  //------------------------------------------------------------------
+  private void attemptFailed(int failedAttempt, boolean connected) {
+    synchronized (this) {
+      if (stopped || !awaitingSetup || (attempt != failedAttempt))
+        return;
+      awaitingSetup = false;
+      cancelSetupTimer();
+    }
+    if (connected)
+      reconnector.abandon();
+    synchronized (this) {
+      if (stopped)
+        return;
+      if (attempt < maxAttempts) {
+        scheduleAttempt();
+        return;
+      }
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "attemptFailed(): giving up after " + attempt + " attempt(s)");
+      reconnecting = false;
+    }
+    gaveUp.run();
+  }
+
+
+  private void cancelSetupTimer() {
+    if (setupTimer != null)
+      setupTimer.cancel(false);
+    setupTimer = null;
+  }
+
+
+  //---------------------------------------------------------------
+  // "Equal jitter": a fixed half of the capped exponential delay
+  // plus a random part of up to the same size.
+  //---------------------------------------------------------------
+  static long backoffDelay(int attempt) {
+    long delay = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << Math.min(attempt, 16));
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+}
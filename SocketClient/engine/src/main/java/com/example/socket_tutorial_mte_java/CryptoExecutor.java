@@ -0,0 +1,91 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+//---------------------------------------------------------------------------------------
+// CryptoExecutor runs the MTE and ECDH work of all sessions on a small pool of background
+// threads, so none of it runs on the main UI thread. Every session gets a serial executor
+// of its own (see newSerialExecutor()): the tasks of one session run one after the other
+// in the order they were submitted, as the MTE Encoder and Decoder require, while tasks
+// of different sessions run in parallel.
+//---------------------------------------------------------------------------------------
+class CryptoExecutor {
+
+  private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  private static final AtomicInteger threadCount = new AtomicInteger();
+  private static final ExecutorService pool = Executors.newFixedThreadPool(POOL_SIZE, task -> {
+    Thread thread = new Thread(task, "MteCrypto-" + threadCount.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+
+  private CryptoExecutor() {
+  }
+
+
+  static Executor newSerialExecutor() {
+    return new SerialExecutor();
+  }
+
+
+  //-------------------------------------------------------------------
+  // A SerialExecutor hands at most one task at a time to the pool; the
+  // next task is handed over once the previous one has finished.
+  //-------------------------------------------------------------------
+  private static class SerialExecutor implements Executor {
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private Runnable active;
+
+    @Override
+    public synchronized void execute(Runnable task) {
+      tasks.add(() -> {
+        try {
+          task.run();
+        } finally {
+          scheduleNext();
+        }
+      });
+      if (active == null)
+        scheduleNext();
+    }
+
+    private synchronized void scheduleNext() {
+      active = tasks.poll();
+      if (active != null)
+        pool.execute(active);
+    }
+  }
+}
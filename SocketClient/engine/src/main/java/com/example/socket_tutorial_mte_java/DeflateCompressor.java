@@ -0,0 +1,106 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+//---------------------------------------------------------------------------------------
+// DeflateCompressor is the built-in Compressor: raw Deflate (no zlib header), as provided
+// by java.util.zip. The Deflater and the Inflater are kept and reused for every message.
+//---------------------------------------------------------------------------------------
+public class DeflateCompressor implements Compressor {
+
+  public static final String NAME = "deflate";
+
+  //--------------------------------------------------------------
+  // Decompressed data must not grow beyond this, so that a broken
+  // or malicious frame can not make us run out of memory.
+  //--------------------------------------------------------------
+  private static final int MAX_DECOMPRESSED_SIZE = 16 * 1024 * 1024;
+
+  private final Deflater deflater;
+  private final Inflater inflater = new Inflater(true);
+  private final byte[] compressBuffer = new byte[4096];
+  private final byte[] decompressBuffer = new byte[4096];
+
+
+  public DeflateCompressor() {
+    this(Deflater.DEFAULT_COMPRESSION);
+  }
+
+
+  public DeflateCompressor(int level) {
+    deflater = new Deflater(level, true);
+  }
+
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+
+  @Override
+  public synchronized byte[] compress(byte[] data, int off, int length) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 16);
+    deflater.reset();
+    deflater.setInput(data, off, length);
+    deflater.finish();
+    while (!deflater.finished()) {
+      int bytes = deflater.deflate(compressBuffer);
+      out.write(compressBuffer, 0, bytes);
+    }
+    return out.toByteArray();
+  }
+
+
+  @Override
+  public synchronized byte[] decompress(byte[] data, int off, int length) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(length * 2);
+    inflater.reset();
+    inflater.setInput(data, off, length);
+    try {
+      while (!inflater.finished()) {
+        int bytes = inflater.inflate(decompressBuffer);
+        if ((bytes == 0) && !inflater.finished()
+            && (inflater.needsInput() || inflater.needsDictionary()))
+          throw new IOException("truncated deflate data");
+        out.write(decompressBuffer, 0, bytes);
+        if (out.size() > MAX_DECOMPRESSED_SIZE)
+          throw new IOException("decompressed data too large");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e.getMessage());
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,100 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+//---------------------------------------------------------------------------------------
+// DirectBufferPool hands out direct ByteBuffers of a fixed size. Direct buffers are
+// expensive to allocate but can be read from and written to a SocketChannel without an
+// extra copy, so they are recycled instead of being dropped. The pool is thread safe and
+// may be shared by several connections; at most "maxPooled" idle buffers are kept.
+//---------------------------------------------------------------------------------------
+class DirectBufferPool {
+
+  static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+  private static final int DEFAULT_MAX_POOLED = 16;
+
+  //-----------------------------------------------------------
+  // The pool shared by all connections using the NIO transport.
+  //-----------------------------------------------------------
+  private static final DirectBufferPool shared =
+      new DirectBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+
+  private final int bufferSize;
+  private final int maxPooled;
+  private final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+
+  DirectBufferPool(int bufferSize, int maxPooled) {
+    this.bufferSize = bufferSize;
+    this.maxPooled = maxPooled;
+  }
+
+
+  static DirectBufferPool getShared() {
+    return shared;
+  }
+
+
+  int getBufferSize() {
+    return bufferSize;
+  }
+
+
+  //---------------------------------------------------------
+  // acquire() returns a cleared buffer, either from the pool
+  // or freshly allocated if the pool is empty.
+  //---------------------------------------------------------
+  ByteBuffer acquire() {
+    ByteBuffer buffer = idle.poll();
+    if (buffer == null)
+      return ByteBuffer.allocateDirect(bufferSize);
+    idleCount.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+
+  //---------------------------------------------------------------
+  // release() gives a buffer back. The caller must not touch the
+  // buffer any more. Buffers of the wrong size are simply dropped.
+  //---------------------------------------------------------------
+  void release(ByteBuffer buffer) {
+    if ((buffer == null) || !buffer.isDirect() || (buffer.capacity() != bufferSize))
+      return;
+    if (idleCount.incrementAndGet() > maxPooled) {
+      idleCount.decrementAndGet();
+      return;
+    }
+    idle.offer(buffer);
+  }
+}
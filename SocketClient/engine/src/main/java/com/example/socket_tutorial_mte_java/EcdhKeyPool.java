@@ -0,0 +1,224 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import com.eclypses.ecdh.EcdhP256;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+//---------------------------------------------------------------------------------------
+// EcdhKeyPool creates ECDH key pairs ahead of time on a low priority background thread,
+// so that setting up MTE does not have to wait for the key generation. The pool holds at
+// most "capacity" key pairs. If the pool happens to be empty, acquire() simply creates a
+// key pair right away.
+//
+// A key pair is good for ONE shared secret only: EcdhP256.getSharedSecret() wipes the
+// private key. Every key pair is therefore handed out once only (see KeyPair.claim()),
+// and key pairs which have been kept for longer than MAX_KEY_AGE_MS or are still pooled
+// when the pool is stopped are destroyed (see wipe()): both keys are wiped, and nobody
+// can claim them any more.
+//---------------------------------------------------------------------------------------
+class EcdhKeyPool {
+
+  private static final int DEFAULT_CAPACITY = 4;             // Enough for two handshakes.
+  private static final long MAX_KEY_AGE_MS = 10 * 60 * 1000;
+  //-----------------------------------------------------------
+  // If creating a key pair fails, the background thread waits
+  // before it tries again, twice as long after every failure.
+  //-----------------------------------------------------------
+  private static final long MIN_RETRY_DELAY_MS = 100;
+  private static final long MAX_RETRY_DELAY_MS = 30 * 1000;
+
+  static class KeyPair {
+    final EcdhP256 ecdh;
+    final byte[] publicKey;
+    final long created;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    KeyPair(EcdhP256 ecdh, byte[] publicKey) {
+      this.ecdh = ecdh;
+      this.publicKey = publicKey;
+      created = System.currentTimeMillis();
+    }
+
+    boolean isExpired() {
+      return System.currentTimeMillis() - created > MAX_KEY_AGE_MS;
+    }
+
+    //--------------------------------------------------------------
+    // claim() returns true for the first caller only: whoever gets
+    // true owns the key pair, to use it or to destroy it.
+    //--------------------------------------------------------------
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+  }
+
+  //------------------------------------------------------
+  // The pool shared by all sessions of the app.
+  //------------------------------------------------------
+  private static final EcdhKeyPool shared = new EcdhKeyPool(DEFAULT_CAPACITY);
+
+  private final int capacity;
+  private final BlockingQueue<KeyPair> keys;
+  private Thread refillThread;
+  private volatile boolean running;
+
+
+  EcdhKeyPool(int capacity) {
+    this.capacity = capacity;
+    keys = new ArrayBlockingQueue<>(capacity);
+  }
+
+
+  static EcdhKeyPool getShared() {
+    return shared;
+  }
+
+
+  synchronized void start() {
+    if (running)
+      return;
+    running = true;
+    refillThread = new Thread(this::refillLoop, "EcdhKeyPool");
+    refillThread.setDaemon(true);
+    refillThread.setPriority(Thread.MIN_PRIORITY);
+    refillThread.start();
+  }
+
+
+  //----------------------------------------------------------------
+  // stop() terminates the background thread and throws away all key
+  // pairs which are still in the pool.
+  //----------------------------------------------------------------
+  synchronized void stop() {
+    if (!running)
+      return;
+    running = false;
+    refillThread.interrupt();
+    refillThread = null;
+    KeyPair pair;
+    while ((pair = keys.poll()) != null)
+      evict(pair);
+  }
+
+
+  //----------------------------------------------------------------
+  // acquire() returns a key pair which nobody else will ever get, or
+  // null if creating a key pair failed. It must be used for a single
+  // shared secret and then dropped.
+  //----------------------------------------------------------------
+  KeyPair acquire() {
+    KeyPair pair;
+    while ((pair = keys.poll()) != null) {
+      if (!pair.claim())
+        continue;
+      if (!pair.isExpired())
+        break;
+      wipe(pair.ecdh, pair.publicKey);
+    }
+    synchronized (this) {
+      notifyAll();   // Wake up the background thread to refill the pool.
+    }
+    if (pair != null)
+      return pair;
+    pair = createKeyPair();
+    if (pair != null)
+      pair.claim();
+    return pair;
+  }
+
+
+  int available() {
+    return keys.size();
+  }
+
+
+  private void refillLoop() {
+    long retryDelay = MIN_RETRY_DELAY_MS;
+    while (running) {
+      KeyPair oldest = keys.peek();
+      if ((oldest != null) && oldest.isExpired() && keys.remove(oldest))
+        evict(oldest);
+      long waitMs = MAX_KEY_AGE_MS;
+      if (keys.size() < capacity) {
+        KeyPair pair = createKeyPair();
+        if (pair != null) {
+          retryDelay = MIN_RETRY_DELAY_MS;
+          if (!running || !keys.offer(pair))
+            evict(pair);
+          continue;
+        }
+        if (EngineLog.isEnabled())
+          EngineLog.d("EcdhKeyPool", "refillLoop(): key pair creation failed, retrying in "
+                                     + retryDelay + " ms");
+        waitMs = retryDelay;
+        retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+      }
+      synchronized (this) {
+        try {
+          wait(waitMs);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+    }
+  }
+
+
+  private static KeyPair createKeyPair() {
+    EcdhP256 ecdh = new EcdhP256();
+    byte[] publicKey = new byte[EcdhP256.SzPublicKey];
+    if (ecdh.createKeyPair(publicKey) != EcdhP256.Success)
+      return null;
+    return new KeyPair(ecdh, publicKey);
+  }
+
+
+  private static void evict(KeyPair pair) {
+    if (pair.claim())
+      wipe(pair.ecdh, pair.publicKey);
+  }
+
+
+  //------------------------------------------------------------------
+  // wipe() destroys a key pair which has not been used: EcdhP256 has
+  // no call to zeroize its private key, but getSharedSecret() wipes it,
+  // so a throw-away secret is computed with our own public key and
+  // zeroized right away. Then the public key is zeroized. Calling
+  // wipe() on a key pair which has already been used does no harm.
+  //------------------------------------------------------------------
+  static void wipe(EcdhP256 ecdh, byte[] publicKey) {
+    byte[] secret = new byte[EcdhP256.SzSecretData];
+    ecdh.getSharedSecret(publicKey, secret);
+    EcdhP256.zeroize(secret);
+    EcdhP256.zeroize(publicKey);
+  }
+}
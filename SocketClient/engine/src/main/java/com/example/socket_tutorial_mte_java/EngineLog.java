@@ -0,0 +1,63 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+//---------------------------------------------------------------------------------------
+// EngineLog is where the engine writes its debug messages to. The engine runs on Android
+// as well as on a plain JVM, so it does not log anywhere by itself: the app plugs in a
+// Logger (on Android, MyApplication passes Log.d() for debug builds). Without a Logger,
+// the messages are not even put together.
+//---------------------------------------------------------------------------------------
+public final class EngineLog {
+
+  public interface Logger {
+    void debug(String tag, String message);
+  }
+
+  private static volatile Logger logger;
+
+
+  private EngineLog() {
+  }
+
+
+  public static void setLogger(Logger newLogger) {
+    logger = newLogger;
+  }
+
+
+  static boolean isEnabled() {
+    return logger != null;
+  }
+
+
+  static void d(String tag, String message) {
+    Logger current = logger;
+    if (current != null)
+      current.debug(tag, message);
+  }
+}
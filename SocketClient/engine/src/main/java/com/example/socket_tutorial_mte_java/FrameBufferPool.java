@@ -0,0 +1,105 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+//---------------------------------------------------------------------------------------
+// FrameBufferPool recycles the byte arrays which received frames are read into. Arrays
+// are handed out in power-of-two size classes from MIN_SIZE up to MAX_SIZE; the array
+// returned by acquire() may therefore be larger than requested. Frames larger than
+// MAX_SIZE get a plain array which is not pooled. The pool is thread safe, since frames
+// are read on the transport's thread but usually released on another thread.
+//---------------------------------------------------------------------------------------
+class FrameBufferPool {
+
+  private static final int MIN_SHIFT = 8;                 // 256 bytes
+  private static final int MAX_SHIFT = 16;                // 64 KiB
+  private static final int MAX_POOLED_PER_CLASS = 32;
+
+  private static final FrameBufferPool shared = new FrameBufferPool();
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final ConcurrentLinkedQueue<byte[]>[] idle =
+      new ConcurrentLinkedQueue[MAX_SHIFT - MIN_SHIFT + 1];
+  private final AtomicInteger[] idleCount = new AtomicInteger[MAX_SHIFT - MIN_SHIFT + 1];
+
+
+  FrameBufferPool() {
+    for (int i = 0; i < idle.length; i++) {
+      idle[i] = new ConcurrentLinkedQueue<>();
+      idleCount[i] = new AtomicInteger();
+    }
+  }
+
+
+  static FrameBufferPool getShared() {
+    return shared;
+  }
+
+
+  byte[] acquire(int size) {
+    int sizeClass = sizeClass(size);
+    if (sizeClass < 0)
+      return new byte[size];
+    byte[] buffer = idle[sizeClass].poll();
+    if (buffer == null)
+      return new byte[1 << (sizeClass + MIN_SHIFT)];
+    idleCount[sizeClass].decrementAndGet();
+    return buffer;
+  }
+
+
+  //-------------------------------------------------------------------
+  // release() gives an array back. The caller must not touch the array
+  // any more. Arrays which do not fit a size class are simply dropped.
+  //-------------------------------------------------------------------
+  void release(byte[] buffer) {
+    int sizeClass = sizeClass(buffer.length);
+    if ((sizeClass < 0) || (buffer.length != (1 << (sizeClass + MIN_SHIFT))))
+      return;
+    if (idleCount[sizeClass].incrementAndGet() > MAX_POOLED_PER_CLASS) {
+      idleCount[sizeClass].decrementAndGet();
+      return;
+    }
+    idle[sizeClass].offer(buffer);
+  }
+
+
+  //-------------------------------------------------------------
+  // Returns the index of the smallest size class holding "size"
+  // bytes, or -1 if "size" is larger than the largest class.
+  //-------------------------------------------------------------
+  private static int sizeClass(int size) {
+    if (size > (1 << MAX_SHIFT))
+      return -1;
+    int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1 << MIN_SHIFT) - 1);
+    return shift - MIN_SHIFT;
+  }
+}
@@ -0,0 +1,79 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+//---------------------------------------------------------------------------------------
+// FrameDispatcher hands each received frame to the handler which has been registered for
+// the frame's type byte. Handlers are called on the transport's thread and take over the
+// InboundFrame, i.e. they (or whoever they pass it on to) must release() it. A handler
+// must not block for long, otherwise the reading of the socket stalls. Frames for which
+// no handler exists are released right here.
+//---------------------------------------------------------------------------------------
+class FrameDispatcher {
+
+  public interface FrameHandler {
+    void frameReceived(InboundFrame frame);
+  }
+
+  private final FrameHandler[] handlers = new FrameHandler[256];
+  private FrameHandler defaultHandler;
+  private SessionMetrics metrics;
+
+
+  //---------------------------------------------------------------
+  // Handlers should be registered before the transport is started.
+  //---------------------------------------------------------------
+  void setHandler(int type, FrameHandler handler) {
+    handlers[type & 0xFF] = handler;
+  }
+
+
+  void setDefaultHandler(FrameHandler handler) {
+    defaultHandler = handler;
+  }
+
+
+  //---------------------------------------------------------------
+  // If set, every frame dispatched is counted there.
+  //---------------------------------------------------------------
+  void setMetrics(SessionMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+
+  void dispatch(InboundFrame frame) {
+    if (metrics != null)
+      metrics.frameReceived(frame.payloadLength());
+    FrameHandler handler = handlers[frame.type() & 0xFF];
+    if (handler == null)
+      handler = defaultHandler;
+    if (handler != null)
+      handler.frameReceived(frame);
+    else
+      frame.release();
+  }
+}
@@ -0,0 +1,118 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+//---------------------------------------------------------------------------------------
+// FrameReader owns the input stream of the socket. One long-lived reader thread runs for
+// the lifetime of the connection, continuously reads frames off the socket (see
+// FrameTransport for the frame layout) and hands them to the FrameDispatcher.
+//---------------------------------------------------------------------------------------
+class FrameReader {
+
+  private final DataInputStream in;
+  private final FrameDispatcher dispatcher;
+  private final FrameBufferPool bufferPool;
+  private final Thread readerThread;
+  private FrameTransport.StopListener stopListener;
+  private volatile boolean running;
+
+
+  FrameReader(InputStream in, FrameDispatcher dispatcher) {
+    //-------------------------------------------------------------
+    // Buffering the socket input saves us one system call for each
+    // length field, type byte and payload.
+    //-------------------------------------------------------------
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    this.dispatcher = dispatcher;
+    bufferPool = FrameBufferPool.getShared();
+    readerThread = new Thread(this::readLoop, "FrameReader");
+  }
+
+
+  void setStopListener(FrameTransport.StopListener listener) {
+    stopListener = listener;
+  }
+
+
+  void start() {
+    running = true;
+    readerThread.start();
+  }
+
+
+  //----------------------------------------------------------------------
+  // stop() only marks the reader as stopped; the reader thread terminates
+  // as soon as the socket gets closed and the pending read fails.
+  //----------------------------------------------------------------------
+  void stop() {
+    running = false;
+  }
+
+
+  private void readLoop() {
+    IOException stopReason = null;
+    try {
+      while (running) {
+        //---------------------------------------------------------------
+        // The default byte order of a DataInputStream is always BIG Endian!
+        // And that is what we want anyway.
+        //---------------------------------------------------------------
+        int length = in.readInt();
+        if ((length < 0) || (length > FrameTransport.MAX_FRAME_LENGTH))
+          throw new IOException("invalid frame length " + length);
+        //---------------------------------------------------------
+        // The frame is read into a pooled buffer which is given back
+        // by whoever consumes the frame.
+        //---------------------------------------------------------
+        byte[] buffer = bufferPool.acquire(length + 1);
+        try {
+          in.readFully(buffer, 0, length + 1);
+        } catch (IOException e) {
+          bufferPool.release(buffer);
+          throw e;
+        }
+        dispatcher.dispatch(new InboundFrame(bufferPool, buffer, length + 1));
+      }
+    } catch (EOFException e) {
+      // The server closed the connection, this is not an error.
+    } catch (IOException e) {
+      stopReason = e;
+    }
+    if (!running)
+      return;
+    running = false;
+    if (stopListener != null)
+      stopListener.transportStopped(stopReason);
+  }
+}
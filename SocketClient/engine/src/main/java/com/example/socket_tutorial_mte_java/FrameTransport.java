@@ -0,0 +1,107 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.IOException;
+
+
+//---------------------------------------------------------------------------------------
+// A FrameTransport carries frames between us and the server. Each frame on the wire looks
+// like this:
+//   4 bytes   length of the payload (BIG Endian), NOT counting the type byte
+//   1 byte    frame type, e.g. '1' - '4', 'A', 'E' (MTE setup) or 'm' (MTE data)
+//   n bytes   payload
+//
+// Several logical channels may share one connection (see ChannelMux). Frames of channel 0
+// are sent exactly as shown above; frames of any other channel are wrapped like this:
+//   4 bytes   length of the payload + 3 (BIG Endian)
+//   1 byte    CHANNEL_FRAME
+//   2 bytes   channel number (BIG Endian)
+//   1 byte    frame type
+//   n bytes   payload
+//
+// There are two implementations which can be selected in SetupParams:
+//   StreamTransport  blocking java.net.Socket streams, one writer and one reader thread
+//   NioTransport     non-blocking SocketChannel, one thread driven by a Selector
+//
+// Received frames are handed to a FrameDispatcher. If the transport stops on its own
+// (the server closed the connection or an I/O error occurred), the StopListener is told.
+// A length field above MAX_FRAME_LENGTH is a protocol error which stops the transport
+// with an IOException, before anything is allocated for the frame.
+//---------------------------------------------------------------------------------------
+interface FrameTransport {
+
+  int CHANNEL_FRAME = 'x';
+
+  //------------------------------------------------------------------
+  // The largest length field accepted from the peer: room for a 16 MB
+  // message (the most a Compressor inflates to) plus the overhead of
+  // MTE and of the channel header.
+  //------------------------------------------------------------------
+  int MAX_FRAME_LENGTH = 16 * 1024 * 1024 + 64 * 1024;
+
+  interface SendCallback {
+    void sendCompleted(boolean success);
+  }
+
+  interface StopListener {
+    void transportStopped(IOException e);
+  }
+
+  void setStopListener(StopListener listener);
+
+  void start();
+
+  void stop();
+
+  //------------------------------------------------------------------
+  // send() queues a frame and never blocks. It returns false if the
+  // transport is not running or its send queue is full; in that case
+  // the callback will never be called.
+  //------------------------------------------------------------------
+  default boolean send(int header, byte[] data, SendCallback callback) {
+    return send(0, header, data, callback);
+  }
+
+  //------------------------------------------------------------------
+  // This variant of send() sends the frame on the given channel; the
+  // transport itself adds the channel header, so the payload is never
+  // copied for that.
+  //------------------------------------------------------------------
+  boolean send(int channel, int header, byte[] data, SendCallback callback);
+
+  //------------------------------------------------------------------
+  // sendPooled() sends the first "length" bytes of "buffer", an array
+  // taken from FrameBufferPool.getShared(). Once the frame has been
+  // written or dropped, the transport gives the array back to the pool,
+  // so the caller must not touch it any more - unless false is
+  // returned, then the array still belongs to the caller.
+  //------------------------------------------------------------------
+  boolean sendPooled(int channel, int header, byte[] buffer, int length, SendCallback callback);
+
+  int pendingFrames();
+}
@@ -0,0 +1,228 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+//---------------------------------------------------------------------------------------
+// FrameWriter owns the output stream of the socket. Callers hand over frames (a header
+// byte plus the payload) which are put into a bounded queue; one long-lived writer thread
+// takes them out of the queue in order and writes them to the socket.
+//
+// send() never blocks. If the queue is full, send() returns false and it is up to the
+// caller to try again later (backpressure). Once a frame has been written - or could not
+// be written - the optional SendCallback is run on the writer thread.
+//
+// The writer never hands a frame header to the socket on its own. Header and payload of
+// a frame are collected in one write buffer, and if more frames are waiting in the queue
+// they are collected as well, so that all of them go out with a single flush (and
+// usually in a single TCP segment) instead of two writes per frame.
+//
+// Frames queued with sendPooled() live in an array of the shared FrameBufferPool, which
+// is given back to the pool once the frame has been written or dropped.
+//---------------------------------------------------------------------------------------
+class FrameWriter {
+
+  private static class Frame {
+    final int channel;
+    final int header;
+    final byte[] data;
+    final int length;
+    final boolean pooled;
+    final FrameTransport.SendCallback callback;
+
+    Frame(int channel, int header, byte[] data, int length, boolean pooled,
+          FrameTransport.SendCallback callback) {
+      this.channel = channel;
+      this.header = header;
+      this.data = data;
+      this.length = length;
+      this.pooled = pooled;
+      this.callback = callback;
+    }
+  }
+
+  //---------------------------------------------------------
+  // An empty frame which is used to wake up the writer thread
+  // when the writer is stopped.
+  //---------------------------------------------------------
+  private static final Frame STOP_FRAME = new Frame(0, 0, new byte[0], 0, false, null);
+
+  //-----------------------------------------------------------
+  // Size of the write buffer and the max. number of frames that
+  // are written with a single flush.
+  //-----------------------------------------------------------
+  private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_FRAMES_PER_FLUSH = 32;
+
+  private final OutputStream out;
+  private final FrameBufferPool framePool = FrameBufferPool.getShared();
+  private final BlockingQueue<Frame> queue;
+  private final Thread writerThread;
+  private volatile boolean running;
+  private FrameTransport.StopListener stopListener;
+
+
+  FrameWriter(OutputStream out, int queueCapacity) {
+    this.out = out;
+    queue = new ArrayBlockingQueue<>(queueCapacity);
+    writerThread = new Thread(this::writeLoop, "FrameWriter");
+  }
+
+
+  //------------------------------------------------------------------
+  // The StopListener is told if the writer stops because writing to
+  // the socket failed; it is not told if the writer is stopped.
+  //------------------------------------------------------------------
+  void setStopListener(FrameTransport.StopListener listener) {
+    stopListener = listener;
+  }
+
+
+  void start() {
+    running = true;
+    writerThread.start();
+  }
+
+
+  //-------------------------------------------------------------------
+  // stop() terminates the writer thread. Frames which are still queued
+  // are dropped and their callbacks are told that sending failed.
+  //-------------------------------------------------------------------
+  void stop() {
+    if (!running)
+      return;
+    running = false;
+    if (!queue.offer(STOP_FRAME))
+      writerThread.interrupt();
+  }
+
+
+  //------------------------------------------------------------------
+  // send() queues a frame for the writer thread. It returns false if
+  // the writer is not running or the queue is full; in that case the
+  // callback will never be called.
+  //------------------------------------------------------------------
+  boolean send(int channel, int header, byte[] data, FrameTransport.SendCallback callback) {
+    if (!running)
+      return false;
+    return queue.offer(new Frame(channel, header, data, data.length, false, callback));
+  }
+
+
+  boolean sendPooled(int channel, int header, byte[] buffer, int length,
+                     FrameTransport.SendCallback callback) {
+    if (!running)
+      return false;
+    return queue.offer(new Frame(channel, header, buffer, length, true, callback));
+  }
+
+
+  int pendingFrames() {
+    return queue.size();
+  }
+
+
+  private void writeLoop() {
+    //---------------------------------------------------------
+    // The write buffer, the header buffer and the batch list are
+    // owned by the writer thread, so they are allocated once and
+    // reused for every frame.
+    //---------------------------------------------------------
+    BufferedOutputStream bufOut = new BufferedOutputStream(out, WRITE_BUFFER_SIZE);
+    ByteBuffer msgHeader = ByteBuffer.allocate(8);
+    // The default byte order of a ByteBuffer in Java is always
+    // BIG Endian, which is what we want - but here we go anyway!
+    msgHeader.order(ByteOrder.BIG_ENDIAN);
+    List<Frame> batch = new ArrayList<>(MAX_FRAMES_PER_FLUSH);
+    IOException stopReason = null;
+    while (running) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        break;
+      }
+      queue.drainTo(batch, MAX_FRAMES_PER_FLUSH - 1);
+      boolean success = true;
+      boolean stop = false;
+      try {
+        for (Frame frame : batch) {
+          if (frame == STOP_FRAME) {
+            stop = true;
+            break;
+          }
+          msgHeader.clear();
+          if (frame.channel == 0) {
+            msgHeader.putInt(frame.length);
+          } else {
+            msgHeader.putInt(frame.length + 3);
+            msgHeader.put((byte) FrameTransport.CHANNEL_FRAME);
+            msgHeader.putShort((short) frame.channel);
+          }
+          msgHeader.put((byte) frame.header);
+          bufOut.write(msgHeader.array(), 0, msgHeader.position());
+          bufOut.write(frame.data, 0, frame.length);
+        }
+        bufOut.flush();
+      } catch (IOException e) {
+        success = false;
+        running = false;
+        stopReason = e;
+      }
+      for (Frame frame : batch) {
+        if (frame.pooled)
+          framePool.release(frame.data);
+        if (frame.callback != null)
+          frame.callback.sendCompleted(success);
+      }
+      batch.clear();
+      if (stop)
+        break;
+    }
+    //-------------------------------------------------
+    // Whatever is left in the queue will never be sent.
+    //-------------------------------------------------
+    Frame frame;
+    while ((frame = queue.poll()) != null) {
+      if (frame.pooled)
+        framePool.release(frame.data);
+      if (frame.callback != null)
+        frame.callback.sendCompleted(false);
+    }
+    if ((stopReason != null) && (stopListener != null))
+      stopListener.transportStopped(stopReason);
+  }
+}
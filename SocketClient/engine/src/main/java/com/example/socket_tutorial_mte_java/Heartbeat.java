@@ -0,0 +1,140 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+//---------------------------------------------------------------------------------------
+// A Heartbeat checks that the connection of a session is still alive and measures the
+// round trip time while doing so. Every "interval" ms it sends a PING frame carrying the
+// time it was sent; the server sends the payload straight back in a PONG frame. Both are
+// control frames of the transport and are not MTE encoded, so they never touch the state
+// of the Encoder or the Decoder. A PING does not wait in the send queue behind the data
+// of the sessions (see ChannelMux.sendControl()), so the measured round trip time is
+// not inflated by our own traffic.
+//
+// If a ping has not been answered within "timeout" ms, the connection is considered dead
+// (e.g. half-open: the peer is gone, but TCP has not noticed yet) and the "dead" callback
+// is run, once. The heartbeats of all sessions run on a single background thread.
+//---------------------------------------------------------------------------------------
+class Heartbeat {
+
+  static final int PING = 'K';
+  static final int PONG = 'k';
+
+  private static final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "MteHeartbeat");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final String TAG;
+  private final ChannelMux mux;
+  private final RttStats rttStats;
+  private final long intervalMs;
+  private final long timeoutNanos;
+  private final Runnable dead;
+  private ScheduledFuture<?> ticker;
+  private long pingSentAt;
+  private boolean pingOutstanding;
+
+
+  Heartbeat(String tag, ChannelMux mux, RttStats rttStats, long intervalMs,
+            long timeoutMs, Runnable dead) {
+    TAG = tag;
+    this.mux = mux;
+    this.rttStats = rttStats;
+    this.intervalMs = intervalMs;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(timeoutMs, intervalMs));
+    this.dead = dead;
+  }
+
+
+  synchronized void start() {
+    if (ticker == null)
+      ticker = scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs,
+                                                TimeUnit.MILLISECONDS);
+  }
+
+
+  synchronized void stop() {
+    if (ticker != null)
+      ticker.cancel(false);
+    ticker = null;
+  }
+
+
+  //------------------------------------------------------------------
+  // pongReceived() is called by the transport's thread for each PONG.
+  //------------------------------------------------------------------
+  void pongReceived(InboundFrame frame) {
+    long now = System.nanoTime();
+    long sentAt = (frame.payloadLength() == 8) ? frame.payload().getLong() : 0;
+    frame.release();
+    synchronized (this) {
+      if (!pingOutstanding || (sentAt != pingSentAt))
+        return;
+      pingOutstanding = false;
+    }
+    rttStats.add(now - sentAt);
+  }
+
+
+  private void tick() {
+    long now = System.nanoTime();
+    synchronized (this) {
+      if (ticker == null)
+        return;
+      if (pingOutstanding) {
+        if (now - pingSentAt < timeoutNanos)
+          return;
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "tick(): no answer to the last ping, connection is dead");
+        stop();
+      } else {
+        //------------------------------------------------------------
+        // A ping which could not be sent counts as sent and missed:
+        // the transport has not written anything for a while, so the
+        // connection is dead unless it recovers before the timeout.
+        //------------------------------------------------------------
+        byte[] ping = ByteBuffer.allocate(8).putLong(now).array();
+        if (!mux.sendControl(PING, ping) && EngineLog.isEnabled())
+          EngineLog.d(TAG, "tick(): ping could not be sent");
+        pingSentAt = now;
+        pingOutstanding = true;
+        return;
+      }
+    }
+    dead.run();
+  }
+}
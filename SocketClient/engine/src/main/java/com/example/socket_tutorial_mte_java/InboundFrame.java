@@ -0,0 +1,127 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+//---------------------------------------------------------------------------------------
+// InboundFrame is a received frame living in a pooled buffer. The payload sits in array()
+// at payloadOffset(), right after the type byte. Consumers work on the payload in place
+// (e.g. MyApplication.decodeData(byte[], int, int)) instead of copying it out, and MUST
+// call release() once they are done so the buffer can be reused. After release() the
+// frame must not be touched any more.
+//---------------------------------------------------------------------------------------
+public class InboundFrame {
+
+  private final FrameBufferPool pool;
+  private final int start;           // Index of the type byte in "buffer".
+  private final int frameLength;     // Type byte plus payload.
+  private byte[] buffer;
+
+
+  InboundFrame(FrameBufferPool pool, byte[] buffer, int frameLength) {
+    this(pool, buffer, 0, frameLength);
+  }
+
+
+  private InboundFrame(FrameBufferPool pool, byte[] buffer, int start, int frameLength) {
+    this.pool = pool;
+    this.buffer = buffer;
+    this.start = start;
+    this.frameLength = frameLength;
+  }
+
+
+  public byte type() {
+    return buffer[start];
+  }
+
+
+  public byte[] array() {
+    return buffer;
+  }
+
+
+  public int payloadOffset() {
+    return start + 1;
+  }
+
+
+  public int payloadLength() {
+    return frameLength - 1;
+  }
+
+
+  //------------------------------------------------------------
+  // payload() returns a view of the payload; no data is copied.
+  //------------------------------------------------------------
+  public ByteBuffer payload() {
+    return ByteBuffer.wrap(buffer, start + 1, frameLength - 1).slice();
+  }
+
+
+  public byte[] copyPayload() {
+    return Arrays.copyOfRange(buffer, start + 1, start + frameLength);
+  }
+
+
+  //--------------------------------------------------------------
+  // copyFrame() returns the type byte followed by the payload, for
+  // consumers which need to hold on to the data.
+  //--------------------------------------------------------------
+  public byte[] copyFrame() {
+    return Arrays.copyOfRange(buffer, start, start + frameLength);
+  }
+
+
+  //------------------------------------------------------------------------
+  // A frame of type FrameTransport.CHANNEL_FRAME carries the frame of some
+  // logical channel (see ChannelMux). channel() returns the channel number;
+  // unwrap() returns the channel's frame, which takes over the buffer, so
+  // the wrapping frame must not be released any more.
+  //------------------------------------------------------------------------
+  int channel() {
+    return ((buffer[start + 1] & 0xFF) << 8) | (buffer[start + 2] & 0xFF);
+  }
+
+
+  InboundFrame unwrap() {
+    InboundFrame inner = new InboundFrame(pool, buffer, start + 3, frameLength - 3);
+    buffer = null;
+    return inner;
+  }
+
+
+  public void release() {
+    if (buffer == null)
+      return;
+    pool.release(buffer);
+    buffer = null;
+  }
+}
@@ -0,0 +1,118 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+//---------------------------------------------------------------------------------------
+// LatencyHistogram counts latencies (in nanoseconds) in buckets of logarithmically
+// growing width, like HdrHistogram does: values below SUB_BUCKETS get a bucket each,
+// above that every power of two is split into SUB_BUCKETS / 2 buckets, so a percentile
+// is never off by more than 1/64 (about 1.6 %), whatever the range of the values.
+// Recording never allocates and never locks, so any number of threads may record at the
+// same time.
+//---------------------------------------------------------------------------------------
+class LatencyHistogram {
+
+  private static final int SUB_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int HALF = SUB_BUCKETS / 2;
+  private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * HALF;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+
+  void record(long value) {
+    if (value < 0)
+      value = 0;
+    counts.incrementAndGet(bucket(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long highest;
+    while (value > (highest = max.get()) && !max.compareAndSet(highest, value))
+      ;
+  }
+
+
+  long count() {
+    return count.get();
+  }
+
+
+  long max() {
+    return max.get();
+  }
+
+
+  double mean() {
+    long n = count.get();
+    return (n == 0) ? 0 : (double) sum.get() / n;
+  }
+
+
+  //------------------------------------------------------------
+  // percentile() returns the given percentile (0 - 100), as the
+  // highest value of the bucket it falls into, or 0 if nothing
+  // has been recorded yet.
+  //------------------------------------------------------------
+  long percentile(double percentile) {
+    long n = count.get();
+    if (n == 0)
+      return 0;
+    long rank = Math.max(1, (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank)
+        return Math.min(highestValue(i), max.get());
+    }
+    return max.get();
+  }
+
+
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS)
+      return (int) value;
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+    return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+  }
+
+
+  private static long highestValue(int bucket) {
+    if (bucket < SUB_BUCKETS)
+      return bucket;
+    int shift = (bucket - SUB_BUCKETS) / HALF + 1;
+    long top = (bucket - SUB_BUCKETS) % HALF + HALF;
+    long highest = ((top + 1) << shift) - 1;
+    return (highest < 0) ? Long.MAX_VALUE : highest;
+  }
+}
@@ -0,0 +1,157 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+//---------------------------------------------------------------------------------------
+// A MessageBatcher packs many small messages into one batch, so that they cost a single
+// MTE encode and a single frame instead of one each. A batch looks like this:
+//   4 bytes   length of the message (BIG Endian)
+//   n bytes   message
+//   ...       and so on, for every message of the batch
+//
+// Messages are collected until the batch holds "maxBytes" or the oldest message has been
+// waiting for "maxDelayMs", whichever comes first. The full batch is then handed to the
+// Sink on the given executor (the session's crypto executor), so add() never encodes or
+// blocks on the calling thread. unpack() splits a received batch up again.
+//---------------------------------------------------------------------------------------
+class MessageBatcher {
+
+  interface Sink {
+    void sendBatch(byte[] batch);
+  }
+
+  private static final ScheduledExecutorService timer =
+      Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "MteBatcher");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final int maxBytes;
+  private final long maxDelayMs;
+  private final Executor executor;
+  private final Sink sink;
+  private final ByteArrayOutputStream pending;
+  private final AtomicInteger batchesQueued = new AtomicInteger();  // Handed to the executor, not sent yet.
+  private ScheduledFuture<?> flushTimer;
+
+
+  MessageBatcher(int maxBytes, long maxDelayMs, Executor executor, Sink sink) {
+    this.maxBytes = maxBytes;
+    this.maxDelayMs = maxDelayMs;
+    this.executor = executor;
+    this.sink = sink;
+    pending = new ByteArrayOutputStream(maxBytes);
+  }
+
+
+  synchronized void add(byte[] message) {
+    //------------------------------------------------------------
+    // A message which would not fit any more goes into the next
+    // batch; a single message larger than "maxBytes" is simply a
+    // batch of its own.
+    //------------------------------------------------------------
+    if ((pending.size() > 0) && (pending.size() + 4 + message.length > maxBytes))
+      flush();
+    pending.write(message.length >>> 24);
+    pending.write(message.length >>> 16);
+    pending.write(message.length >>> 8);
+    pending.write(message.length);
+    pending.write(message, 0, message.length);
+    if (pending.size() >= maxBytes)
+      flush();
+    else if (flushTimer == null)
+      flushTimer = timer.schedule(this::flush, maxDelayMs, TimeUnit.MILLISECONDS);
+  }
+
+
+  //------------------------------------------------------------------
+  // flush() sends whatever has been collected so far right away.
+  //------------------------------------------------------------------
+  synchronized void flush() {
+    if (flushTimer != null)
+      flushTimer.cancel(false);
+    flushTimer = null;
+    if (pending.size() == 0)
+      return;
+    byte[] batch = pending.toByteArray();
+    pending.reset();
+    batchesQueued.incrementAndGet();
+    executor.execute(() -> {
+      try {
+        sink.sendBatch(batch);
+      } finally {
+        batchesQueued.decrementAndGet();
+      }
+    });
+  }
+
+
+  //------------------------------------------------------------------
+  // isIdle() returns true if no message is waiting to be sent, neither
+  // in the batch being collected nor in a batch handed to the Sink.
+  //------------------------------------------------------------------
+  synchronized boolean isIdle() {
+    return (pending.size() == 0) && (batchesQueued.get() == 0);
+  }
+
+
+  //------------------------------------------------------------------
+  // unpack() returns the messages of a batch, or null if the batch is
+  // malformed.
+  //------------------------------------------------------------------
+  static List<byte[]> unpack(byte[] batch) {
+    List<byte[]> messages = new ArrayList<>();
+    ByteBuffer buffer = ByteBuffer.wrap(batch);
+    try {
+      while (buffer.hasRemaining()) {
+        int length = buffer.getInt();
+        if ((length < 0) || (length > buffer.remaining()))
+          return null;
+        byte[] message = new byte[length];
+        buffer.get(message);
+        messages.add(message);
+      }
+    } catch (BufferUnderflowException e) {
+      return null;
+    }
+    return messages;
+  }
+}
@@ -0,0 +1,114 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+//---------------------------------------------------------------------------------------
+// MetricsReporter hands a metrics snapshot of every session of a SessionManager to a Sink
+// at a fixed interval. There are sinks for the EngineLog (logcat in debug builds of the
+// app) and for a file, which gets one line per session and interval appended.
+//---------------------------------------------------------------------------------------
+public class MetricsReporter {
+
+  public interface Sink {
+    void report(List<SessionMetrics.Snapshot> snapshots);
+  }
+
+  private static final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "MteMetrics");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final SessionManager sessionManager;
+  private final Sink sink;
+  private ScheduledFuture<?> ticker;
+
+
+  public MetricsReporter(SessionManager sessionManager, Sink sink) {
+    this.sessionManager = sessionManager;
+    this.sink = sink;
+  }
+
+
+  public synchronized void start(long intervalMs) {
+    stop();
+    ticker = scheduler.scheduleWithFixedDelay(this::report, intervalMs, intervalMs,
+                                              TimeUnit.MILLISECONDS);
+  }
+
+
+  public synchronized void stop() {
+    if (ticker != null) {
+      ticker.cancel(false);
+      ticker = null;
+    }
+  }
+
+
+  private void report() {
+    List<SessionMetrics.Snapshot> snapshots = sessionManager.getMetrics();
+    if (!snapshots.isEmpty())
+      sink.report(snapshots);
+  }
+
+
+  public static Sink logSink() {
+    return snapshots -> {
+      for (SessionMetrics.Snapshot snapshot : snapshots)
+        EngineLog.d("MetricsReporter", snapshot.toString());
+    };
+  }
+
+
+  //------------------------------------------------------------------
+  // The file is opened for every report, so it may be moved away or
+  // deleted at any time; if writing fails, the report is dropped.
+  //------------------------------------------------------------------
+  public static Sink fileSink(File file) {
+    return snapshots -> {
+      try (Writer writer = new FileWriter(file, true)) {
+        for (SessionMetrics.Snapshot snapshot : snapshots)
+          writer.write(snapshot.time + " " + snapshot + "\n");
+      } catch (IOException e) {
+        if (EngineLog.isEnabled())
+          EngineLog.d("MetricsReporter", "fileSink(): " + e.getMessage());
+      }
+    };
+  }
+}
@@ -0,0 +1,140 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import com.eclypses.mte.MteBase;
+import com.eclypses.mte.MteDec;
+import com.eclypses.mte.MteMkeDec;
+import com.eclypses.mte.MteStatus;
+
+
+//---------------------------------------------------------------------------------------
+// MteDecoder is the counterpart of MteEncoder. MTE FLEN uses the standard MTE Core
+// Decoder, so there are only two kinds: MteDec and MteMkeDec.
+//---------------------------------------------------------------------------------------
+interface MteDecoder {
+
+  void setEntropy(byte[] entropy);
+
+  void setNonce(byte[] nonce);
+
+  MteStatus instantiate(String personalization);
+
+  byte[] saveState();
+
+  MteStatus restoreState(byte[] state);
+
+  int getBuffBytes(int length);
+
+  MteBase.ArrStatus decode(byte[] data);
+
+  MteBase.OffLenStatus decode(byte[] data, int off, int length, byte[] buffer, int bufferOff);
+
+  //------------------------------------------------------------------
+  // getMsgSkipped() tells how the last message decoded fitted into the
+  // sequence (see SecureSession.SetupParams.decoderSeqWindow): > 0 that
+  // many messages before it were skipped, < 0 it came late.
+  //------------------------------------------------------------------
+  int getMsgSkipped();
+
+  //------------------------------------------------------------------
+  // Chunked decryption (MKE only): startDecrypt(), then decryptChunk()
+  // for every chunk, which returns the decrypted data so far (or null
+  // on error), and finally finishDecrypt(), which returns the rest and
+  // checks the message as a whole.
+  //------------------------------------------------------------------
+  default boolean canDecryptChunks() {
+    return false;
+  }
+
+  default MteStatus startDecrypt() {
+    return MteStatus.mte_status_unsupported;
+  }
+
+  default byte[] decryptChunk(byte[] data) {
+    return null;
+  }
+
+  default MteBase.ArrStatus finishDecrypt() {
+    return MteEncoder.failed(MteStatus.mte_status_unsupported);
+  }
+
+
+  static MteDecoder create(SecureSession.MteVariant variant, long tsWindow, int seqWindow) {
+    if (variant == SecureSession.MteVariant.MKE)
+      return new Mke(new MteMkeDec(tsWindow, seqWindow));
+    return new Core(new MteDec(tsWindow, seqWindow));
+  }
+
+
+  class Core implements MteDecoder {
+    private final MteDec decoder;
+
+    Core(MteDec decoder) { this.decoder = decoder; }
+
+    @Override public void setEntropy(byte[] entropy) { decoder.setEntropy(entropy); }
+    @Override public void setNonce(byte[] nonce) { decoder.setNonce(nonce); }
+    @Override public MteStatus instantiate(String personalization) { return decoder.instantiate(personalization); }
+    @Override public byte[] saveState() { return decoder.saveState(); }
+    @Override public MteStatus restoreState(byte[] state) { return decoder.restoreState(state); }
+    @Override public int getBuffBytes(int length) { return decoder.getBuffBytes(length); }
+    @Override public MteBase.ArrStatus decode(byte[] data) { return decoder.decode(data); }
+
+    @Override
+    public MteBase.OffLenStatus decode(byte[] data, int off, int length, byte[] buffer, int bufferOff) {
+      return decoder.decode(data, off, length, buffer, bufferOff);
+    }
+
+    @Override public int getMsgSkipped() { return decoder.getMsgSkipped(); }
+  }
+
+
+  class Mke implements MteDecoder {
+    private final MteMkeDec decoder;
+
+    Mke(MteMkeDec decoder) { this.decoder = decoder; }
+
+    @Override public void setEntropy(byte[] entropy) { decoder.setEntropy(entropy); }
+    @Override public void setNonce(byte[] nonce) { decoder.setNonce(nonce); }
+    @Override public MteStatus instantiate(String personalization) { return decoder.instantiate(personalization); }
+    @Override public byte[] saveState() { return decoder.saveState(); }
+    @Override public MteStatus restoreState(byte[] state) { return decoder.restoreState(state); }
+    @Override public int getBuffBytes(int length) { return decoder.getBuffBytes(length); }
+    @Override public MteBase.ArrStatus decode(byte[] data) { return decoder.decode(data); }
+
+    @Override
+    public MteBase.OffLenStatus decode(byte[] data, int off, int length, byte[] buffer, int bufferOff) {
+      return decoder.decode(data, off, length, buffer, bufferOff);
+    }
+
+    @Override public int getMsgSkipped() { return decoder.getMsgSkipped(); }
+    @Override public boolean canDecryptChunks() { return true; }
+    @Override public MteStatus startDecrypt() { return decoder.startDecrypt(); }
+    @Override public byte[] decryptChunk(byte[] data) { return decoder.decryptChunk(data); }
+    @Override public MteBase.ArrStatus finishDecrypt() { return decoder.finishDecrypt(); }
+  }
+}
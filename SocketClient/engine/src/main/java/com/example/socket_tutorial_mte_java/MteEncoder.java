@@ -0,0 +1,197 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import com.eclypses.mte.MteBase;
+import com.eclypses.mte.MteEnc;
+import com.eclypses.mte.MteFlenEnc;
+import com.eclypses.mte.MteMkeEnc;
+import com.eclypses.mte.MteStatus;
+
+
+//---------------------------------------------------------------------------------------
+// MteEncoder hides which kind of MTE Encoder a session uses (see SecureSession.MteVariant):
+// MteEnc (Core), MteMkeEnc (MKE) and MteFlenEnc (FLEN) have the same functions, but no
+// common type which declares them.
+//
+// MKE and FLEN add-ons are NOT part of all SDK MTE versions, the name of the SDK will
+// contain "-MKE" or "-FLEN" if it has these add-ons.
+//---------------------------------------------------------------------------------------
+interface MteEncoder {
+
+  String variantName();
+
+  void setEntropy(byte[] entropy);
+
+  void setNonce(byte[] nonce);
+
+  MteStatus instantiate(String personalization);
+
+  byte[] saveState();
+
+  MteStatus restoreState(byte[] state);
+
+  int getBuffBytes(int length);
+
+  MteBase.ArrStatus encode(byte[] data);
+
+  MteBase.OffLenStatus encode(byte[] data, int off, int length, byte[] buffer, int bufferOff);
+
+  //------------------------------------------------------------------
+  // Chunked encryption (MKE only): startEncrypt(), then encryptChunk()
+  // for every chunk, which encrypts the chunk in place, and finally
+  // finishEncrypt(), which returns the last bytes of the message. In
+  // between, nothing else may be encoded.
+  //------------------------------------------------------------------
+  default boolean canEncryptChunks() {
+    return false;
+  }
+
+  default MteStatus startEncrypt() {
+    return MteStatus.mte_status_unsupported;
+  }
+
+  default MteStatus encryptChunk(byte[] data, int off, int length) {
+    return MteStatus.mte_status_unsupported;
+  }
+
+  default MteBase.ArrStatus finishEncrypt() {
+    return failed(MteStatus.mte_status_unsupported);
+  }
+
+
+  static MteBase.ArrStatus failed(MteStatus status) {
+    MteBase.ArrStatus result = new MteBase.ArrStatus();
+    result.status = status;
+    return result;
+  }
+
+
+  static MteEncoder create(SecureSession.MteVariant variant, int flenBytes) {
+    switch (variant) {
+      case MKE:
+        return new Mke(new MteMkeEnc());
+      case FLEN:
+        return new Flen(new MteFlenEnc(flenBytes), flenBytes);
+      default:
+        return new Core(new MteEnc());
+    }
+  }
+
+
+  class Core implements MteEncoder {
+    private final MteEnc encoder;
+
+    Core(MteEnc encoder) { this.encoder = encoder; }
+
+    @Override public String variantName() { return "Core"; }
+    @Override public void setEntropy(byte[] entropy) { encoder.setEntropy(entropy); }
+    @Override public void setNonce(byte[] nonce) { encoder.setNonce(nonce); }
+    @Override public MteStatus instantiate(String personalization) { return encoder.instantiate(personalization); }
+    @Override public byte[] saveState() { return encoder.saveState(); }
+    @Override public MteStatus restoreState(byte[] state) { return encoder.restoreState(state); }
+    @Override public int getBuffBytes(int length) { return encoder.getBuffBytes(length); }
+    @Override public MteBase.ArrStatus encode(byte[] data) { return encoder.encode(data); }
+
+    @Override
+    public MteBase.OffLenStatus encode(byte[] data, int off, int length, byte[] buffer, int bufferOff) {
+      return encoder.encode(data, off, length, buffer, bufferOff);
+    }
+  }
+
+
+  class Mke implements MteEncoder {
+    private final MteMkeEnc encoder;
+
+    Mke(MteMkeEnc encoder) { this.encoder = encoder; }
+
+    @Override public String variantName() { return "MKE"; }
+    @Override public void setEntropy(byte[] entropy) { encoder.setEntropy(entropy); }
+    @Override public void setNonce(byte[] nonce) { encoder.setNonce(nonce); }
+    @Override public MteStatus instantiate(String personalization) { return encoder.instantiate(personalization); }
+    @Override public byte[] saveState() { return encoder.saveState(); }
+    @Override public MteStatus restoreState(byte[] state) { return encoder.restoreState(state); }
+    @Override public int getBuffBytes(int length) { return encoder.getBuffBytes(length); }
+    @Override public MteBase.ArrStatus encode(byte[] data) { return encoder.encode(data); }
+
+    @Override
+    public MteBase.OffLenStatus encode(byte[] data, int off, int length, byte[] buffer, int bufferOff) {
+      return encoder.encode(data, off, length, buffer, bufferOff);
+    }
+
+    @Override public boolean canEncryptChunks() { return true; }
+    @Override public MteStatus startEncrypt() { return encoder.startEncrypt(); }
+
+    @Override
+    public MteStatus encryptChunk(byte[] data, int off, int length) {
+      return encoder.encryptChunk(data, off, length);
+    }
+
+    @Override public MteBase.ArrStatus finishEncrypt() { return encoder.finishEncrypt(); }
+  }
+
+
+  //------------------------------------------------------------------
+  // FLEN always encodes exactly "flenBytes" bytes, shorter data is
+  // padded, so every message has the same size on the wire. Longer
+  // data is refused rather than cut off.
+  //------------------------------------------------------------------
+  class Flen implements MteEncoder {
+    private final MteFlenEnc encoder;
+    private final int flenBytes;
+
+    Flen(MteFlenEnc encoder, int flenBytes) {
+      this.encoder = encoder;
+      this.flenBytes = flenBytes;
+    }
+
+    @Override public String variantName() { return "FLEN"; }
+    @Override public void setEntropy(byte[] entropy) { encoder.setEntropy(entropy); }
+    @Override public void setNonce(byte[] nonce) { encoder.setNonce(nonce); }
+    @Override public MteStatus instantiate(String personalization) { return encoder.instantiate(personalization); }
+    @Override public byte[] saveState() { return encoder.saveState(); }
+    @Override public MteStatus restoreState(byte[] state) { return encoder.restoreState(state); }
+    @Override public int getBuffBytes(int length) { return encoder.getBuffBytes(); }
+
+    @Override
+    public MteBase.ArrStatus encode(byte[] data) {
+      if (data.length > flenBytes)
+        return failed(MteStatus.mte_status_invalid_input);
+      return encoder.encode(data);
+    }
+
+    @Override
+    public MteBase.OffLenStatus encode(byte[] data, int off, int length, byte[] buffer, int bufferOff) {
+      if (length > flenBytes) {
+        MteBase.OffLenStatus result = new MteBase.OffLenStatus();
+        result.status = MteStatus.mte_status_invalid_input;
+        return result;
+      }
+      return encoder.encode(data, off, length, buffer, bufferOff);
+    }
+  }
+}
@@ -0,0 +1,322 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+//---------------------------------------------------------------------------------------
+// NioTransport runs the framing protocol over a non-blocking SocketChannel. A single
+// thread, driven by a Selector, does both the reading and the writing of the connection.
+//
+// Reading and writing go through direct ByteBuffers taken from a DirectBufferPool, so no
+// buffer is allocated per read. Frames are parsed straight out of the read buffer into
+// arrays taken from the FrameBufferPool.
+// Outgoing frames are queued exactly like with the FrameWriter: send() never blocks and
+// returns false if the queue is full. The selector thread copies as many queued frames as
+// fit into the write buffer and writes them with one call.
+//---------------------------------------------------------------------------------------
+class NioTransport implements FrameTransport {
+
+  private static class Frame {
+    final int channel;
+    final int header;
+    final byte[] data;
+    final int length;
+    final boolean pooled;
+    final SendCallback callback;
+
+    Frame(int channel, int header, byte[] data, int length, boolean pooled,
+          SendCallback callback) {
+      this.channel = channel;
+      this.header = header;
+      this.data = data;
+      this.length = length;
+      this.pooled = pooled;
+      this.callback = callback;
+    }
+  }
+
+  private final SocketChannel channel;
+  private final FrameDispatcher dispatcher;
+  private final BlockingQueue<Frame> queue;
+  private final DirectBufferPool bufferPool;
+  private final FrameBufferPool framePool;
+  private final Thread selectorThread;
+  private final Selector selector;
+  private StopListener stopListener;
+  private volatile boolean running;
+
+  //-----------------------------------------------------------
+  // These are only ever touched by the selector thread.
+  //-----------------------------------------------------------
+  private ByteBuffer readBuffer;
+  private ByteBuffer writeBuffer;
+  private byte[] frameIn;              // The frame currently being read.
+  private int frameInLength;
+  private int frameInPos;
+  private Frame frameOut;              // The frame currently being copied to writeBuffer.
+  private int frameOutPos;
+  private final List<Frame> framesInBuffer = new ArrayList<>();
+
+
+  NioTransport(SocketChannel channel, FrameDispatcher dispatcher, int queueCapacity)
+      throws IOException {
+    this(channel, dispatcher, queueCapacity, DirectBufferPool.getShared());
+  }
+
+
+  NioTransport(SocketChannel channel, FrameDispatcher dispatcher, int queueCapacity,
+               DirectBufferPool bufferPool) throws IOException {
+    this.channel = channel;
+    this.dispatcher = dispatcher;
+    this.bufferPool = bufferPool;
+    framePool = FrameBufferPool.getShared();
+    queue = new ArrayBlockingQueue<>(queueCapacity);
+    channel.configureBlocking(false);
+    selector = Selector.open();
+    selectorThread = new Thread(this::selectLoop, "NioTransport");
+  }
+
+
+  @Override
+  public void setStopListener(StopListener listener) {
+    stopListener = listener;
+  }
+
+
+  @Override
+  public void start() {
+    running = true;
+    selectorThread.start();
+  }
+
+
+  @Override
+  public void stop() {
+    if (!running)
+      return;
+    running = false;
+    selector.wakeup();
+  }
+
+
+  @Override
+  public boolean send(int channel, int header, byte[] data, SendCallback callback) {
+    if (!running)
+      return false;
+    if (!queue.offer(new Frame(channel, header, data, data.length, false, callback)))
+      return false;
+    selector.wakeup();
+    return true;
+  }
+
+
+  //------------------------------------------------------------------
+  // A pooled array goes back to the pool as soon as the frame has been
+  // copied to the write buffer.
+  //------------------------------------------------------------------
+  @Override
+  public boolean sendPooled(int channel, int header, byte[] buffer, int length,
+                            SendCallback callback) {
+    if (!running)
+      return false;
+    if (!queue.offer(new Frame(channel, header, buffer, length, true, callback)))
+      return false;
+    selector.wakeup();
+    return true;
+  }
+
+
+  @Override
+  public int pendingFrames() {
+    return queue.size();
+  }
+
+
+  private void selectLoop() {
+    IOException stopReason = null;
+    readBuffer = bufferPool.acquire();
+    writeBuffer = bufferPool.acquire();
+    try {
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      while (running) {
+        //------------------------------------------------------------
+        // Only ask for OP_WRITE if there is something to write,
+        // otherwise the selector would return immediately every time.
+        //------------------------------------------------------------
+        boolean wantWrite = (writeBuffer.position() > 0) || (frameOut != null) ||
+                            !queue.isEmpty();
+        key.interestOps(SelectionKey.OP_READ | (wantWrite ? SelectionKey.OP_WRITE : 0));
+        selector.select();
+        if (!running)
+          break;
+        if (key.isReadable())
+          readFrames();
+        if (!queue.isEmpty() || (frameOut != null) || (writeBuffer.position() > 0))
+          writeFrames();
+        selector.selectedKeys().clear();
+      }
+    } catch (EOFException e) {
+      // The server closed the connection, this is not an error.
+    } catch (IOException e) {
+      stopReason = e;
+    }
+    boolean stoppedByUs = !running;
+    running = false;
+    failPendingFrames();
+    try {
+      selector.close();
+    } catch (IOException e) {
+      // Nothing we can do about it.
+    }
+    if (frameIn != null)
+      framePool.release(frameIn);
+    frameIn = null;
+    bufferPool.release(readBuffer);
+    bufferPool.release(writeBuffer);
+    readBuffer = null;
+    writeBuffer = null;
+    if (!stoppedByUs && (stopListener != null))
+      stopListener.transportStopped(stopReason);
+  }
+
+
+  private void readFrames() throws IOException {
+    int rd = channel.read(readBuffer);
+    if (rd < 0)
+      throw new EOFException();
+    readBuffer.flip();
+    while (true) {
+      if (frameIn == null) {
+        if (readBuffer.remaining() < 5)
+          break;
+        //---------------------------------------------------------------
+        // The default byte order of a ByteBuffer is always BIG Endian!
+        // And that is what we want anyway.
+        //---------------------------------------------------------------
+        int length = readBuffer.getInt();
+        if ((length < 0) || (length > MAX_FRAME_LENGTH))
+          throw new IOException("invalid frame length " + length);
+        frameInLength = length + 1;
+        frameIn = framePool.acquire(frameInLength);
+        frameIn[0] = readBuffer.get();
+        frameInPos = 1;
+      }
+      int n = Math.min(readBuffer.remaining(), frameInLength - frameInPos);
+      readBuffer.get(frameIn, frameInPos, n);
+      frameInPos += n;
+      if (frameInPos < frameInLength)
+        break;
+      InboundFrame frame = new InboundFrame(framePool, frameIn, frameInLength);
+      frameIn = null;
+      dispatcher.dispatch(frame);
+    }
+    readBuffer.compact();
+  }
+
+
+  private void writeFrames() throws IOException {
+    //----------------------------------------------------------
+    // Copy as many frames as fit into the write buffer. A frame
+    // larger than the buffer is copied piece by piece.
+    //----------------------------------------------------------
+    while (writeBuffer.hasRemaining()) {
+      if (frameOut == null) {
+        if (writeBuffer.remaining() < 8)
+          break;
+        frameOut = queue.poll();
+        if (frameOut == null)
+          break;
+        if (frameOut.channel == 0) {
+          writeBuffer.putInt(frameOut.length);
+        } else {
+          writeBuffer.putInt(frameOut.length + 3);
+          writeBuffer.put((byte) CHANNEL_FRAME);
+          writeBuffer.putShort((short) frameOut.channel);
+        }
+        writeBuffer.put((byte) frameOut.header);
+        frameOutPos = 0;
+      }
+      int n = Math.min(writeBuffer.remaining(), frameOut.length - frameOutPos);
+      writeBuffer.put(frameOut.data, frameOutPos, n);
+      frameOutPos += n;
+      if (frameOutPos < frameOut.length)
+        break;
+      if (frameOut.pooled)
+        framePool.release(frameOut.data);
+      framesInBuffer.add(frameOut);
+      frameOut = null;
+    }
+    writeBuffer.flip();
+    channel.write(writeBuffer);
+    writeBuffer.compact();
+    //-------------------------------------------------------------
+    // Once the buffer has been written out completely, all frames
+    // which had been copied into it have been handed to the socket.
+    //-------------------------------------------------------------
+    if (writeBuffer.position() == 0) {
+      for (Frame frame : framesInBuffer) {
+        if (frame.callback != null)
+          frame.callback.sendCompleted(true);
+      }
+      framesInBuffer.clear();
+    }
+  }
+
+
+  private void failPendingFrames() {
+    for (Frame frame : framesInBuffer) {
+      if (frame.callback != null)
+        frame.callback.sendCompleted(false);
+    }
+    framesInBuffer.clear();
+    if (frameOut != null) {
+      if (frameOut.pooled)
+        framePool.release(frameOut.data);
+      if (frameOut.callback != null)
+        frameOut.callback.sendCompleted(false);
+    }
+    frameOut = null;
+    Frame frame;
+    while ((frame = queue.poll()) != null) {
+      if (frame.pooled)
+        framePool.release(frame.data);
+      if (frame.callback != null)
+        frame.callback.sendCompleted(false);
+    }
+  }
+}
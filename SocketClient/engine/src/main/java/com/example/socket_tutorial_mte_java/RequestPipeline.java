@@ -0,0 +1,194 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+
+//---------------------------------------------------------------------------------------
+// RequestPipeline keeps track of the MTE data requests which have been sent to the server
+// but have not been answered yet. Up to "window" requests may be in flight at once.
+//
+// The MTE Encoder and the server's MTE Decoder are strictly sequential, and so are the
+// server's MTE Encoder and our MTE Decoder. The server answers requests in the order it
+// receives them, the writer thread sends frames in the order they were queued and the
+// reader thread delivers frames in the order they were read. Therefore the n-th answer
+// always belongs to the n-th request, and all we need to correlate them is a FIFO of
+// requests. Each request keeps its plaintext until it is answered, so it can be sent
+// again if the connection is lost (see ConnectionSupervisor).
+//
+// With a sequence window (see SecureSession.SetupParams.decoderSeqWindow) the Decoder
+// may skip answers which did not arrive (yet). The requests they belong to are moved out
+// of the window by skip(), but they are kept, together with the position their answer
+// had in the sequence of answers, for as many answers as the window reaches back. An
+// answer which comes late is matched against them by completeLate(), never against the
+// oldest request in flight.
+//---------------------------------------------------------------------------------------
+class RequestPipeline {
+
+  static final long NO_REQUEST = -1;
+
+  static class Entry {
+    final long id;
+    final byte[] data;
+    final long sentAt;     // System.nanoTime() of begin()
+    long position;         // Position of the answer, once the request has been skipped.
+
+    Entry(long id, byte[] data) {
+      this.id = id;
+      this.data = data;
+      sentAt = System.nanoTime();
+    }
+  }
+
+  private final int window;
+  private final int lateWindow;
+  private final ArrayDeque<Entry> inFlight = new ArrayDeque<>();
+  private final ArrayDeque<Entry> skipped = new ArrayDeque<>();
+  private long nextId;
+  private long nextPosition;     // Position of the next answer in order.
+
+
+  //-----------------------------------------------------------------
+  // Answers which come up to "lateWindow" places late can still be
+  // matched to their requests; 0 if the Decoder accepts none.
+  //-----------------------------------------------------------------
+  RequestPipeline(int window, int lateWindow) {
+    this.window = Math.max(1, window);
+    this.lateWindow = Math.max(0, lateWindow);
+    nextId = 0;
+    nextPosition = 0;
+  }
+
+
+  int getWindow() {
+    return window;
+  }
+
+
+  synchronized int inFlight() {
+    return inFlight.size();
+  }
+
+
+  synchronized boolean isFull() {
+    return inFlight.size() >= window;
+  }
+
+
+  //-----------------------------------------------------------------
+  // begin() registers a new request and returns its id. If the window
+  // is full, no request is registered and NO_REQUEST is returned.
+  //-----------------------------------------------------------------
+  synchronized long begin(byte[] data) {
+    if (inFlight.size() >= window)
+      return NO_REQUEST;
+    long id = nextId++;
+    inFlight.addLast(new Entry(id, data));
+    return id;
+  }
+
+
+  //-------------------------------------------------------------------
+  // cancel() takes back the most recent request if it could not be sent.
+  //-------------------------------------------------------------------
+  synchronized void cancel(long id) {
+    if (!inFlight.isEmpty() && inFlight.peekLast().id == id)
+      inFlight.removeLast();
+  }
+
+
+  //-----------------------------------------------------------------
+  // complete() is called for each answer and returns the oldest
+  // request in flight, or null if nothing was requested.
+  //-----------------------------------------------------------------
+  synchronized Entry complete() {
+    Entry entry = inFlight.pollFirst();
+    nextPosition++;
+    return entry;
+  }
+
+
+  //-----------------------------------------------------------------
+  // skip() is called when the Decoder skipped "count" answers to get
+  // to the current one. The oldest "count" requests in flight are
+  // taken out of the window and returned; their answers may still
+  // come late (see completeLate()).
+  //-----------------------------------------------------------------
+  synchronized List<Entry> skip(int count) {
+    List<Entry> lost = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Entry entry = inFlight.pollFirst();
+      long position = nextPosition++;
+      if (entry == null)
+        continue;
+      entry.position = position;
+      lost.add(entry);
+      if (lateWindow > 0)
+        skipped.addLast(entry);
+    }
+    while (!skipped.isEmpty() && (skipped.peekFirst().position < nextPosition - lateWindow))
+      skipped.removeFirst();
+    return lost;
+  }
+
+
+  //-----------------------------------------------------------------
+  // completeLate() is called for an answer which the Decoder accepted
+  // although it came "placesLate" places after the newest answer so
+  // far. It returns the skipped request it belongs to, or null if
+  // there is none; the requests in flight are left alone.
+  //-----------------------------------------------------------------
+  synchronized Entry completeLate(int placesLate) {
+    long position = nextPosition - 1 - placesLate;
+    for (Iterator<Entry> it = skipped.iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      if (entry.position == position) {
+        it.remove();
+        return entry;
+      }
+    }
+    return null;
+  }
+
+
+  //-----------------------------------------------------------------
+  // unanswered() returns the requests in flight, oldest first.
+  //-----------------------------------------------------------------
+  synchronized List<Entry> unanswered() {
+    return new ArrayList<>(inFlight);
+  }
+
+
+  synchronized void reset() {
+    inFlight.clear();
+    skipped.clear();
+  }
+}
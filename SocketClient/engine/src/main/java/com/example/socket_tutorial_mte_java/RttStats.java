@@ -0,0 +1,89 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.Arrays;
+
+
+//---------------------------------------------------------------------------------------
+// RttStats keeps the last SAMPLES round trip times measured by the Heartbeat of a session
+// and computes percentiles over them, e.g. for timeouts or for deciding how much data to
+// batch. All times are in nanoseconds. All functions may be called from any thread.
+//---------------------------------------------------------------------------------------
+public class RttStats {
+
+  public static final int SAMPLES = 256;
+
+  private final long[] samples = new long[SAMPLES];
+  private int next;
+  private long count;
+
+
+  synchronized void add(long rtt) {
+    samples[next] = rtt;
+    next = (next + 1) % SAMPLES;
+    count++;
+  }
+
+
+  //------------------------------------------------------------
+  // count() returns the number of round trips measured so far,
+  // including those which have already dropped out of the window.
+  //------------------------------------------------------------
+  public synchronized long count() {
+    return count;
+  }
+
+
+  //------------------------------------------------------------
+  // latest() returns the last round trip time, or -1 if nothing
+  // has been measured yet.
+  //------------------------------------------------------------
+  public synchronized long latest() {
+    if (count == 0)
+      return -1;
+    return samples[(next + SAMPLES - 1) % SAMPLES];
+  }
+
+
+  //------------------------------------------------------------
+  // percentile() returns the given percentile (0 - 100) of the
+  // round trip times in the window, using the nearest rank, or
+  // -1 if nothing has been measured yet.
+  //------------------------------------------------------------
+  public long percentile(double percentile) {
+    long[] sorted;
+    synchronized (this) {
+      if (count == 0)
+        return -1;
+      sorted = Arrays.copyOf(samples, (int) Math.min(count, SAMPLES));
+    }
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+}
@@ -0,0 +1,2378 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import com.eclypses.ecdh.EcdhP256;
+import com.eclypses.mte.MteBase;
+import com.eclypses.mte.MteStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+//---------------------------------------------------------------------------------------
+// A SecureSession is one MTE secured connection to a server: the socket and its transport,
+// the state of the handshake run by setupMTE() and the MTE Encoder/Decoder pair created
+// by it. Sessions share no state and no locks with each other, so any number of them can
+// run side by side, to different servers or in parallel to the same server.
+// A session may also run as a logical channel on the connection of another session (see
+// ChannelMux), with an MTE pair of its own but without a socket and handshake round trip
+// to open the connection. Sessions are created and looked after by the SessionManager.
+//---------------------------------------------------------------------------------------
+public class SecureSession {
+
+  //-------------------------------
+  // Default communication settings
+  //-------------------------------
+  private static final String DEFAULT_IP_ADDRESS = "*** Server IP ***";
+  private static final int DEFAULT_PORT = 27015;
+  private static final int DEFAULT_SEND_QUEUE_SIZE = 64;
+  private static final int DEFAULT_PIPELINE_WINDOW = 1;
+  //-----------------------------------------------------------------
+  // The writer thread already coalesces each frame (and all frames
+  // waiting in the queue) into a single write, so there is nothing
+  // left for Nagle's algorithm to gain except delayed-ACK stalls.
+  // For the same reason there is no cork or flush delay: frames which
+  // are produced together already share a write, and holding a frame
+  // back for more to come would add that delay to the round trip of
+  // every request. Small one-way data which can afford the delay is
+  // batched by the MessageBatcher instead (see sendMessage()).
+  //-----------------------------------------------------------------
+  private static final boolean DEFAULT_TCP_NO_DELAY = true;
+  //-----------------------------------------------------------------
+  // Streams are sent as a sequence of separately encoded chunks, and
+  // at most this many chunks wait in the send queue at any time, so
+  // memory use does not depend on the size of the stream.
+  //-----------------------------------------------------------------
+  private static final int STREAM_CHUNK_SIZE = 4096;
+  private static final int STREAM_CHUNKS_IN_FLIGHT = 4;
+  private static final TransportType DEFAULT_TRANSPORT = TransportType.STREAM;
+  private static final boolean DEFAULT_COMPACT_HANDSHAKE = false;
+  private static final boolean DEFAULT_RESUME_SESSIONS = false;
+  private static final boolean DEFAULT_AUTO_RECONNECT = false;
+  private static final int DEFAULT_MAX_RECONNECT_ATTEMPTS = 8;
+  //-----------------------------------------------------------------
+  // A reconnect attempt whose MTE setup has not finished within this
+  // many ms is abandoned, and the next attempt follows.
+  //-----------------------------------------------------------------
+  private static final int RECONNECT_SETUP_TIMEOUT = 15000;
+  private static final int DEFAULT_HEARTBEAT_INTERVAL = 0;
+  private static final int DEFAULT_HEARTBEAT_TIMEOUT = 10000;
+  private static final int DEFAULT_BATCH_MAX_BYTES = 4096;
+  private static final int DEFAULT_BATCH_MAX_DELAY = 20;
+  private static final int DEFAULT_COMPRESSION_THRESHOLD = 256;
+  private static final MteVariant DEFAULT_MTE_VARIANT = MteVariant.CORE;
+  private static final int DEFAULT_FLEN_BYTES = 8;
+  private static final long DEFAULT_DECODER_TS_WINDOW = 0;
+  private static final int DEFAULT_DECODER_SEQ_WINDOW = 0;
+  //-----------------------------------------------------------------
+  // A callback to an idle app is delivered right away; callbacks which
+  // come in while one is being delivered follow together, at most once
+  // per display frame (60 Hz), see CallbackDelivery.
+  //-----------------------------------------------------------------
+  private static final long DEFAULT_DELIVERY_INTERVAL = 16;
+  private static final int TICKET_SIZE = 16;
+
+  //-----------------------------------------------------------------
+  // STREAM uses the blocking socket streams with a writer and a
+  // reader thread. NIO uses a non-blocking SocketChannel driven by a
+  // single selector thread with pooled direct buffers.
+  //-----------------------------------------------------------------
+  public enum TransportType {STREAM, NIO}
+
+  //-----------------------------------------------------------------
+  // The kind of MTE Encoder and Decoder (see MteEncoder): CORE is the
+  // default. MKE encrypts large streams in chunks as a single message
+  // (see sendStream()). FLEN encodes every message to the same fixed
+  // size of "flenBytes", which suits small fixed size messages; it
+  // cannot encode anything longer, so requests must fit into that
+  // size, and messages and streams are not available at all.
+  //-----------------------------------------------------------------
+  public enum MteVariant {CORE, MKE, FLEN}
+
+  //-----------------------------------------------------------------
+  // sendRequest() returns one of these for every request it has sent.
+  // "encoded" is null if the data could not be encoded.
+  //-----------------------------------------------------------------
+  public static class Request {
+    public final long id;
+    public final byte[] encoded;
+
+    Request(long id, byte[] encoded) {
+      this.id = id;
+      this.encoded = encoded;
+    }
+  }
+
+  //-----------------------------------------------------------------
+  // The asynchronous variant of sendRequest() hands the Request to a
+  // RequestCallback on the callback executor.
+  //-----------------------------------------------------------------
+  public interface RequestCallback {
+    void requestSent(Request request);
+  }
+
+  //------------------------------------------------------------
+  // The stream currently being received (see receiveStream()).
+  //------------------------------------------------------------
+  private static class StreamReceiver {
+    final OutputStream out;
+    final StreamCallback callback;
+    long bytes;
+    boolean failed;
+
+    StreamReceiver(OutputStream out, StreamCallback callback) {
+      this.out = out;
+      this.callback = callback;
+    }
+  }
+
+  public static class SetupParams {
+    String ipAddress;
+    int port;
+    int sendQueueSize;     // Max. number of frames waiting to be written to the socket.
+    int pipelineWindow;    // Max. number of MTE data requests waiting for an answer.
+    boolean tcpNoDelay;    // True: frames go out as soon as they are flushed (TCP_NODELAY).
+                           // False: the TCP stack may hold back small frames (Nagle).
+    TransportType transport;
+    boolean compactHandshake;  // True: set up MTE in a single round trip ('H' and 'h' frames).
+                               // The server has to support this.
+    boolean resumeSessions;    // True: save the MTE state when the session is closed and
+                               // resume it on the next connection ('T', 'R' and 'r' frames).
+                               // The server has to support this.
+    boolean autoReconnect;     // True: reconnect if the connection is lost and send the
+                               // unanswered requests again (see ConnectionSupervisor).
+    int maxReconnectAttempts;
+    int heartbeatInterval;     // ms between heartbeats (see Heartbeat), 0: no heartbeat.
+                               // The server has to support this.
+    int heartbeatTimeout;      // ms after which an unanswered heartbeat means the
+                               // connection is dead.
+    int batchMaxBytes;         // Max. size of a batch of messages (see sendMessage()).
+    int batchMaxDelay;         // Max. ms a message waits for more messages to join it.
+    Compressor compressor;     // null: no compression, e.g. DeflateCompressor otherwise.
+                               // The server has to accept it (see Compressor).
+    int compressionThreshold;  // Data shorter than this is never compressed.
+    MteVariant mteVariant;     // Anything but CORE has to be supported by the server, too.
+    int flenBytes;             // Size of every message with MteVariant.FLEN.
+    long decoderTsWindow;      // Timestamp window of our Decoder, 0: not checked.
+    int decoderSeqWindow;      // Sequence window of our Decoder:
+                               //   0: messages must arrive in strict order.
+                               //  >0: up to this many lost messages are skipped.
+                               //  <0: messages up to this many places late are
+                               //      accepted too, as long as they are no replays.
+    long deliveryInterval;     // Max. ms a callback waits for more callbacks to be
+                               // delivered together with it (see CallbackDelivery).
+    Executor callbackExecutor; // null: callbacks run on the SessionManager's callback
+                               // executor (the main UI thread on Android). Otherwise on
+                               // this one, e.g. a background thread, and only what
+                               // touches the views has to be posted to the UI thread.
+
+    public SetupParams() {
+      ipAddress = DEFAULT_IP_ADDRESS;
+      port = DEFAULT_PORT;
+      sendQueueSize = DEFAULT_SEND_QUEUE_SIZE;
+      pipelineWindow = DEFAULT_PIPELINE_WINDOW;
+      tcpNoDelay = DEFAULT_TCP_NO_DELAY;
+      transport = DEFAULT_TRANSPORT;
+      compactHandshake = DEFAULT_COMPACT_HANDSHAKE;
+      resumeSessions = DEFAULT_RESUME_SESSIONS;
+      autoReconnect = DEFAULT_AUTO_RECONNECT;
+      maxReconnectAttempts = DEFAULT_MAX_RECONNECT_ATTEMPTS;
+      heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+      heartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT;
+      batchMaxBytes = DEFAULT_BATCH_MAX_BYTES;
+      batchMaxDelay = DEFAULT_BATCH_MAX_DELAY;
+      compressor = null;
+      compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+      mteVariant = DEFAULT_MTE_VARIANT;
+      flenBytes = DEFAULT_FLEN_BYTES;
+      decoderTsWindow = DEFAULT_DECODER_TS_WINDOW;
+      decoderSeqWindow = DEFAULT_DECODER_SEQ_WINDOW;
+      deliveryInterval = DEFAULT_DELIVERY_INTERVAL;
+      callbackExecutor = null;
+    }
+  }
+
+  //---------------------------------------------------------
+  // Variables related to Diffie-Hellman key exchange and MTE
+  //---------------------------------------------------------
+  //
+  //---------------------------------------------------------------------
+  // These strings are needed if you are using a licensed version of MTE.
+  //---------------------------------------------------------------------
+  private static final String licenseCompanyName = "Eclypses Inc";
+  private static final String licenseKey = "Eclypses123";
+
+  private static class MteSetupInfo {
+    String personalization;  // The personalization string.
+    byte[] nonce;            // The nonce.
+    EcdhP256 ecdh;           // DH instance used to generate the shared secret.
+    byte[] myPublicKey;      // This entity's public DH key.
+    byte[] peerPublicKey;    // The public key received from its peer.
+    byte[] mySecret;         // This entity's secret; NEVER SHARE THE SECRET!
+  }
+
+  //-----------------------------------------------------
+  // We need separate setup info for Encoder and Decoder
+  // and an instance of our EclypsesECDH class which will
+  // create key pairs and shared secrets.
+  //-----------------------------------------------------
+  MteSetupInfo encoderSetupInfo = new MteSetupInfo();
+  MteSetupInfo decoderSetupInfo = new MteSetupInfo();
+
+  //-------------------------------------------------------------
+  // The MTE Encoder and Decoder. Which kind of MTE they use (Core,
+  // MKE or FLEN) is chosen by SetupParams.mteVariant.
+  //-------------------------------------------------------------
+  private volatile MteEncoder encoder;
+  private volatile MteDecoder decoder;
+  private byte[] decodeBuffer;     // Work buffer for decodeData(byte[], int, int).
+  //-------------------------------------------------------------
+  // Data must be queued for sending in the very same order it has
+  // been encoded, so encoding and queueing happen under this lock.
+  //-------------------------------------------------------------
+  private final Object encoderLock = new Object();
+  private boolean streamEncrypting;  // An MKE stream is being sent, see sendEncryptedStream().
+  private boolean streamDecrypting;  // An MKE stream is being received, see decryptStreamChunk().
+  //-------------------------------------------------------------
+  // What the Decoder had to say about the order of the messages
+  // (see SetupParams.decoderSeqWindow and checkSequence()).
+  //-------------------------------------------------------------
+  private int lastMsgSkipped;
+  private final AtomicLong messagesSkipped = new AtomicLong();
+  private final AtomicLong messagesLate = new AtomicLong();
+
+
+  private final String TAG;
+  private final int id;
+  private final SetupParams setupParams;
+  private final SecureSession parent;     // The session whose connection a channel uses.
+  private ChannelMux mux;
+  private final SocketCallback socketCallback;
+  //-------------------------------------------------------------
+  // All callbacks to the app go through here, to the executor of
+  // SetupParams.callbackExecutor or else the SessionManager's; on
+  // Android, that is the main UI thread.
+  //-------------------------------------------------------------
+  private final CallbackDelivery delivery;
+  private boolean initDone;
+  private volatile Socket socket;
+  private volatile boolean socketOpen;
+  private ChannelMux.Channel transport;
+  //-------------------------------------------------------------
+  // close() runs on the app's thread, a lost connection is taken
+  // down on the crypto executor: disconnect() is serialized by
+  // this lock.
+  //-------------------------------------------------------------
+  private final Object connectionLock = new Object();
+  private final RequestPipeline pipeline;
+  //-------------------------------------------------------------
+  // Handshake and encoding run here, in order, never on the main
+  // UI thread. Decoding runs on the transport's thread.
+  //-------------------------------------------------------------
+  private final Executor cryptoExecutor = CryptoExecutor.newSerialExecutor();
+  private volatile StreamReceiver streamReceiver;
+  private final AtomicInteger streamsSending = new AtomicInteger();
+  private final ConnectionSupervisor supervisor;
+  private final RttStats rttStats = new RttStats();
+  private final SessionMetrics metrics = new SessionMetrics();
+  private volatile Heartbeat heartbeat;
+  private final MessageBatcher batcher;
+  private volatile boolean compressionAccepted;
+  private int initValuesReceived;
+  private SessionStore sessionStore;
+  private byte[] ticket;
+
+
+  //-------------------------------------------------------------------------
+  // Sessions are created by SessionManager.openSession() only. Missing
+  // settings in "setupParams" are replaced by their defaults.
+  //-------------------------------------------------------------------------
+  SecureSession(int id, SetupParams setupParams, SocketCallback socketCallback,
+                Executor callbackExecutor) {
+    this(id, setupParams, null, socketCallback, callbackExecutor);
+  }
+
+
+  //-------------------------------------------------------------------------
+  // This constructor creates a session which runs as a channel on the
+  // connection of "parent" (see SessionManager.openChannel()).
+  //-------------------------------------------------------------------------
+  SecureSession(int id, SecureSession parent, SocketCallback socketCallback,
+                Executor callbackExecutor) {
+    this(id, parent.setupParams, parent, socketCallback, callbackExecutor);
+  }
+
+
+  private SecureSession(int id, SetupParams setupParams, SecureSession parent,
+                        SocketCallback socketCallback, Executor callbackExecutor) {
+    this.id = id;
+    TAG = this.getClass().getSimpleName() + "#" + id;
+    this.setupParams = setupParams;
+    this.parent = parent;
+    this.socketCallback = socketCallback;
+    if (setupParams.sendQueueSize <= 0)
+      setupParams.sendQueueSize = DEFAULT_SEND_QUEUE_SIZE;
+    if (setupParams.pipelineWindow <= 0)
+      setupParams.pipelineWindow = DEFAULT_PIPELINE_WINDOW;
+    if (setupParams.transport == null)
+      setupParams.transport = DEFAULT_TRANSPORT;
+    if (setupParams.batchMaxBytes <= 0)
+      setupParams.batchMaxBytes = DEFAULT_BATCH_MAX_BYTES;
+    if (setupParams.batchMaxDelay < 0)
+      setupParams.batchMaxDelay = DEFAULT_BATCH_MAX_DELAY;
+    if (setupParams.deliveryInterval < 0)
+      setupParams.deliveryInterval = DEFAULT_DELIVERY_INTERVAL;
+    delivery = new CallbackDelivery((setupParams.callbackExecutor != null)
+                                        ? setupParams.callbackExecutor : callbackExecutor,
+                                    setupParams.deliveryInterval, socketCallback, metrics);
+    pipeline = new RequestPipeline(setupParams.pipelineWindow,
+                                   (setupParams.decoderSeqWindow < 0) ? -setupParams.decoderSeqWindow : 0);
+    batcher = new MessageBatcher(setupParams.batchMaxBytes, setupParams.batchMaxDelay,
+                                 cryptoExecutor, this::sendBatch);
+    //----------------------------------------------------------------
+    // Channels are not reconnected; they go down with the connection
+    // they run on.
+    //----------------------------------------------------------------
+    supervisor = (setupParams.autoReconnect && (parent == null))
+        ? new ConnectionSupervisor(TAG, setupParams.maxReconnectAttempts, RECONNECT_SETUP_TIMEOUT,
+                                   new ConnectionSupervisor.Reconnector() {
+                                     @Override
+                                     public boolean reconnect() {
+                                       return SecureSession.this.reconnect();
+                                     }
+
+                                     @Override
+                                     public void abandon() {
+                                       abandonConnection();
+                                     }
+                                   },
+                                   () -> postAnswerToApp("Error".getBytes(StandardCharsets.UTF_8)))
+        : null;
+    socket = null;
+    socketOpen = false;
+    transport = null;
+    encoder = null;
+    decoder = null;
+    initDone = false;
+  }
+
+
+  public int getId() { return id; }
+  public SetupParams getSetupParams() { return setupParams; }
+  public boolean isOpen() { return socket != null; }
+  public boolean isSecured() { return (encoder != null) && (decoder != null); }
+  public boolean isPipelineFull() { return pipeline.isFull(); }
+  public int requestsInFlight() { return pipeline.inFlight(); }
+  public RttStats getRttStats() { return rttStats; }
+  public long getMessagesSkipped() { return messagesSkipped.get(); }
+  public long getMessagesLate() { return messagesLate.get(); }
+
+
+  //--------------------------------------------------------------------------
+  // getMetrics() returns the latencies of the stages of the hot path, the
+  // counters and the queue depths of the session (see SessionMetrics).
+  //--------------------------------------------------------------------------
+  public SessionMetrics.Snapshot getMetrics() {
+    FrameTransport writer = transport;
+    return metrics.snapshot(id, (writer == null) ? 0 : writer.pendingFrames(), pipeline.inFlight());
+  }
+
+
+  //-------------------------------------------------------------------------
+  // The SessionManager hands its SessionStore to every session before it
+  // is opened; without one, SetupParams.resumeSessions has no effect.
+  //-------------------------------------------------------------------------
+  void setSessionStore(SessionStore sessionStore) {
+    this.sessionStore = sessionStore;
+  }
+
+
+  //-------------------------------------------------------------------------
+  // terminate() throws away the MTE state of the session so that setupMTE()
+  // could be run again.
+  //-------------------------------------------------------------------------
+  void terminate() {
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "terminate()");
+    cleanupMTE();
+    initDone = false;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // setupMTE() is initially called from the main activity with a parameter
+  // value of "null". This will jumpstart the initialization process. Due to
+  // the strict requirements of Android that any communication must be run
+  // outside the main UI thread, the "sendToServer()" function will hand its
+  // data over to the writer thread.
+  // All answers from the server side are read by the reader thread which
+  // runs for as long as the connection is open. Depending on the frame type,
+  // the reader thread will either post the received data to the main
+  // activity or will call back to setupMTE() right here.
+  //
+  // The flow of communication for the setup runs like this:
+  //
+  // The main activity calls "setupMTE(null)".
+  //   setupMTE() checks the MTE license (step #1).
+  //   setupMTE() creates separate 256-bit elliptic curve key pairs and also
+  //     personalization strings for Encoder and Decoder (step #2).
+  //   setupMTE() sends the public keys and the personalization strings to
+  //     the server side. After all four values have been sent, setupMTE()
+  //     expects an answer (an "acknowledge") from the side. The reader
+  //     thread will call back into "setupMTE()" with the returned data from
+  //     the server.
+  //
+  //   When setupMTE() is called and supplied with received data, it will
+  //   analyze the data and act accordingly. After sending out the four values
+  //   to the server, "setupMTE()" expects to be called with the "ACK" answer
+  //   (step #4). After the "ACK", the reader thread will deliver the four
+  //   values from the server side one after the other. These values are the
+  //   public keys and the nonces for Encoder and Decoder.
+  //
+  //   Please note that the four values are simply queued for the writer
+  //   thread (see "sendToServer()"), so setupMTE() never blocks on the
+  //   socket. The writer thread sends them out in order.
+  //
+  //   Once all four values have been received, "setupMTE()" creates the
+  //   shared secrets for Encoder and Decoder (step #5).
+  //   After that, "setupMTE()" will create the Encoder (step #6), of the
+  //   kind of MTE functionality chosen by SetupParams.mteVariant (Core,
+  //   FLEN or MKE). The server is told about anything but Core in a 'V'
+  //   frame right at the start and answers "ERR" in an 'E' frame if it
+  //   does not support it.
+  //   Step #6A will then set entropy (the shared DH secret) and nonce (which
+  //   was received from the server) for the Encoder. Step #7B finally will
+  //   instantiate the Encoder using the personalization string created in
+  //   step #2.
+  //   Steps #7, #7A and 7B will repeat the process of creation, setting
+  //   entropy and nonce and do instantiation for the Decoder.
+  //
+  //   After all these steps have been completed successfully, "setupMTE()"
+  //   will send an "ACK" to the server side and signal to the main activity
+  //   that communication is up and running. On receiving this notification,
+  //   the main activity will send a simple "ping" message to the server to
+  //   demonstrate that the communication is working. In a real world setup,
+  //   a client would probably transmit login credentials.
+  //
+  //   If SetupParams.compactHandshake is set, steps #2 to #7 are done in a
+  //   single round trip instead (see startCompactHandshake()).
+  //
+  //   None of this runs on the main UI thread: setupMTE() only hands the
+  //   step over to the session's crypto executor and returns. If a step
+  //   fails, the app is told "Error" (see setupFailed()).
+  //--------------------------------------------------------------------------
+  public boolean setupMTE(InboundFrame dataReceived) {
+    cryptoExecutor.execute(() -> {
+      if (!runSetupMTE(dataReceived))
+        setupFailed();
+    });
+    return true;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // setupFailed() tells the app "Error", unless the setup was run by an
+  // attempt of the ConnectionSupervisor, which then goes on with its next
+  // attempt instead.
+  //--------------------------------------------------------------------------
+  private void setupFailed() {
+    if ((supervisor != null) && supervisor.setupFailed())
+      return;
+    postAnswerToApp("Error".getBytes(StandardCharsets.UTF_8));
+  }
+
+
+  private boolean runSetupMTE(InboundFrame dataReceived) {
+    if (initDone) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "setupMTE(): already initialized");
+      return false;
+    }
+    if (dataReceived == null) {
+      //----------------------------------------------------------
+      // Step #1
+      // Initialize MTE license. If a license code is not required
+      // (e.g. trial mode), this can be skipped.
+      //----------------------------------------------------------
+      if (!MteBase.initLicense(licenseCompanyName, licenseKey)) {
+        cleanupMTE();
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "setupMTE(): MTE license check failed");
+        return false;
+      }
+      announceVariant();
+      offerCompression();
+      if (setupParams.resumeSessions && startResume())
+        return true;
+      if (setupParams.compactHandshake)
+        return startCompactHandshake();
+      //----------------------------------------------------------
+      // Step #2
+      // Create personalization strings for Encoder and Decoder.
+      // Also get the 2 key pairs needed for Diffie-Hellman; they
+      // have usually been created in advance by the EcdhKeyPool.
+      //----------------------------------------------------------
+      if (!createKeyPair(encoderSetupInfo)) {
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "setupMTE(): creating encoder keys failed");
+      }
+      if (!createKeyPair(decoderSetupInfo)) {
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "setupMTE(): creating decoder keys failed");
+      }
+      if ((encoderSetupInfo.ecdh == null) || (decoderSetupInfo.ecdh == null)) {
+        cleanupMTE();
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "setupMTE(): Key pairs generation failed");
+        return false;
+      }
+      encoderSetupInfo.personalization = UUID.randomUUID().toString();
+      decoderSetupInfo.personalization = UUID.randomUUID().toString();
+      //--------------------------------------------------------
+      // Step #3
+      // Send the personalization strings and public keys out to
+      // the server.
+      //--------------------------------------------------------
+      sendToServer('1', encoderSetupInfo.myPublicKey);
+      sendToServer('2', encoderSetupInfo.personalization.getBytes(StandardCharsets.UTF_8));
+      sendToServer('3', decoderSetupInfo.myPublicKey);
+      sendToServer('4', decoderSetupInfo.personalization.getBytes(StandardCharsets.UTF_8));
+      initValuesReceived = 0;
+      return true;
+    } else {
+      boolean abort = false;
+      //--------------------------------------------------------------
+      // Only the values we have to keep are copied out of the frame;
+      // the frame's buffer goes back to the pool right after the switch.
+      //--------------------------------------------------------------
+      switch (dataReceived.type()) {
+        case 'A':
+          if (new String(dataReceived.array(), dataReceived.payloadOffset(),
+                         dataReceived.payloadLength(), StandardCharsets.UTF_8).equals("ACK")) {
+            //-----------------------------------------------
+            // Step #4
+            // Server acknowledged our parameters. The
+            // server's parameters will follow.
+            //-----------------------------------------------
+            initValuesReceived = 0;
+            break;
+          }
+        case 'E':
+          // This is an "ERR" message but we skip checking all characters here
+          if (EngineLog.isEnabled())
+            EngineLog.d(TAG, "setupMTE(): server did not acknowledge initial params");
+          abort = true;
+          break;
+        case '1':
+          //---------------------------------------------
+          // We received the server's public Encoder key.
+          // We'll use it to create our Decoder secret.
+          //---------------------------------------------
+          if (decoderSetupInfo.peerPublicKey == null)
+            initValuesReceived++;
+          decoderSetupInfo.peerPublicKey = dataReceived.copyPayload();
+          break;
+        case '2':
+          //----------------------------------------
+          // We received the server's Encoder nonce.
+          // We'll use it for our Decoder.
+          //----------------------------------------
+          if (decoderSetupInfo.nonce == null)
+            initValuesReceived++;
+          decoderSetupInfo.nonce = dataReceived.copyPayload();
+          break;
+        case '3':
+          //---------------------------------------------
+          // We received the server's public Decoder key.
+          // We'll use it to create our Encoder secret.
+          //---------------------------------------------
+          if (encoderSetupInfo.peerPublicKey == null)
+            initValuesReceived++;
+          encoderSetupInfo.peerPublicKey = dataReceived.copyPayload();
+          break;
+        case '4':
+          //----------------------------------------
+          // We received the server's Decoder nonce.
+          // We'll use it for our Encoder.
+          //----------------------------------------
+          if (encoderSetupInfo.nonce == null)
+            initValuesReceived++;
+          encoderSetupInfo.nonce = dataReceived.copyPayload();
+          break;
+        default:
+          if (EngineLog.isEnabled())
+            EngineLog.d(TAG, "setupMTE(): internal software error");
+          abort = true;
+          break;
+      }
+      dataReceived.release();
+      if (abort) {
+        cleanupMTE();
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "setupMTE(): error receiving initial parameters");
+        return false;
+      }
+      if (initValuesReceived < 4)
+        return true;
+      if (EngineLog.isEnabled()) {
+        EngineLog.d(TAG, "------------------------------------------------------------");
+        EngineLog.d(TAG, "Encoder public key      " + bytesToHex(encoderSetupInfo.myPublicKey));
+        EngineLog.d(TAG, "Encoder peer's key      " + bytesToHex(encoderSetupInfo.peerPublicKey));
+        EngineLog.d(TAG, "Encoder nonce           " + bytesToHex(encoderSetupInfo.nonce));
+        EngineLog.d(TAG, "Encoder personalization " + encoderSetupInfo.personalization);
+        EngineLog.d(TAG, "------------------------------------------------------------");
+        EngineLog.d(TAG, "Decoder public key      " + bytesToHex(decoderSetupInfo.myPublicKey));
+        EngineLog.d(TAG, "Decoder peer's key      " + bytesToHex(decoderSetupInfo.peerPublicKey));
+        EngineLog.d(TAG, "Decoder nonce           " + bytesToHex(decoderSetupInfo.nonce));
+        EngineLog.d(TAG, "Decoder personalization " + decoderSetupInfo.personalization);
+        EngineLog.d(TAG, "------------------------------------------------------------");
+      }
+      //-----------------------------------------------------------
+      // Step #5
+      // Now that we have all the data we need, let's
+      // create our Encoder and Decoder entropies. Note that we are
+      // using the peer's Encoder key to create the entropy for our
+      // Decoder and vice versa.
+      //-----------------------------------------------------------
+      if (!createEncoder() || !createDecoder()) {
+        cleanupMTE();
+        return false;
+      }
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "setupMTE(): initialization completed");
+      sendToServer('A', "ACK".getBytes(StandardCharsets.UTF_8));
+      issueTicket();
+      secured();
+      return true;
+    }
+  }
+
+
+  //---------------------------------------------------------------------
+  // createEncoder() and createDecoder() run steps #5 to #7 of setupMTE()
+  // for the Encoder and the Decoder respectively, on the crypto
+  // executor. If they fail, the caller has to call cleanupMTE().
+  //---------------------------------------------------------------------
+  private boolean createEncoder() {
+    encoderSetupInfo.mySecret = new byte[EcdhP256.SzSecretData];
+    if (encoderSetupInfo.ecdh.getSharedSecret(encoderSetupInfo.peerPublicKey,
+                                              encoderSetupInfo.mySecret) != EcdhP256.Success) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "createEncoder(): error generating shared secret for Encoder");
+      return false;
+    }
+    EcdhP256.zeroize(encoderSetupInfo.myPublicKey);
+    encoderSetupInfo.myPublicKey = null;
+    EcdhP256.zeroize(encoderSetupInfo.peerPublicKey);
+    encoderSetupInfo.peerPublicKey = null;
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "Encoder secret = " + bytesToHex(encoderSetupInfo.mySecret));
+    //-------------------------------------------------
+    // Step #6
+    // Create Encoder with default options, of the kind
+    // chosen by SetupParams.mteVariant (see MteEncoder)
+    //-------------------------------------------------
+    MteEncoder encoder = MteEncoder.create(setupParams.mteVariant, setupParams.flenBytes);
+    //
+    //--------------------------------------
+    // Step #6A
+    // Set Entropy and Nonce for our Encoder
+    //--------------------------------------
+    encoder.setEntropy(encoderSetupInfo.mySecret);
+    Arrays.fill(encoderSetupInfo.mySecret, (byte) 0);
+    encoderSetupInfo.mySecret = null;
+    encoder.setNonce(encoderSetupInfo.nonce);
+    encoderSetupInfo.nonce = null;
+    //------------------------
+    // Step #6B
+    // Instantiate the Encoder
+    //------------------------
+    if (encoder.instantiate(encoderSetupInfo.personalization) != MteStatus.mte_status_success) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "createEncoder(): error instantiating MTE Encoder");
+      return false;
+    }
+    encoderSetupInfo.personalization = null;
+    this.encoder = encoder;
+    return true;
+  }
+
+
+  private boolean createDecoder() {
+    decoderSetupInfo.mySecret = new byte[EcdhP256.SzSecretData];
+    if (decoderSetupInfo.ecdh.getSharedSecret(decoderSetupInfo.peerPublicKey,
+                                              decoderSetupInfo.mySecret) != EcdhP256.Success) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "createDecoder(): error generating shared secret for Decoder");
+      return false;
+    }
+    EcdhP256.zeroize(decoderSetupInfo.myPublicKey);
+    decoderSetupInfo.myPublicKey = null;
+    EcdhP256.zeroize(decoderSetupInfo.peerPublicKey);
+    decoderSetupInfo.peerPublicKey = null;
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "Decoder secret = " + bytesToHex(decoderSetupInfo.mySecret));
+    //-------------------------------------------------
+    // Step #7
+    // Create Decoder with default options, of the kind
+    // chosen by SetupParams.mteVariant (see MteDecoder)
+    //-------------------------------------------------
+    MteDecoder decoder = MteDecoder.create(setupParams.mteVariant, setupParams.decoderTsWindow,
+                                           setupParams.decoderSeqWindow);
+    //
+    //--------------------------------------
+    // Step #7A
+    // Set Entropy and Nonce for our Decoder
+    //--------------------------------------
+    decoder.setEntropy(decoderSetupInfo.mySecret);
+    Arrays.fill(decoderSetupInfo.mySecret, (byte) 0);
+    decoderSetupInfo.mySecret = null;
+    decoder.setNonce(decoderSetupInfo.nonce);
+    decoderSetupInfo.nonce = null;
+    //------------------------
+    // Step #7B
+    // Instantiate the Decoder
+    //------------------------
+    if (decoder.instantiate(decoderSetupInfo.personalization) != MteStatus.mte_status_success) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "createDecoder(): error instantiating MTE Decoder");
+      return false;
+    }
+    decoderSetupInfo.personalization = null;
+    streamDecrypting = false;
+    this.decoder = decoder;
+    return true;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // The compact handshake (see SetupParams.compactHandshake) sets up MTE in a
+  // single round trip. startCompactHandshake() gets both key pairs (usually
+  // from the EcdhKeyPool, see createKeyPair()) and sends them to the server
+  // together with both personalization strings in one 'H' frame:
+  //   public key of our Encoder, public key of our Decoder,
+  //   personalization of our Encoder, personalization of our Decoder
+  // each with its length (2 bytes, BIG Endian) in front. The server answers
+  // with one 'h' frame holding its Encoder's public key and nonce and its
+  // Decoder's public key and nonce in the same way, or with an 'E' frame.
+  //--------------------------------------------------------------------------
+  private boolean startCompactHandshake() {
+    if (!createKeyPair(encoderSetupInfo) || !createKeyPair(decoderSetupInfo)) {
+      cleanupMTE();
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "startCompactHandshake(): Key pairs generation failed");
+      return false;
+    }
+    encoderSetupInfo.personalization = UUID.randomUUID().toString();
+    decoderSetupInfo.personalization = UUID.randomUUID().toString();
+    byte[] encoderPersonalization = encoderSetupInfo.personalization.getBytes(StandardCharsets.UTF_8);
+    byte[] decoderPersonalization = decoderSetupInfo.personalization.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer hello = ByteBuffer.allocate(8 + encoderSetupInfo.myPublicKey.length +
+                                           decoderSetupInfo.myPublicKey.length +
+                                           encoderPersonalization.length +
+                                           decoderPersonalization.length);
+    putField(hello, encoderSetupInfo.myPublicKey);
+    putField(hello, decoderSetupInfo.myPublicKey);
+    putField(hello, encoderPersonalization);
+    putField(hello, decoderPersonalization);
+    if (!sendToServer('H', hello.array())) {
+      cleanupMTE();
+      return false;
+    }
+    return true;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // compactReplyReceived() finishes the compact handshake on the crypto
+  // executor, where the Encoder and the Decoder are created one after the
+  // other. Once both are ready, the app is told "Ready" just like at the end
+  // of setupMTE(); there is no "ACK" to send, the server may use its own
+  // Encoder and Decoder as soon as it has sent its reply.
+  //--------------------------------------------------------------------------
+  private void compactReplyReceived(InboundFrame frame) {
+    ByteBuffer reply = frame.payload();
+    boolean ok = true;
+    try {
+      decoderSetupInfo.peerPublicKey = getField(reply);
+      decoderSetupInfo.nonce = getField(reply);
+      encoderSetupInfo.peerPublicKey = getField(reply);
+      encoderSetupInfo.nonce = getField(reply);
+    } catch (BufferUnderflowException e) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "compactReplyReceived(): invalid reply from server");
+      ok = false;
+    }
+    frame.release();
+    ok = ok && (encoderSetupInfo.ecdh != null) && (decoderSetupInfo.ecdh != null)
+         && createEncoder() && createDecoder();
+    if (!ok) {
+      cleanupMTE();
+      setupFailed();
+      return;
+    }
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "compactReplyReceived(): initialization completed");
+    issueTicket();
+    secured();
+  }
+
+
+  //--------------------------------------------------------------------------
+  // Session resumption (see SetupParams.resumeSessions):
+  // Right after a successful setup, issueTicket() sends the server a random
+  // session ticket in a 'T' frame. When the session is closed, saveState()
+  // puts the state of our Encoder and Decoder into the SessionStore under
+  // that ticket; the server does the same on its side.
+  // On the next connection to the same server, startResume() only sends the
+  // ticket in an 'R' frame. If the server still has the state, it restores its
+  // Encoder and Decoder and answers "ACK" in an 'r' frame, and we restore ours:
+  // one round trip instead of a full setup. If it answers "ERR" (or our own
+  // state is gone), the normal setup is run after all.
+  // A saved state is used once only; a channel (see ChannelMux) is never
+  // resumed, its number changes from one connection to the next.
+  //--------------------------------------------------------------------------
+  private void issueTicket() {
+    if (!setupParams.resumeSessions || (sessionStore == null) || (parent != null))
+      return;
+    if (ticket == null) {
+      ticket = new byte[TICKET_SIZE];
+      new SecureRandom().nextBytes(ticket);
+    }
+    sendToServer('T', ticket);
+  }
+
+
+  private boolean startResume() {
+    if ((sessionStore == null) || (parent != null))
+      return false;
+    ticket = sessionStore.get(ticketKey());
+    if (ticket == null)
+      return false;
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "setupMTE(): resuming session " + bytesToHex(ticket));
+    return sendToServer('R', ticket);
+  }
+
+
+  private void resumeReplyReceived(InboundFrame frame) {
+    boolean accepted = "ACK".equals(new String(frame.array(), frame.payloadOffset(),
+                                               frame.payloadLength(), StandardCharsets.UTF_8));
+    frame.release();
+    if (ticket == null)
+      return;
+    byte[] state = sessionStore.get(stateKey(ticket));
+    sessionStore.remove(stateKey(ticket));
+    if (accepted && (state != null) && restoreState(state)) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "resumeReplyReceived(): session resumed");
+      secured();
+      return;
+    }
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "resumeReplyReceived(): session not resumed, running full setup");
+    // Forget the ticket, so that runSetupMTE() goes for the full setup.
+    sessionStore.remove(ticketKey());
+    ticket = null;
+    if (!runSetupMTE(null))
+      setupFailed();
+  }
+
+
+  //------------------------------------------------------------------
+  // saveState() stores the state of the Encoder and the Decoder, each
+  // with its length in front, plus the ticket to find it again. This is
+  // only done if nothing is in flight: no request waiting for its
+  // answer, no stream, no message waiting in the MessageBatcher and no
+  // frame which has not been written to the socket yet. It must be
+  // called under the encoder lock, before the transport is stopped.
+  //------------------------------------------------------------------
+  private void saveState() {
+    if (!setupParams.resumeSessions || (sessionStore == null) || (ticket == null) || !isSecured())
+      return;
+    if ((pipeline.inFlight() > 0) || (streamsSending.get() > 0) || (streamReceiver != null)
+        || !batcher.isIdle() || (transport.unsentFrames() > 0)) {
+      //-------------------------------------------------------------
+      // Frames may be lost with the connection, so the server's state
+      // may not match ours any more: the next time we need the full
+      // setup.
+      //-------------------------------------------------------------
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "saveState(): data in flight, session can not be resumed");
+      dropState();
+      return;
+    }
+    byte[] encoderState = encoder.saveState();
+    byte[] decoderState = decoder.saveState();
+    if ((encoderState == null) || (decoderState == null)) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "saveState(): MTE state could not be saved");
+      return;
+    }
+    ByteBuffer state = ByteBuffer.allocate(4 + encoderState.length + decoderState.length);
+    putField(state, encoderState);
+    putField(state, decoderState);
+    sessionStore.put(ticketKey(), ticket);
+    sessionStore.put(stateKey(ticket), state.array());
+    EcdhP256.zeroize(encoderState);
+    EcdhP256.zeroize(decoderState);
+    EcdhP256.zeroize(state.array());
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "saveState(): saved session " + bytesToHex(ticket));
+  }
+
+
+  //------------------------------------------------------------------
+  // dropState() forgets the ticket and any state saved under it, so
+  // the next connection runs the full setup.
+  //------------------------------------------------------------------
+  private void dropState() {
+    if (sessionStore == null)
+      return;
+    if (ticket != null)
+      sessionStore.remove(stateKey(ticket));
+    sessionStore.remove(ticketKey());
+    ticket = null;
+  }
+
+
+  private boolean restoreState(byte[] state) {
+    ByteBuffer buffer = ByteBuffer.wrap(state);
+    boolean ok;
+    try {
+      byte[] encoderState = getField(buffer);
+      byte[] decoderState = getField(buffer);
+      MteEncoder restoredEncoder = MteEncoder.create(setupParams.mteVariant, setupParams.flenBytes);
+      MteDecoder restoredDecoder = MteDecoder.create(setupParams.mteVariant,
+                                                     setupParams.decoderTsWindow,
+                                                     setupParams.decoderSeqWindow);
+      ok = (restoredEncoder.restoreState(encoderState) == MteStatus.mte_status_success)
+           && (restoredDecoder.restoreState(decoderState) == MteStatus.mte_status_success);
+      if (ok) {
+        streamDecrypting = false;
+        encoder = restoredEncoder;
+        decoder = restoredDecoder;
+      }
+      EcdhP256.zeroize(encoderState);
+      EcdhP256.zeroize(decoderState);
+    } catch (BufferUnderflowException e) {
+      ok = false;
+    }
+    EcdhP256.zeroize(state);
+    if (!ok && EngineLog.isEnabled())
+      EngineLog.d(TAG, "restoreState(): MTE state could not be restored");
+    return ok;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // secured() is called at the end of every successful setup or resumption.
+  // After a reconnect (see ConnectionSupervisor), the requests which had not
+  // been answered when the connection was lost are encoded again with the
+  // new Encoder and sent again, in their original order and with their
+  // original ids, before anything else can be encoded. Then the app is told
+  // "Ready".
+  //--------------------------------------------------------------------------
+  private void secured() {
+    List<RequestPipeline.Entry> unanswered = pipeline.unanswered();
+    if (!unanswered.isEmpty()) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "secured(): sending " + unanswered.size() + " request(s) again");
+      //-------------------------------------------------------------
+      // Nothing else may be encoded before these requests, so waiting
+      // for room in the send queue is done under the encoder lock.
+      //-------------------------------------------------------------
+      synchronized (encoderLock) {
+        for (RequestPipeline.Entry request : unanswered) {
+          ChannelMux.Channel writer = transport;
+          boolean reserved;
+          try {
+            awaitEncoder();
+            reserved = (writer != null) && writer.awaitReservation();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reserved = false;
+          }
+          byte[] compressed = reserved ? compress(request.data, 0, request.data.length) : null;
+          byte[] encoded = reserved ? encodeData((compressed == null) ? request.data : compressed) : null;
+          if (encoded == null) {
+            if (reserved)
+              writer.cancelReservation();
+            if (EngineLog.isEnabled())
+              EngineLog.d(TAG, "secured(): request #" + request.id + " could not be sent again");
+            pipeline.reset();
+            break;
+          }
+          int type = (compressed == null) ? 'm' : 'm' | Compressor.COMPRESSED;
+          if (!queueFrame(writer, type, encoded, true, null)) {
+            encoderOutOfStep(writer);
+            return;
+          }
+        }
+      }
+    }
+    if (supervisor != null)
+      supervisor.secured();
+    postAnswerToApp("Ready".getBytes(StandardCharsets.UTF_8));
+  }
+
+
+  //------------------------------------------------------------------
+  // Every session has a ticket of its own, even if several sessions
+  // talk to the same server. The key uses the session id, so after a
+  // restart of the app the session with the same id resumes it.
+  //------------------------------------------------------------------
+  private String ticketKey() {
+    return "ticket/" + setupParams.ipAddress + ":" + setupParams.port + "#" + id;
+  }
+
+
+  private static String stateKey(byte[] ticket) {
+    return "state/" + bytesToHex(ticket);
+  }
+
+
+  //------------------------------------------------------------------
+  // createKeyPair() takes a key pair from the EcdhKeyPool, which only
+  // has to create one on the spot if it has run dry.
+  //------------------------------------------------------------------
+  private static boolean createKeyPair(MteSetupInfo setupInfo) {
+    EcdhKeyPool.KeyPair keyPair = EcdhKeyPool.getShared().acquire();
+    if (keyPair == null) {
+      setupInfo.ecdh = null;
+      return false;
+    }
+    setupInfo.ecdh = keyPair.ecdh;
+    setupInfo.myPublicKey = keyPair.publicKey;
+    return true;
+  }
+
+
+  private static void putField(ByteBuffer buffer, byte[] field) {
+    buffer.putShort((short) field.length);
+    buffer.put(field);
+  }
+
+
+  private static byte[] getField(ByteBuffer buffer) {
+    byte[] field = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(field);
+    return field;
+  }
+
+
+  private void cleanupMTE() {
+    // A key pair which has not been used yet still holds its private key.
+    if ((encoderSetupInfo.ecdh != null) && (encoderSetupInfo.myPublicKey != null))
+      EcdhKeyPool.wipe(encoderSetupInfo.ecdh, encoderSetupInfo.myPublicKey);
+    encoderSetupInfo.ecdh = null;
+    if (encoderSetupInfo.myPublicKey != null)
+      EcdhP256.zeroize(encoderSetupInfo.myPublicKey);
+    encoderSetupInfo.myPublicKey = null;
+    if (encoderSetupInfo.peerPublicKey != null)
+      EcdhP256.zeroize(encoderSetupInfo.peerPublicKey);
+    encoderSetupInfo.peerPublicKey = null;
+    if (encoderSetupInfo.mySecret != null)
+      EcdhP256.zeroize(encoderSetupInfo.mySecret);
+    encoderSetupInfo.mySecret = null;
+    encoderSetupInfo.nonce = null;
+    encoderSetupInfo.personalization = null;
+
+    if ((decoderSetupInfo.ecdh != null) && (decoderSetupInfo.myPublicKey != null))
+      EcdhKeyPool.wipe(decoderSetupInfo.ecdh, decoderSetupInfo.myPublicKey);
+    decoderSetupInfo.ecdh = null;
+    if (decoderSetupInfo.myPublicKey != null)
+      EcdhP256.zeroize(decoderSetupInfo.myPublicKey);
+    decoderSetupInfo.myPublicKey = null;
+    if (decoderSetupInfo.peerPublicKey != null)
+      EcdhP256.zeroize(decoderSetupInfo.peerPublicKey);
+    decoderSetupInfo.peerPublicKey = null;
+    if (decoderSetupInfo.mySecret != null)
+      EcdhP256.zeroize(decoderSetupInfo.mySecret);
+    decoderSetupInfo.mySecret = null;
+    decoderSetupInfo.nonce = null;
+    decoderSetupInfo.personalization = null;
+
+    encoder = null;
+    decoder = null;
+  }
+
+
+  //-----------------------------------------------------------------
+  // open() creates and opens a socket to the server and starts the
+  // transport (see SetupParams.transport) which will serve the
+  // connection until it is closed.
+  //-----------------------------------------------------------------
+  boolean open() {
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "open(): Enter");
+    if (socket != null) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "open(): Exit, socket already open");
+      return false;
+    }
+    if (parent != null)
+      return openChannel();
+    //----------------------------------------------------------------
+    // We have to run the opening of the socket in a different thread,
+    // otherwise Android will throw a "NetworkOnMainThreadException"
+    //----------------------------------------------------------------
+    Thread openingThread = new Thread(() -> {
+      if (connect())
+        postAnswerToApp("Ready".getBytes(StandardCharsets.UTF_8));
+      else
+        postAnswerToApp("Error".getBytes(StandardCharsets.UTF_8));
+    });
+    openingThread.start();
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "open(): Exit, trying to connect");
+    return true;
+  }
+
+
+  //-----------------------------------------------------------------
+  // connect() opens the socket and starts the transport. It blocks
+  // until the connection has been made or has failed.
+  //-----------------------------------------------------------------
+  private boolean connect() {
+    // Create and open the network socket
+    try {
+      //-------------------------------------------------------------
+      // From now on, the transport is the only one which is ever
+      // going to read from or write to the socket. This session is
+      // channel 0 of the connection; further sessions may be opened
+      // as channels on it later.
+      //-------------------------------------------------------------
+      ChannelMux connectionMux = new ChannelMux();
+      FrameTransport connection;
+      if (setupParams.transport == TransportType.NIO) {
+        SocketChannel channel = SocketChannel.open(
+            new InetSocketAddress(setupParams.ipAddress, setupParams.port));
+        socket = channel.socket();
+        socket.setTcpNoDelay(setupParams.tcpNoDelay);
+        connection = new NioTransport(channel, connectionMux.getDispatcher(),
+                                      ChannelMux.TRANSPORT_QUEUE_CAPACITY);
+      } else {
+        socket = new Socket(setupParams.ipAddress, setupParams.port);
+        socket.setTcpNoDelay(setupParams.tcpNoDelay);
+        connection = new StreamTransport(socket, connectionMux.getDispatcher(),
+                                         ChannelMux.TRANSPORT_QUEUE_CAPACITY);
+      }
+      connectionMux.attach(connection);
+      mux = connectionMux;
+      ChannelMux.Channel connected = mux.openChannel(0, createDispatcher(), setupParams.sendQueueSize);
+      connected.setStopListener(e -> connectionLost(connected, e));
+      transport = connected;
+      connected.start();
+      //-------------------------------------------------------------
+      // The heartbeat runs on channel 0 and watches the whole
+      // connection, including any channels opened on it.
+      //-------------------------------------------------------------
+      if (setupParams.heartbeatInterval > 0) {
+        heartbeat = new Heartbeat(TAG, mux, rttStats, setupParams.heartbeatInterval,
+                                  setupParams.heartbeatTimeout,
+                                  () -> heartbeatMissed(connected));
+        heartbeat.start();
+      }
+    } catch (IOException e) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "connect(): IOException creating socket and/or readers/writers");
+      if (socket != null) {
+        try {
+          socket.close();
+        } catch (IOException ce) {
+          // Nothing we can do about it.
+        }
+      }
+      socket = null;
+      return false;
+    }
+    socketOpen = true;
+    return true;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // connectionLost() is called by the transport if the connection broke down
+  // (the server closed it, or reading or writing failed). The connection is
+  // dropped in any case. Without SetupParams.autoReconnect, the app is told
+  // "Error" and may open the session again. Otherwise the ConnectionSupervisor
+  // tries to bring it back; the app is told "Reconnecting", and later "Ready"
+  // once the session is secured again or "Error" if the supervisor gives up.
+  // A connection of the supervisor which is lost before the session has been
+  // secured again only makes it go on with its next attempt.
+  //--------------------------------------------------------------------------
+  private void connectionLost(FrameTransport lostTransport, IOException e) {
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, e == null ? "connectionLost(): socket closed by server"
+                                 : "connectionLost(): " + e.getMessage());
+    cryptoExecutor.execute(() -> {
+      synchronized (connectionLock) {
+        // Ignore late news of a connection which has already been replaced.
+        if (!socketOpen || (transport != lostTransport))
+          return;
+        disconnect(false);
+      }
+      cleanupMTE();
+      // A stream being received is lost with the connection.
+      StreamReceiver receiver = streamReceiver;
+      streamReceiver = null;
+      if (receiver != null)
+        postStreamCompleted(receiver.callback, false, receiver.bytes);
+      if (supervisor == null) {
+        postAnswerToApp("Error".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      if (supervisor.connectionLost())
+        postAnswerToApp("Reconnecting".getBytes(StandardCharsets.UTF_8));
+    });
+  }
+
+
+  //--------------------------------------------------------------------------
+  // heartbeatMissed() is called if the server has not answered a heartbeat in
+  // time. The socket is closed, so the transport stops for sure, and the
+  // connection is treated just like one the transport found broken.
+  //--------------------------------------------------------------------------
+  private void heartbeatMissed(FrameTransport deadTransport) {
+    Socket deadSocket = socket;
+    if ((deadSocket == null) || (transport != deadTransport))
+      return;
+    try {
+      deadSocket.close();
+    } catch (IOException ce) {
+      // Nothing we can do about it.
+    }
+    connectionLost(deadTransport, new IOException("heartbeat timed out"));
+  }
+
+
+  //--------------------------------------------------------------------------
+  // reconnect() is one attempt of the ConnectionSupervisor. Once the socket is
+  // open again, the MTE setup is run (or the session resumed, see
+  // SetupParams.resumeSessions) without the app having to ask for it, and the
+  // requests which were still waiting for an answer are sent again as soon as
+  // the session is secured (see secured()). Only then does the supervisor
+  // count the attempt as successful.
+  //--------------------------------------------------------------------------
+  private boolean reconnect() {
+    if (!connect())
+      return false;
+    if (supervisor.isStopped()) {
+      // The session has been closed in the meantime.
+      disconnect(true);
+      return true;
+    }
+    cryptoExecutor.execute(() -> {
+      if (!runSetupMTE(null))
+        setupFailed();
+    });
+    return true;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // abandonConnection() drops the connection of a reconnect attempt whose MTE
+  // setup failed or did not finish in time. Whatever the setup has created so
+  // far is cleaned up on the crypto executor, before the next attempt can
+  // start its own setup there.
+  //--------------------------------------------------------------------------
+  private void abandonConnection() {
+    disconnect(false);
+    cryptoExecutor.execute(this::cleanupMTE);
+  }
+
+
+  //---------------------------------------------------------------------
+  // openChannel() opens this session as a new channel on the connection
+  // of the parent session. No socket has to be opened, so the app is
+  // told "Ready" right away and may run setupMTE(null) on the channel;
+  // the handshake frames simply travel on the channel.
+  //---------------------------------------------------------------------
+  private boolean openChannel() {
+    ChannelMux connectionMux = parent.mux;
+    if ((connectionMux == null) || !parent.isOpen()) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "openChannel(): Exit, parent session is not connected");
+      return false;
+    }
+    int number = connectionMux.nextChannelNumber();
+    if (number < 0) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "openChannel(): Exit, no more channels on this connection");
+      return false;
+    }
+    mux = connectionMux;
+    ChannelMux.Channel channel = mux.openChannel(number, createDispatcher(), setupParams.sendQueueSize);
+    //-----------------------------------------------------------------
+    // If the connection goes down, the channel goes with it; the app
+    // is told "Error" (see connectionLost()).
+    //-----------------------------------------------------------------
+    channel.setStopListener(e -> connectionLost(channel, e));
+    transport = channel;
+    channel.start();
+    socket = parent.socket;
+    socketOpen = true;
+    postAnswerToApp("Ready".getBytes(StandardCharsets.UTF_8));
+    return true;
+  }
+
+
+  //-----------------------------------------------------
+  // close() closes the socket to the server and clears
+  // all associated variables. A channel only leaves the
+  // connection, which stays open for the other sessions.
+  // With SetupParams.resumeSessions, the MTE state is saved
+  // first so that the next connection can resume it.
+  // We don't need an extra thread to close a socket!
+  //-----------------------------------------------------
+  void close() {
+    if (supervisor != null)
+      supervisor.stop();
+    disconnect(true);
+  }
+
+
+  //-----------------------------------------------------------------
+  // disconnect() takes the connection down. Only a clean close saves
+  // the MTE state for resumption: after a lost connection, frames may
+  // have been lost in either direction, so the state is thrown away
+  // and the next connection runs the full setup.
+  //-----------------------------------------------------------------
+  private void disconnect(boolean clean) {
+    synchronized (connectionLock) {
+      if (!socketOpen)
+        return;
+      Heartbeat connectionHeartbeat = heartbeat;
+      heartbeat = null;
+      if (connectionHeartbeat != null)
+        connectionHeartbeat.stop();
+      //-------------------------------------------------------------
+      // Stopping the transport drops the frames which are still
+      // queued, so the state is saved (or not, see saveState())
+      // before, and nothing may be encoded in between.
+      //-------------------------------------------------------------
+      synchronized (encoderLock) {
+        if (clean)
+          saveState();
+        else
+          dropState();
+        transport.stop();
+      }
+      try {
+        if (parent == null)
+          socket.close();
+      } catch (IOException e) {
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "close(): IOException closing socket");
+      }
+      socket = null;
+      mux = null;
+      transport = null;
+      socketOpen = false;
+    }
+  }
+
+
+  //----------------------------------------------------------------------------
+  // sendToServer() will queue the given data for the writer thread and returns
+  // immediately; it never blocks the calling thread. If the send queue is full,
+  // sendToServer() returns false and the caller may try again later.
+  // Answers are picked up by the transport (see "createDispatcher()").
+  // An optional SendCallback will be run on the transport's thread as soon as
+  // the data has been written (or could not be written) to the socket.
+  //----------------------------------------------------------------------------
+  public boolean sendToServer(int header, byte[] data) {
+    return sendToServer(header, data, null);
+  }
+
+
+  public boolean sendToServer(int header, byte[] data,
+                              FrameTransport.SendCallback sendCallback) {
+    return queueFrame(transport, header, data, false, sendCallback);
+  }
+
+
+  //----------------------------------------------------------------------------
+  // queueFrame() does the work of sendToServer(). An encoded frame is queued
+  // into the place which has been reserved for it before encoding (see
+  // ChannelMux.Channel.reserve()), so it is only turned away if the transport
+  // stopped; the caller must then call encoderOutOfStep().
+  //----------------------------------------------------------------------------
+  private boolean queueFrame(ChannelMux.Channel writer, int header, byte[] data,
+                             boolean reserved, FrameTransport.SendCallback sendCallback) {
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "sendToServer(): Enter");
+    if (writer == null) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "sendToServer(): Exit, socket not open");
+      return false;
+    }
+    long queuedAt = System.nanoTime();
+    FrameTransport.SendCallback sent = success -> {
+      metrics.sendCompleted(queuedAt, data.length, success);
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, success ? "sendToServer(): data sent to server"
+                                 : "sendToServer(): exception writing to socket");
+      if (sendCallback != null)
+        sendCallback.sendCompleted(success);
+    };
+    boolean queued = reserved ? writer.sendReserved(header, data, sent)
+                              : writer.send(header, data, sent);
+    if (!queued) {
+      metrics.sendFailed();
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "sendToServer(): send queue is full");
+    }
+    return queued;
+  }
+
+
+  //----------------------------------------------------------------------------
+  // sendRequest() encodes the given data with MTE, sends it to the server and
+  // registers it as a request waiting for an answer. Up to "pipelineWindow"
+  // requests (see SetupParams) may be in flight at once; the answers are
+  // delivered through SocketCallback.replyFromServer() together with the id
+  // of the Request returned here.
+  //
+  // Because MTE is sequential, data must be queued for sending in the very
+  // same order in which it has been encoded; sendRequest() takes care of that
+  // even if streams are being sent at the same time (see sendStream()). A place
+  // in the send queue is reserved before the data is encoded, so encoded data
+  // is never turned away because the queue is full.
+  // Returns null if the window or the send queue is full, or while an MKE
+  // stream is being sent. With MteVariant.FLEN, null is also returned for
+  // data longer than "flenBytes" (see SetupParams), which FLEN cannot encode.
+  //----------------------------------------------------------------------------
+  public Request sendRequest(byte[] data) {
+    if ((setupParams.mteVariant == MteVariant.FLEN) && (data.length > setupParams.flenBytes)) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "sendRequest(): " + data.length + " bytes do not fit into FLEN's "
+                         + setupParams.flenBytes + " bytes");
+      return null;
+    }
+    RequestPipeline requests = pipeline;
+    synchronized (encoderLock) {
+      if (streamEncrypting) {
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "sendRequest(): an MKE stream is being sent");
+        return null;
+      }
+      ChannelMux.Channel writer = transport;
+      if ((writer == null) || !writer.reserve()) {
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "sendRequest(): send queue is full");
+        return null;
+      }
+      long id = requests.begin(data);
+      if (id == RequestPipeline.NO_REQUEST) {
+        writer.cancelReservation();
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "sendRequest(): pipeline window is full");
+        return null;
+      }
+      byte[] compressed = compress(data, 0, data.length);
+      byte[] encoded = encodeData((compressed == null) ? data : compressed);
+      if (encoded == null) {
+        writer.cancelReservation();
+        requests.cancel(id);
+        return new Request(id, null);
+      }
+      if (!queueFrame(writer, (compressed == null) ? 'm' : 'm' | Compressor.COMPRESSED, encoded,
+                      true, null)) {
+        requests.cancel(id);
+        encoderOutOfStep(writer);
+        return null;
+      }
+      return new Request(id, encoded);
+    }
+  }
+
+
+  //----------------------------------------------------------------------------
+  // encoderOutOfStep() is called if a frame could not be queued after its data
+  // had been encoded, which only happens if the transport stopped in the
+  // meantime. Our Encoder is then one step ahead of the server's Decoder and
+  // nothing encoded from now on could be decoded, so the session is broken:
+  // it is dropped like a lost connection, which throws its saved state away.
+  // With SetupParams.autoReconnect, it is set up from scratch again; without,
+  // the app is told "Error".
+  //----------------------------------------------------------------------------
+  private void encoderOutOfStep(FrameTransport brokenTransport) {
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "encoderOutOfStep(): encoded data could not be queued");
+    connectionLost(brokenTransport, new IOException("encoded data could not be queued"));
+  }
+
+
+  //---------------------------------------------------------------------------
+  // This variant of sendRequest() returns right away. The data is encoded and
+  // sent on the session's crypto executor, in the order of the calls, and the
+  // Request (or null, see above) is handed to the callback on the main UI
+  // thread.
+  //---------------------------------------------------------------------------
+  public void sendRequest(byte[] data, RequestCallback callback) {
+    cryptoExecutor.execute(() -> {
+      Request request = sendRequest(data);
+      if (callback != null)
+        delivery.post(() -> callback.requestSent(request));
+    });
+  }
+
+
+  //----------------------------------------------------------------------------
+  // sendMessage() sends a one-way message, e.g. telemetry, which the server does
+  // not answer. Messages are not encoded one by one: the MessageBatcher packs
+  // them into batches (see SetupParams.batchMaxBytes and batchMaxDelay), and
+  // each batch is encoded as a whole and sent as a single 'b' frame. This
+  // saves the per-message overhead of MTE and of the framing for lots of
+  // small messages, at the price of up to "batchMaxDelay" ms of latency.
+  // Messages sent by the server the same way go to
+  // SocketCallback.messagesFromServer(), one call per batch.
+  // Returns false if the session is not secured, or with MteVariant.FLEN,
+  // whose fixed size is too small for a batch.
+  //----------------------------------------------------------------------------
+  public boolean sendMessage(byte[] data) {
+    if (setupParams.mteVariant == MteVariant.FLEN) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "sendMessage(): messages are not available with FLEN");
+      return false;
+    }
+    if ((transport == null) || !isSecured()) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "sendMessage(): not secured yet");
+      return false;
+    }
+    batcher.add(data);
+    return true;
+  }
+
+
+  //------------------------------------------------------------------
+  // flushMessages() sends the messages collected so far without
+  // waiting for the batch to fill up.
+  //------------------------------------------------------------------
+  public void flushMessages() {
+    batcher.flush();
+  }
+
+
+  private void sendBatch(byte[] batch) {
+    boolean sent;
+    try {
+      sent = encodeAndSend('b', batch, batch.length, null);
+    } catch (InterruptedException e) {
+      sent = false;
+    }
+    if (!sent && EngineLog.isEnabled())
+      EngineLog.d(TAG, "sendBatch(): batch of " + batch.length + " bytes could not be sent");
+  }
+
+
+  //----------------------------------------------------------------------------
+  // sendStream() sends everything which can be read from "in" to the server,
+  // no matter how large it is. The data is read in chunks of STREAM_CHUNK_SIZE
+  // bytes, each chunk is encoded on its own and sent as a 'c' frame; an empty
+  // 'z' frame marks the end of the stream ("ERR" if reading failed).
+  // Sending runs in a thread of its own and only ever holds a few chunks in
+  // memory: once STREAM_CHUNKS_IN_FLIGHT chunks are waiting in the send queue,
+  // reading pauses until the transport has written one of them.
+  // The callback, if any, is run on the callback executor when the stream is
+  // done. Returns false if the session is not secured, or with
+  // MteVariant.FLEN, whose fixed size is too small for a chunk.
+  //----------------------------------------------------------------------------
+  public boolean sendStream(InputStream in, StreamCallback callback) {
+    if (setupParams.mteVariant == MteVariant.FLEN) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "sendStream(): streams are not available with FLEN");
+      return false;
+    }
+    if ((transport == null) || (encoder == null)) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "sendStream(): not secured yet");
+      return false;
+    }
+    streamsSending.incrementAndGet();
+    Thread streamThread = new Thread(() -> {
+      Semaphore chunksInFlight = new Semaphore(STREAM_CHUNKS_IN_FLIGHT);
+      boolean[] sendFailed = new boolean[1];
+      FrameTransport.SendCallback chunkSent = success -> {
+        if (!success)
+          sendFailed[0] = true;
+        chunksInFlight.release();
+      };
+      byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+      long[] bytes = new long[1];
+      boolean success = true;
+      MteEncoder streamEncoder = encoder;
+      if ((streamEncoder != null) && streamEncoder.canEncryptChunks()) {
+        success = sendEncryptedStream(in, chunksInFlight, chunkSent, bytes);
+      } else {
+        try {
+          int rd;
+          while ((rd = in.read(chunk)) >= 0) {
+            if (rd == 0)
+              continue;
+            chunksInFlight.acquire();
+            if (sendFailed[0] || !encodeAndSend('c', chunk, rd, chunkSent)) {
+              success = false;
+              break;
+            }
+            bytes[0] += rd;
+          }
+        } catch (IOException | InterruptedException e) {
+          if (EngineLog.isEnabled())
+            EngineLog.d(TAG, "sendStream(): reading the stream failed");
+          success = false;
+        }
+        sendToServer('z', success ? new byte[0] : "ERR".getBytes(StandardCharsets.UTF_8));
+      }
+      streamsSending.decrementAndGet();
+      postStreamCompleted(callback, success && !sendFailed[0], bytes[0]);
+    }, "StreamSender");
+    streamThread.start();
+    return true;
+  }
+
+
+  //---------------------------------------------------------------------------
+  // With MKE, sendEncryptedStream() sends the whole stream as a single MTE
+  // message using chunked encryption: every chunk is encrypted in place and
+  // sent as a 'c' frame, the last bytes from finishEncrypt() follow in one
+  // more 'c' frame, then comes the 'z' frame. The Encoder can not encode
+  // anything else in the meantime, so "streamEncrypting" is set for the whole
+  // stream; the encoder lock itself is only taken for each chunk, never while
+  // reading the stream or waiting for the transport. Compression is not used
+  // for such streams.
+  //---------------------------------------------------------------------------
+  private boolean sendEncryptedStream(InputStream in, Semaphore chunksInFlight,
+                                      FrameTransport.SendCallback chunkSent, long[] bytes) {
+    MteEncoder streamEncoder;
+    synchronized (encoderLock) {
+      try {
+        awaitEncoder();
+      } catch (InterruptedException e) {
+        return false;
+      }
+      streamEncoder = encoder;
+      if ((streamEncoder == null)
+          || (streamEncoder.startEncrypt() != MteStatus.mte_status_success))
+        return false;
+      streamEncrypting = true;
+    }
+    boolean success = true;
+    try {
+      byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+      try {
+        int rd;
+        while ((rd = in.read(chunk)) >= 0) {
+          if (rd == 0)
+            continue;
+          chunksInFlight.acquire();
+          ChannelMux.Channel writer = transport;
+          if ((writer == null) || !writer.awaitReservation()) {
+            success = false;
+            break;
+          }
+          // The transport keeps the array until it is written.
+          byte[] encrypted = Arrays.copyOf(chunk, rd);
+          synchronized (encoderLock) {
+            if (streamEncoder.encryptChunk(encrypted, 0, rd) != MteStatus.mte_status_success) {
+              writer.cancelReservation();
+              success = false;
+              break;
+            }
+            if (!queueFrame(writer, 'c', encrypted, true, chunkSent)) {
+              encoderOutOfStep(writer);
+              success = false;
+              break;
+            }
+          }
+          bytes[0] += rd;
+        }
+      } catch (IOException | InterruptedException e) {
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "sendEncryptedStream(): reading the stream failed");
+        success = false;
+      }
+      ChannelMux.Channel writer = transport;
+      boolean reserved;
+      try {
+        reserved = success && (writer != null) && writer.awaitReservation();
+      } catch (InterruptedException e) {
+        reserved = false;
+      }
+      synchronized (encoderLock) {
+        MteBase.ArrStatus last = streamEncoder.finishEncrypt();
+        if (!reserved) {
+          success = false;
+        } else if (last.status != MteStatus.mte_status_success) {
+          writer.cancelReservation();
+          success = false;
+        } else if (!queueFrame(writer, 'c', last.arr, true, null)) {
+          encoderOutOfStep(writer);
+          success = false;
+        }
+      }
+      try {
+        sendWhenRoom('z', success ? new byte[0] : "ERR".getBytes(StandardCharsets.UTF_8), null);
+      } catch (InterruptedException e) {
+        success = false;
+      }
+    } finally {
+      //-------------------------------------------------------------
+      // Only now, after the 'z' frame, may anything else be encoded.
+      //-------------------------------------------------------------
+      synchronized (encoderLock) {
+        streamEncrypting = false;
+        encoderLock.notifyAll();
+      }
+    }
+    return success;
+  }
+
+
+  //---------------------------------------------------------------------------
+  // awaitEncoder() waits until no MKE stream is using the Encoder (see
+  // sendEncryptedStream()). It must be called under the encoder lock, which
+  // it gives up while waiting.
+  //---------------------------------------------------------------------------
+  private void awaitEncoder() throws InterruptedException {
+    while (streamEncrypting)
+      encoderLock.wait();
+  }
+
+
+  //---------------------------------------------------------------------------
+  // sendWhenRoom() waits until there is room in the send queue and then
+  // queues the frame, which must not be encoded (see awaitReservation() for
+  // those).
+  //---------------------------------------------------------------------------
+  private boolean sendWhenRoom(int type, byte[] data, FrameTransport.SendCallback callback)
+      throws InterruptedException {
+    ChannelMux.Channel writer = transport;
+    while ((writer != null) && writer.awaitRoom()) {
+      if (queueFrame(writer, type, data, false, callback))
+        return true;
+    }
+    return false;
+  }
+
+
+  //---------------------------------------------------------------------------
+  // announceVariant() tells the server which kind of MTE we are going to use
+  // (see SetupParams.mteVariant) in a 'V' frame: "MKE", or "FLEN" followed by
+  // ":" and the fixed size. Nothing is sent for Core, so servers which know
+  // nothing about variants keep working as before.
+  //---------------------------------------------------------------------------
+  private void announceVariant() {
+    switch (setupParams.mteVariant) {
+      case MKE:
+        sendToServer('V', "MKE".getBytes(StandardCharsets.UTF_8));
+        break;
+      case FLEN:
+        sendToServer('V', ("FLEN:" + setupParams.flenBytes).getBytes(StandardCharsets.UTF_8));
+        break;
+      default:
+        break;
+    }
+  }
+
+
+  //---------------------------------------------------------------------------
+  // Compression (see SetupParams.compressor): offerCompression() offers our
+  // Compressor to the server by its name in a 'C' frame at the start of every
+  // setup. The server answers with a 'C' frame carrying the name of the
+  // compressor it accepts, or nothing; a server which does not know about
+  // compression never answers at all. Until we have an answer, nothing is
+  // compressed.
+  //---------------------------------------------------------------------------
+  private void offerCompression() {
+    compressionAccepted = false;
+    if (setupParams.compressor != null)
+      sendToServer('C', setupParams.compressor.name().getBytes(StandardCharsets.UTF_8));
+  }
+
+
+  private void compressionReplyReceived(InboundFrame frame) {
+    String name = new String(frame.array(), frame.payloadOffset(), frame.payloadLength(),
+                             StandardCharsets.UTF_8);
+    frame.release();
+    Compressor compressor = setupParams.compressor;
+    compressionAccepted = (compressor != null) && compressor.name().equals(name);
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "compressionReplyReceived(): compression " + (compressionAccepted ? name : "off"));
+  }
+
+
+  //---------------------------------------------------------------------------
+  // compress() returns the compressed data, or null if the data is to be sent
+  // as it is: if compression is off, the data is shorter than
+  // SetupParams.compressionThreshold or it does not get any smaller. It must
+  // be called under the encoder lock, right before encoding, and the frame
+  // type then gets the Compressor.COMPRESSED bit.
+  //---------------------------------------------------------------------------
+  private byte[] compress(byte[] data, int off, int length) {
+    Compressor compressor = setupParams.compressor;
+    if (!compressionAccepted || (compressor == null) || (length < setupParams.compressionThreshold))
+      return null;
+    byte[] compressed = compressor.compress(data, off, length);
+    return (compressed.length < length) ? compressed : null;
+  }
+
+
+  //---------------------------------------------------------------------------
+  // decodePayload() decodes the payload of a frame and decompresses it if
+  // the frame type says so. It returns null if either fails.
+  //---------------------------------------------------------------------------
+  private byte[] decodePayload(InboundFrame frame) {
+    byte[] decoded = decodeData(frame.array(), frame.payloadOffset(), frame.payloadLength());
+    if ((decoded == null) || ((frame.type() & Compressor.COMPRESSED) == 0))
+      return decoded;
+    Compressor compressor = setupParams.compressor;
+    if (compressor == null) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "decodePayload(): compressed frame, but no compressor");
+      return null;
+    }
+    try {
+      return compressor.decompress(decoded, 0, decoded.length);
+    } catch (IOException e) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "decodePayload(): decompression failed, " + e.getMessage());
+      return null;
+    }
+  }
+
+
+  //---------------------------------------------------------------------------
+  // encodeAndSend() encodes "length" bytes of "data" and queues them as a
+  // frame of the given type, both under the encoder lock. A place in the send
+  // queue is reserved BEFORE encoding, so no encoded data is ever lost; if the
+  // queue is full, it waits for room without holding the encoder lock.
+  //---------------------------------------------------------------------------
+  private boolean encodeAndSend(int type, byte[] data, int length,
+                                FrameTransport.SendCallback callback)
+      throws InterruptedException {
+    while (true) {
+      ChannelMux.Channel writer;
+      synchronized (encoderLock) {
+        awaitEncoder();
+        writer = transport;
+        if (writer == null)
+          return false;
+        if (writer.reserve()) {
+          byte[] compressed = compress(data, 0, length);
+          if (compressed != null) {
+            byte[] encoded = encodeData(compressed);
+            if (encoded == null) {
+              writer.cancelReservation();
+              return false;
+            }
+            if (queueFrame(writer, type | Compressor.COMPRESSED, encoded, true, callback))
+              return true;
+            encoderOutOfStep(writer);
+            return false;
+          }
+          //-------------------------------------------------------
+          // Encode straight into a pooled array which the transport
+          // gives back once the frame has been written, so sending
+          // does not leave any garbage behind.
+          //-------------------------------------------------------
+          FrameBufferPool framePool = FrameBufferPool.getShared();
+          byte[] buffer = framePool.acquire(getEncodedSize(length));
+          int encodedLength = encodeData(data, 0, length, buffer, 0);
+          if (encodedLength < 0) {
+            framePool.release(buffer);
+            writer.cancelReservation();
+            return false;
+          }
+          long queuedAt = System.nanoTime();
+          FrameTransport.SendCallback measured = success -> {
+            metrics.sendCompleted(queuedAt, encodedLength, success);
+            if (callback != null)
+              callback.sendCompleted(success);
+          };
+          if (writer.sendPooledReserved(type, buffer, encodedLength, measured))
+            return true;
+          framePool.release(buffer);
+          metrics.sendFailed();
+          encoderOutOfStep(writer);
+          return false;
+        }
+      }
+      if (!writer.awaitRoom())
+        return false;
+    }
+  }
+
+
+  //----------------------------------------------------------------------------
+  // receiveStream() registers the OutputStream the next stream sent by the
+  // server will be written to. Chunks are decoded and written as soon as they
+  // arrive, on the transport's thread, so memory use does not depend on the
+  // size of the stream; a slow OutputStream simply slows down the reading of
+  // the socket. The callback, if any, runs on the callback executor at the end
+  // of the stream. The OutputStream is not closed.
+  //----------------------------------------------------------------------------
+  public void receiveStream(OutputStream out, StreamCallback callback) {
+    streamReceiver = new StreamReceiver(out, callback);
+  }
+
+
+  private void streamChunkReceived(InboundFrame frame) {
+    StreamReceiver receiver = streamReceiver;
+    //--------------------------------------------------------------
+    // Every chunk must be decoded, even if nobody wants it, otherwise
+    // our Decoder gets out of step with the server.
+    //--------------------------------------------------------------
+    byte[] decoded = decoder.canDecryptChunks() ? decryptStreamChunk(frame) : decodePayload(frame);
+    frame.release();
+    if ((receiver == null) || receiver.failed)
+      return;
+    if (decoded == null) {
+      receiver.failed = true;
+      return;
+    }
+    try {
+      receiver.out.write(decoded);
+      receiver.bytes += decoded.length;
+    } catch (IOException e) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "streamChunkReceived(): writing the stream failed");
+      receiver.failed = true;
+    }
+  }
+
+
+  private void streamEndReceived(InboundFrame frame) {
+    boolean aborted = frame.payloadLength() > 0;
+    frame.release();
+    //--------------------------------------------------------------
+    // An MKE stream ends with finishDecrypt(), which returns the last
+    // of the data and checks the whole stream.
+    //--------------------------------------------------------------
+    byte[] last = null;
+    boolean lastFailed = false;
+    if (streamDecrypting) {
+      streamDecrypting = false;
+      MteBase.ArrStatus result = decoder.finishDecrypt();
+      if (result.status == MteStatus.mte_status_success)
+        last = result.arr;
+      else
+        lastFailed = true;
+    }
+    StreamReceiver receiver = streamReceiver;
+    streamReceiver = null;
+    if (receiver == null)
+      return;
+    boolean success = !aborted && !lastFailed && !receiver.failed;
+    try {
+      if (success && (last != null)) {
+        receiver.out.write(last);
+        receiver.bytes += last.length;
+      }
+      receiver.out.flush();
+    } catch (IOException e) {
+      success = false;
+    }
+    postStreamCompleted(receiver.callback, success, receiver.bytes);
+  }
+
+
+  //---------------------------------------------------------------------------
+  // decryptStreamChunk() decrypts a chunk of an MKE stream (see
+  // sendEncryptedStream()); the first chunk starts the decryption.
+  //---------------------------------------------------------------------------
+  private byte[] decryptStreamChunk(InboundFrame frame) {
+    if (!streamDecrypting) {
+      if (decoder.startDecrypt() != MteStatus.mte_status_success)
+        return null;
+      streamDecrypting = true;
+    }
+    return decoder.decryptChunk(frame.copyPayload());
+  }
+
+
+  private void postStreamCompleted(StreamCallback callback, boolean success, long bytes) {
+    if (callback == null)
+      return;
+    delivery.post(() -> callback.streamCompleted(success, bytes));
+  }
+
+
+  //---------------------------------------------------------------------------
+  // createDispatcher() sets up the frame handlers for a freshly opened socket.
+  // The transport runs for the lifetime of the connection and dispatches
+  // every frame it reads by its type byte:
+  //   '1' - '4', 'A', 'E'  handshake values, these go to setupMTE()
+  //   'h'                  the reply of the compact handshake
+  //   'r'                  the reply to a resumption request
+  //   'k'                  the answer to a heartbeat (see Heartbeat)
+  //   'm'                  MTE encoded data, this is decoded and goes to the
+  //                        app as the answer to the oldest request in flight
+  //   'e'                  the server could not decode the oldest request in
+  //                        flight; it goes to the app as an answer which could
+  //                        not be decoded
+  //   'c', 'z'             MTE encoded stream chunks and the end of a stream
+  //   'b'                  an MTE encoded batch of messages (see sendMessage())
+  //   'C'                  the compressor accepted by the server
+  // 'm', 'c' and 'b' frames with the Compressor.COMPRESSED bit set in their type
+  // carry compressed data.
+  // All MTE encoded frames are decoded right here on the transport's thread,
+  // strictly in the order they were received, which is the order in which the
+  // server has encoded them.
+  // Frames of any other type are logged and dropped.
+  //---------------------------------------------------------------------------
+  private FrameDispatcher createDispatcher() {
+    FrameDispatcher dispatcher = new FrameDispatcher();
+    dispatcher.setMetrics(metrics);
+    //-------------------------------------------------------------
+    // The handshake frames go to the crypto executor, where all the
+    // steps of setupMTE() run one after the other.
+    //-------------------------------------------------------------
+    FrameDispatcher.FrameHandler setupHandler = this::setupMTE;
+    for (char type : new char[] {'1', '2', '3', '4', 'A', 'E'})
+      dispatcher.setHandler(type, setupHandler);
+    dispatcher.setHandler('h', frame -> cryptoExecutor.execute(() -> compactReplyReceived(frame)));
+    dispatcher.setHandler('r', frame -> cryptoExecutor.execute(() -> resumeReplyReceived(frame)));
+    dispatcher.setHandler(Heartbeat.PONG, frame -> {
+      Heartbeat connectionHeartbeat = heartbeat;
+      if (connectionHeartbeat != null)
+        connectionHeartbeat.pongReceived(frame);
+      else
+        frame.release();
+    });
+    dispatcher.setHandler('C', this::compressionReplyReceived);
+    //-------------------------------------------------------------
+    // Data frames may come compressed (see Compressor); those have
+    // the COMPRESSED bit set in their type and go to the same
+    // handlers.
+    //-------------------------------------------------------------
+    RequestPipeline requests = pipeline;
+    FrameDispatcher.FrameHandler replyHandler = frame -> {
+      long receivedAt = System.nanoTime();
+      byte[] decoded = decodePayload(frame);
+      RequestPipeline.Entry answered;
+      if ((decoded != null) && (lastMsgSkipped < 0)) {
+        //---------------------------------------------------------
+        // A late answer belongs to one of the requests skipped
+        // before, never to the oldest request in flight.
+        //---------------------------------------------------------
+        answered = requests.completeLate(-lastMsgSkipped);
+      } else {
+        //---------------------------------------------------------
+        // If the Decoder had to skip answers to get to this one, the
+        // requests they belonged to are out of the window; their
+        // answers may still come late.
+        //---------------------------------------------------------
+        if ((decoded != null) && (lastMsgSkipped > 0)) {
+          for (RequestPipeline.Entry lost : requests.skip(lastMsgSkipped)) {
+            if (EngineLog.isEnabled())
+              EngineLog.d(TAG, "createDispatcher(): answer to request #" + lost.id + " was skipped");
+          }
+        }
+        answered = requests.complete();
+      }
+      if (answered != null)
+        metrics.record(SessionMetrics.Stage.ROUND_TRIP, answered.sentAt, receivedAt);
+      postReplyToApp((answered == null) ? RequestPipeline.NO_REQUEST : answered.id, frame, decoded);
+    };
+    FrameDispatcher.FrameHandler batchHandler = frame -> {
+      byte[] decoded = decodePayload(frame);
+      frame.release();
+      List<byte[]> messages = (decoded == null) ? null : MessageBatcher.unpack(decoded);
+      if (messages == null) {
+        if (EngineLog.isEnabled())
+          EngineLog.d(TAG, "createDispatcher(): invalid batch of messages");
+        return;
+      }
+      postMessagesToApp(messages);
+    };
+    dispatcher.setHandler('e', frame -> {
+      RequestPipeline.Entry failed = requests.complete();
+      long id = (failed == null) ? RequestPipeline.NO_REQUEST : failed.id;
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "createDispatcher(): server could not decode request #" + id);
+      postReplyToApp(id, frame, null);
+    });
+    dispatcher.setHandler('m', replyHandler);
+    dispatcher.setHandler('m' | Compressor.COMPRESSED, replyHandler);
+    dispatcher.setHandler('b', batchHandler);
+    dispatcher.setHandler('b' | Compressor.COMPRESSED, batchHandler);
+    dispatcher.setHandler('c', this::streamChunkReceived);
+    dispatcher.setHandler('c' | Compressor.COMPRESSED, this::streamChunkReceived);
+    dispatcher.setHandler('z', this::streamEndReceived);
+    dispatcher.setDefaultHandler(frame -> {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "createDispatcher(): unknown frame type " + frame.type());
+      frame.release();
+    });
+    return dispatcher;
+  }
+
+
+  //----------------------------------------------------------------------------
+  // postAnswerToApp() will run the callback to get server's answers and other
+  // information back to the app. It is up to the app to interpret the context
+  // of the answers sent.
+  // In order to make sure that the app can access its views within the callback
+  // function, we make sure to run it on the callback executor, which on Android
+  // is the main UI thread.
+  //----------------------------------------------------------------------------
+  private void postAnswerToApp(byte[] data) {
+    if (socketCallback == null)
+      return;
+    //-----------------------------------------------------------------
+    // On Android, the registered callback function must run in the main
+    // UI thread! Otherwise, any UI related functions will cause
+    // exceptions. MyApplication therefore hands a callback executor to
+    // the SessionManager which posts to the main UI thread.
+    //-----------------------------------------------------------------
+    delivery.post(() -> socketCallback.answerFromServer(data));
+  }
+
+
+  //---------------------------------------------------------------------------
+  // postReplyToApp() does the same for answers to requests sent with
+  // sendRequest(), together with the decoded data (null if decoding failed).
+  // The app takes over the frame and has to release() it. Replies which come
+  // in within one delivery interval reach the app in a single call of
+  // SocketCallback.repliesFromServer().
+  //---------------------------------------------------------------------------
+  private void postReplyToApp(long requestId, InboundFrame data, byte[] decoded) {
+    if (socketCallback == null) {
+      data.release();
+      return;
+    }
+    delivery.postReply(requestId, data, decoded);
+  }
+
+
+  private void postMessagesToApp(List<byte[]> messages) {
+    if (socketCallback == null)
+      return;
+    delivery.post(() -> socketCallback.messagesFromServer(messages));
+  }
+
+
+  //-----------------------------------------------------
+  // encodeData() will encode the given string using MTE.
+  //-----------------------------------------------------
+  public byte[] encodeData(byte[] data) {
+    long start = System.nanoTime();
+    MteBase.ArrStatus result = encoder.encode(data);
+    if (result.status == MteStatus.mte_status_success) {
+      metrics.record(SessionMetrics.Stage.ENCODE, start);
+      return result.arr;
+    }
+    else {
+      metrics.encodeFailed();
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "encodeData(): failed, error = " + MteBase.getStatusDescription(result.status));
+      return null;
+    }
+  }
+
+
+  //---------------------------------------------------------------------------
+  // getEncodedSize() returns how many bytes the buffer handed to the variants
+  // of encodeData() below must have room for to encode "length" bytes.
+  //---------------------------------------------------------------------------
+  public int getEncodedSize(int length) {
+    return encoder.getBuffBytes(length);
+  }
+
+
+  //---------------------------------------------------------------------------
+  // This variant of encodeData() encodes "length" bytes of "data" straight into
+  // the caller's buffer "out", starting at "outOff", and returns the number of
+  // encoded bytes, or -1 if encoding failed. "out" needs room for
+  // getEncodedSize(length) bytes from "outOff" on. Nothing is allocated, so a
+  // caller which reuses its buffer encodes without leaving any garbage behind.
+  //---------------------------------------------------------------------------
+  public int encodeData(byte[] data, int off, int length, byte[] out, int outOff) {
+    if (out.length - outOff < encoder.getBuffBytes(length)) {
+      metrics.encodeFailed();
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "encodeData(): output buffer too small");
+      return -1;
+    }
+    long start = System.nanoTime();
+    MteBase.OffLenStatus result = encoder.encode(data, off, length, out, outOff);
+    if (result.status != MteStatus.mte_status_success) {
+      metrics.encodeFailed();
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "encodeData(): failed, error = " + MteBase.getStatusDescription(result.status));
+      return -1;
+    }
+    //-----------------------------------------------------------
+    // The Encoder may leave the result anywhere in the buffer; the
+    // caller gets it at "outOff".
+    //-----------------------------------------------------------
+    if (result.off != outOff)
+      System.arraycopy(out, result.off, out, outOff, result.bytes);
+    metrics.record(SessionMetrics.Stage.ENCODE, start);
+    return result.bytes;
+  }
+
+
+  //---------------------------------------------------------------------------
+  // This variant of encodeData() encodes the remaining bytes of "in" into "out",
+  // advancing both positions. Both must be heap buffers (ByteBuffer.hasArray()),
+  // the MTE library cannot work on direct buffers.
+  //---------------------------------------------------------------------------
+  public boolean encodeData(ByteBuffer in, ByteBuffer out) {
+    if (!in.hasArray() || !out.hasArray() || out.isReadOnly()) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "encodeData(): only writable heap buffers are supported");
+      return false;
+    }
+    int length = in.remaining();
+    if (out.remaining() < encoder.getBuffBytes(length)) {
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "encodeData(): output buffer too small");
+      return false;
+    }
+    int encodedLength = encodeData(in.array(), in.arrayOffset() + in.position(), length,
+                                   out.array(), out.arrayOffset() + out.position());
+    if (encodedLength < 0)
+      return false;
+    in.position(in.position() + length);
+    out.position(out.position() + encodedLength);
+    return true;
+  }
+
+
+  //-----------------------------------------------------
+  // decodeData() will decode the given string using MTE.
+  //-----------------------------------------------------
+  public byte[] decodeData(byte[] data) {
+    long start = System.nanoTime();
+    MteBase.ArrStatus result = decoder.decode(data);
+    if (!MteBase.statusIsError(result.status)) {
+      metrics.record(SessionMetrics.Stage.DECODE, start);
+      checkSequence();
+      return result.arr;
+    }
+    else {
+      metrics.decodeFailed();
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "decodeData(): failed, error = " + MteBase.getStatusDescription(result.status));
+      return null;
+    }
+  }
+
+
+  //---------------------------------------------------------------------------
+  // This variant of decodeData() decodes "len" bytes at offset "off" of "data"
+  // in place, e.g. the payload of an InboundFrame, so the caller does not need
+  // to copy the payload out of the frame first. The Decoder works in a buffer
+  // which is reused for every message; only the decoded result is allocated.
+  //---------------------------------------------------------------------------
+  public byte[] decodeData(byte[] data, int off, int len) {
+    int buffBytes = decoder.getBuffBytes(len);
+    if ((decodeBuffer == null) || (decodeBuffer.length < buffBytes))
+      decodeBuffer = new byte[buffBytes];
+    long start = System.nanoTime();
+    MteBase.OffLenStatus result = decoder.decode(data, off, len, decodeBuffer, 0);
+    if (!MteBase.statusIsError(result.status)) {
+      metrics.record(SessionMetrics.Stage.DECODE, start);
+      checkSequence();
+      return Arrays.copyOfRange(decodeBuffer, result.off, result.off + result.bytes);
+    }
+    else {
+      metrics.decodeFailed();
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "decodeData(): failed, error = " + MteBase.getStatusDescription(result.status));
+      return null;
+    }
+  }
+
+
+  //-------------------------------------------------------------------------
+  // checkSequence() counts the messages the Decoder had to skip to decode the
+  // last one, and the messages which came late. Both can only happen with a
+  // sequence window (see SetupParams.decoderSeqWindow).
+  //-------------------------------------------------------------------------
+  private void checkSequence() {
+    lastMsgSkipped = decoder.getMsgSkipped();
+    if (lastMsgSkipped > 0) {
+      messagesSkipped.addAndGet(lastMsgSkipped);
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "checkSequence(): " + lastMsgSkipped + " message(s) skipped");
+    } else if (lastMsgSkipped < 0) {
+      messagesLate.incrementAndGet();
+      if (EngineLog.isEnabled())
+        EngineLog.d(TAG, "checkSequence(): message came " + -lastMsgSkipped + " place(s) late");
+    }
+  }
+
+
+  //-------------------------------------------------------------------------
+  // getVersion() is a simple wrapper just so that the application
+  // can get the MTE version number without having to import the MTE package.
+  // We also add the MTE variant (Core, MKE, FLEN) to the version number.
+  // Please note that adding the MTE variant requires that "encoder" has been
+  // created.
+  //-------------------------------------------------------------------------
+  public String getVersion() {
+    String s = " MTE " + MteBase.getVersion();
+    MteEncoder current = encoder;
+    if (current != null)
+      s += " (" + current.variantName() + ")";
+    return s;
+  }
+
+
+  //-------------------------------------------------------------------------
+  // This little helper function converts a byte array of arbitrary length
+  // to a hex string.
+  //-------------------------------------------------------------------------
+  public static String bytesToHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes)
+      hex.append(String.format("%02X", b));
+    return hex.toString();
+  }
+}
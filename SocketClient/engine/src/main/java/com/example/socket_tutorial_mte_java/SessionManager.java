@@ -0,0 +1,181 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+//---------------------------------------------------------------------------------------
+// SessionManager runs any number of SecureSessions at the same time. Every session has
+// its own socket, transport, MTE Encoder/Decoder pair and locks; all the manager keeps
+// is a concurrent map of the sessions, so opening, using or closing one session never
+// waits for another one.
+//
+// The callbacks of all sessions (SocketCallback, StreamCallback, RequestCallback) run on
+// the manager's callback executor, unless a session has one of its own (see
+// SecureSession.SetupParams.callbackExecutor). On Android, MyApplication passes an
+// executor which posts to the main UI thread; without one, they run on a single
+// "MteCallbacks" thread, one after the other, in the order they were posted - just like
+// on the main UI thread.
+//---------------------------------------------------------------------------------------
+public class SessionManager {
+
+  private static Executor defaultCallbackExecutor;
+
+  private final String TAG = this.getClass().getSimpleName();
+  private final Executor callbackExecutor;
+  private final ConcurrentHashMap<Integer, SecureSession> sessions = new ConcurrentHashMap<>();
+  private final AtomicInteger lastId = new AtomicInteger();
+  private volatile SessionStore sessionStore;
+
+
+  public SessionManager() {
+    this(getDefaultCallbackExecutor());
+  }
+
+
+  public SessionManager(Executor callbackExecutor) {
+    this.callbackExecutor = callbackExecutor;
+  }
+
+
+  private static synchronized Executor getDefaultCallbackExecutor() {
+    if (defaultCallbackExecutor == null) {
+      defaultCallbackExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "MteCallbacks");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return defaultCallbackExecutor;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // setSessionStore() sets where sessions keep their tickets and MTE states
+  // for resumption (see SecureSession.SetupParams.resumeSessions).
+  //--------------------------------------------------------------------------
+  public void setSessionStore(SessionStore sessionStore) {
+    this.sessionStore = sessionStore;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // openSession() creates a new session and starts connecting it to the server
+  // given in "setupParams". Just like with a single connection, the callback
+  // is told "Ready" (or "Error") once the socket is open, and the app then
+  // calls setupMTE(null) on the session to secure it.
+  //--------------------------------------------------------------------------
+  public SecureSession openSession(SecureSession.SetupParams setupParams,
+                                   SocketCallback socketCallback) {
+    SecureSession session = new SecureSession(lastId.incrementAndGet(), setupParams,
+                                              socketCallback, callbackExecutor);
+    session.setSessionStore(sessionStore);
+    sessions.put(session.getId(), session);
+    if (!session.open()) {
+      sessions.remove(session.getId());
+      return null;
+    }
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "openSession(): session #" + session.getId() + " opened, "
+                       + sessions.size() + " session(s) running");
+    return session;
+  }
+
+
+  //--------------------------------------------------------------------------
+  // openChannel() creates a new session which runs as a logical channel on
+  // the connection of "session": it gets an MTE Encoder/Decoder pair of its
+  // own, but shares the socket. The callback is told "Ready" right away, and
+  // the app then calls setupMTE(null) on the new session as usual.
+  //--------------------------------------------------------------------------
+  public SecureSession openChannel(SecureSession session, SocketCallback socketCallback) {
+    SecureSession channel = new SecureSession(lastId.incrementAndGet(), session, socketCallback,
+                                              callbackExecutor);
+    sessions.put(channel.getId(), channel);
+    if (!channel.open()) {
+      sessions.remove(channel.getId());
+      return null;
+    }
+    if (EngineLog.isEnabled())
+      EngineLog.d(TAG, "openChannel(): session #" + channel.getId() + " opened on session #"
+                       + session.getId());
+    return channel;
+  }
+
+
+  public SecureSession getSession(int id) {
+    return sessions.get(id);
+  }
+
+
+  public Collection<SecureSession> getSessions() {
+    return Collections.unmodifiableCollection(sessions.values());
+  }
+
+
+  public int sessionCount() {
+    return sessions.size();
+  }
+
+
+  //--------------------------------------------------------------------
+  // getMetrics() takes a metrics snapshot of every session (see
+  // SessionMetrics); MetricsReporter does so periodically.
+  //--------------------------------------------------------------------
+  public List<SessionMetrics.Snapshot> getMetrics() {
+    List<SessionMetrics.Snapshot> snapshots = new ArrayList<>();
+    for (SecureSession session : sessions.values())
+      snapshots.add(session.getMetrics());
+    return snapshots;
+  }
+
+
+  //--------------------------------------------------------------------
+  // closeSession() closes the session's socket and throws away its MTE
+  // state. The session must not be used any more afterwards.
+  //--------------------------------------------------------------------
+  public void closeSession(SecureSession session) {
+    if (!sessions.remove(session.getId(), session))
+      return;
+    session.close();
+    session.terminate();
+  }
+
+
+  public void closeAll() {
+    for (SecureSession session : sessions.values())
+      closeSession(session);
+  }
+}
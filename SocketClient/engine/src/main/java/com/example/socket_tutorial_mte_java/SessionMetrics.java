@@ -0,0 +1,263 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+//---------------------------------------------------------------------------------------
+// SessionMetrics instruments the hot path of a SecureSession. For every stage a message
+// goes through, the latencies are counted in a LatencyHistogram:
+//   ENCODE      MTE encoding of one message (encodeData())
+//   SEND        from handing a frame to the transport until it has been written to the
+//               socket, i.e. the time in the send queue plus the write itself
+//   ROUND_TRIP  from sendRequest() until the answer has been read from the socket, so
+//               ROUND_TRIP - ENCODE - SEND is roughly network plus server time
+//   DECODE      MTE decoding of one message (decodeData())
+//   DELIVER     from posting a callback until it runs on the callback executor (on
+//               Android, the main UI thread), including the time it waits for other
+//               callbacks to be delivered with it (see CallbackDelivery)
+//   CALLBACK    how long one delivery of callbacks keeps the callback executor busy,
+//               the app's own work included; on Android this is main UI thread time,
+//               and every delivery longer than a display frame (FRAME_NANOS) is also
+//               counted as a slow delivery, i.e. a frame the UI most likely dropped
+// Besides that, frames and bytes sent and received and the errors are counted. All of
+// it is cumulative since the session was created. Recording never locks and never
+// allocates; snapshot() puts everything together for the app (see
+// SecureSession.getMetrics(), SessionManager.getMetrics() and MetricsReporter).
+//---------------------------------------------------------------------------------------
+public class SessionMetrics {
+
+  public enum Stage {ENCODE, SEND, ROUND_TRIP, DECODE, DELIVER, CALLBACK}
+
+  private static final Stage[] STAGES = Stage.values();
+  private static final long FRAME_NANOS = 1000000000L / 60;
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+  private final AtomicLong framesSent = new AtomicLong();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong framesReceived = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private final AtomicLong encodeErrors = new AtomicLong();
+  private final AtomicLong decodeErrors = new AtomicLong();
+  private final AtomicLong sendErrors = new AtomicLong();
+  private final AtomicLong slowDeliveries = new AtomicLong();
+  private final AtomicInteger callbacksPending = new AtomicInteger();
+
+
+  SessionMetrics() {
+    for (int i = 0; i < histograms.length; i++)
+      histograms[i] = new LatencyHistogram();
+  }
+
+
+  //------------------------------------------------------------------
+  // record() counts the time from "startNanos" (System.nanoTime())
+  // until now for the given stage.
+  //------------------------------------------------------------------
+  void record(Stage stage, long startNanos) {
+    histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+  }
+
+
+  void record(Stage stage, long startNanos, long endNanos) {
+    histograms[stage.ordinal()].record(endNanos - startNanos);
+  }
+
+
+  //------------------------------------------------------------------
+  // sendCompleted() is called from the SendCallback of a frame which
+  // was handed to the transport at "queuedNanos".
+  //------------------------------------------------------------------
+  void sendCompleted(long queuedNanos, int length, boolean success) {
+    if (success) {
+      record(Stage.SEND, queuedNanos);
+      framesSent.incrementAndGet();
+      bytesSent.addAndGet(length);
+    } else {
+      sendErrors.incrementAndGet();
+    }
+  }
+
+
+  void sendFailed() {
+    sendErrors.incrementAndGet();
+  }
+
+
+  void frameReceived(int length) {
+    framesReceived.incrementAndGet();
+    bytesReceived.addAndGet(length);
+  }
+
+
+  void encodeFailed() {
+    encodeErrors.incrementAndGet();
+  }
+
+
+  void decodeFailed() {
+    decodeErrors.incrementAndGet();
+  }
+
+
+  //------------------------------------------------------------------
+  // callbackPosted() is called right before a callback is handed to
+  // the callback executor and returns the time to pass on to
+  // callbackRun() once it runs.
+  //------------------------------------------------------------------
+  long callbackPosted() {
+    callbacksPending.incrementAndGet();
+    return System.nanoTime();
+  }
+
+
+  void callbackRun(long postedNanos) {
+    record(Stage.DELIVER, postedNanos);
+    callbacksPending.decrementAndGet();
+  }
+
+
+  //------------------------------------------------------------------
+  // deliveryDone() is called at the end of a delivery of callbacks
+  // which started running on the callback executor at "startNanos".
+  //------------------------------------------------------------------
+  void deliveryDone(long startNanos) {
+    long busy = System.nanoTime() - startNanos;
+    histograms[Stage.CALLBACK.ordinal()].record(busy);
+    if (busy > FRAME_NANOS)
+      slowDeliveries.incrementAndGet();
+  }
+
+
+  Snapshot snapshot(int sessionId, int sendQueueDepth, int requestsInFlight) {
+    StageStats[] stages = new StageStats[STAGES.length];
+    for (int i = 0; i < stages.length; i++)
+      stages[i] = new StageStats(histograms[i]);
+    return new Snapshot(sessionId, this, stages, sendQueueDepth, requestsInFlight);
+  }
+
+
+  //---------------------------------------------------------------------------
+  // StageStats holds the latencies of one stage, all in nanoseconds.
+  // Percentiles are exact to about 1.6 % (see LatencyHistogram).
+  //---------------------------------------------------------------------------
+  public static class StageStats {
+    public final long count;
+    public final double mean;
+    public final long p50;
+    public final long p90;
+    public final long p99;
+    public final long p999;
+    public final long max;
+
+    StageStats(LatencyHistogram histogram) {
+      count = histogram.count();
+      mean = histogram.mean();
+      p50 = histogram.percentile(50);
+      p90 = histogram.percentile(90);
+      p99 = histogram.percentile(99);
+      p999 = histogram.percentile(99.9);
+      max = histogram.max();
+    }
+  }
+
+
+  //---------------------------------------------------------------------------
+  // A Snapshot holds the metrics of a session at the given time. The queue
+  // depths are the ones at the time of the snapshot:
+  //   sendQueueDepth     frames waiting in the session's send queue
+  //   requestsInFlight   requests which have not been answered yet
+  //   callbacksPending   callbacks waiting for the callback executor
+  //---------------------------------------------------------------------------
+  public static class Snapshot {
+    public final int sessionId;
+    public final long time;     // System.currentTimeMillis()
+    public final long framesSent;
+    public final long bytesSent;
+    public final long framesReceived;
+    public final long bytesReceived;
+    public final long encodeErrors;
+    public final long decodeErrors;
+    public final long sendErrors;
+    public final long slowDeliveries;    // Deliveries longer than a display frame.
+    public final int sendQueueDepth;
+    public final int requestsInFlight;
+    public final int callbacksPending;
+    private final StageStats[] stages;
+
+    Snapshot(int sessionId, SessionMetrics metrics, StageStats[] stages, int sendQueueDepth,
+             int requestsInFlight) {
+      this.sessionId = sessionId;
+      time = System.currentTimeMillis();
+      framesSent = metrics.framesSent.get();
+      bytesSent = metrics.bytesSent.get();
+      framesReceived = metrics.framesReceived.get();
+      bytesReceived = metrics.bytesReceived.get();
+      encodeErrors = metrics.encodeErrors.get();
+      decodeErrors = metrics.decodeErrors.get();
+      sendErrors = metrics.sendErrors.get();
+      slowDeliveries = metrics.slowDeliveries.get();
+      this.sendQueueDepth = sendQueueDepth;
+      this.requestsInFlight = requestsInFlight;
+      callbacksPending = metrics.callbacksPending.get();
+      this.stages = stages;
+    }
+
+    public StageStats getStage(Stage stage) {
+      return stages[stage.ordinal()];
+    }
+
+    //-----------------------------------------------------------------
+    // toString() puts the snapshot on a single line, e.g. for logcat
+    // or a log file; latencies are given in microseconds.
+    //-----------------------------------------------------------------
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format(Locale.US,
+          "session #%d sent %d frames/%d bytes, received %d frames/%d bytes, "
+          + "errors encode %d decode %d send %d, queued send %d requests %d callbacks %d, "
+          + "slow deliveries %d",
+          sessionId, framesSent, bytesSent, framesReceived, bytesReceived, encodeErrors,
+          decodeErrors, sendErrors, sendQueueDepth, requestsInFlight, callbacksPending,
+          slowDeliveries));
+      for (Stage stage : STAGES) {
+        StageStats stats = getStage(stage);
+        if (stats.count == 0)
+          continue;
+        sb.append(String.format(Locale.US,
+            ", %s n=%d mean=%.1f p50=%.1f p99=%.1f p99.9=%.1f max=%.1f us",
+            stage, stats.count, stats.mean / 1e3, stats.p50 / 1e3, stats.p99 / 1e3,
+            stats.p999 / 1e3, stats.max / 1e3));
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,46 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+//---------------------------------------------------------------------------------------
+// A SessionStore keeps the data needed to resume sessions (see SetupParams.resumeSessions)
+// across reconnects: session tickets and saved MTE states. The MTE state is as secret as
+// the keys it was created from, so implementations MUST keep the data encrypted.
+// All functions may be called from any thread.
+//---------------------------------------------------------------------------------------
+public interface SessionStore {
+
+  void put(String key, byte[] value);
+
+  //------------------------------------------------------
+  // get() returns null if there is nothing stored under
+  // "key" or the value could not be decrypted.
+  //------------------------------------------------------
+  byte[] get(String key);
+
+  void remove(String key);
+}
@@ -0,0 +1,62 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+
+
+
+package com.example.socket_tutorial_mte_java;
+
+import java.util.List;
+
+public interface SocketCallback {
+  void answerFromServer(byte[] data);
+  void replyFromServer(long requestId, InboundFrame frame, byte[] decoded);
+  void messagesFromServer(List<byte[]> messages);
+
+  //-------------------------------------------------------------------
+  // repliesFromServer() gets the replies which came in within the same
+  // delivery interval (see SecureSession.SetupParams.deliveryInterval)
+  // in a single call, oldest first. By default they are handed to
+  // replyFromServer() one by one; an app which would rather update its
+  // views once per batch than once per reply overrides it. Either way,
+  // every frame has to be released.
+  //-------------------------------------------------------------------
+  default void repliesFromServer(List<Reply> replies) {
+    for (Reply reply : replies)
+      replyFromServer(reply.requestId, reply.frame, reply.decoded);
+  }
+
+  class Reply {
+    public final long requestId;
+    public final InboundFrame frame;
+    public final byte[] decoded;
+
+    Reply(long requestId, InboundFrame frame, byte[] decoded) {
+      this.requestId = requestId;
+      this.frame = frame;
+      this.decoded = decoded;
+    }
+  }
+}
@@ -23,11 +23,13 @@
 // OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 // SOFTWARE.
 //**************************************************************************************************
-
-
-
 package com.example.socket_tutorial_mte_java;
 
-public interface SocketCallback {
-  void answerFromServer(byte[] data);
+//-------------------------------------------------------------------------
+// A StreamCallback is told when a stream sent with MyApplication.sendStream()
+// or received through MyApplication.receiveStream() has come to an end.
+// The callback runs on the callback executor of the SessionManager.
+//-------------------------------------------------------------------------
+public interface StreamCallback {
+  void streamCompleted(boolean success, long bytes);
 }
@@ -0,0 +1,99 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.IOException;
+import java.net.Socket;
+
+
+//---------------------------------------------------------------------------------------
+// StreamTransport runs the framing protocol over the blocking streams of a java.net.Socket.
+// Writing is done by a FrameWriter, reading by a FrameReader, each on its own thread.
+//---------------------------------------------------------------------------------------
+class StreamTransport implements FrameTransport {
+
+  private final FrameWriter writer;
+  private final FrameReader reader;
+
+
+  StreamTransport(Socket socket, FrameDispatcher dispatcher, int queueCapacity)
+      throws IOException {
+    writer = new FrameWriter(socket.getOutputStream(), queueCapacity);
+    reader = new FrameReader(socket.getInputStream(), dispatcher);
+    //----------------------------------------------------------------
+    // If writing fails, the reader may wait forever for data which is
+    // never going to come. Closing the socket wakes it up, and it then
+    // tells the StopListener, so there is a single place to listen to.
+    //----------------------------------------------------------------
+    writer.setStopListener(e -> {
+      try {
+        socket.close();
+      } catch (IOException ce) {
+        // Nothing we can do about it.
+      }
+    });
+  }
+
+
+  @Override
+  public void setStopListener(StopListener listener) {
+    reader.setStopListener(listener);
+  }
+
+
+  @Override
+  public void start() {
+    writer.start();
+    reader.start();
+  }
+
+
+  @Override
+  public void stop() {
+    reader.stop();
+    writer.stop();
+  }
+
+
+  @Override
+  public boolean send(int channel, int header, byte[] data, SendCallback callback) {
+    return writer.send(channel, header, data, callback);
+  }
+
+
+  @Override
+  public boolean sendPooled(int channel, int header, byte[] buffer, int length,
+                            SendCallback callback) {
+    return writer.sendPooled(channel, header, buffer, length, callback);
+  }
+
+
+  @Override
+  public int pendingFrames() {
+    return writer.pendingFrames();
+  }
+}
@@ -0,0 +1,230 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class CallbackDeliveryTest {
+
+  //-----------------------------------------------------------------
+  // RecordingCallback writes down what it was called with, e.g.
+  // "replies(1,2)", "reply(3)" or the name of a posted callback.
+  //-----------------------------------------------------------------
+  private static class RecordingCallback implements SocketCallback {
+    final List<String> calls = new ArrayList<>();
+
+    @Override
+    public void answerFromServer(byte[] data) {
+    }
+
+    @Override
+    public void replyFromServer(long requestId, InboundFrame frame, byte[] decoded) {
+      calls.add("reply(" + requestId + ")");
+    }
+
+    @Override
+    public void messagesFromServer(List<byte[]> messages) {
+    }
+
+    @Override
+    public void repliesFromServer(List<Reply> replies) {
+      StringBuilder ids = new StringBuilder();
+      for (Reply reply : replies)
+        ids.append((ids.length() > 0) ? "," : "").append(reply.requestId);
+      calls.add("replies(" + ids + ")");
+    }
+  }
+
+  private final List<Runnable> tasks = new ArrayList<>();
+  private final RecordingCallback callback = new RecordingCallback();
+  private final SessionMetrics metrics = new SessionMetrics();
+  private final CallbackDelivery delivery = new CallbackDelivery(tasks::add, 0, callback, metrics);
+
+
+  @Test
+  public void consecutiveRepliesAreDeliveredTogether() {
+    delivery.postReply(1, null, null);
+    delivery.postReply(2, null, null);
+    delivery.postReply(3, null, null);
+    runTasks();
+
+    assertEquals(Arrays.asList("replies(1,2,3)"), callback.calls);
+  }
+
+
+  @Test
+  public void singleReplyGoesToReplyFromServer() {
+    delivery.postReply(7, null, null);
+    runTasks();
+
+    assertEquals(Arrays.asList("reply(7)"), callback.calls);
+  }
+
+
+  @Test
+  public void callbacksKeepTheirPlaceBetweenReplies() {
+    delivery.postReply(1, null, null);
+    delivery.postReply(2, null, null);
+    delivery.post(() -> callback.calls.add("status"));
+    delivery.postReply(3, null, null);
+    delivery.post(() -> callback.calls.add("error"));
+    delivery.postReply(4, null, null);
+    delivery.postReply(5, null, null);
+    runTasks();
+
+    assertEquals(Arrays.asList("replies(1,2)", "status", "reply(3)", "error", "replies(4,5)"),
+                 callback.calls);
+  }
+
+
+  @Test
+  public void onlyOneDeliveryIsOnItsWay() {
+    delivery.postReply(1, null, null);
+    delivery.post(() -> callback.calls.add("status"));
+    delivery.postReply(2, null, null);
+    assertEquals(1, tasks.size());
+  }
+
+
+  @Test
+  public void callbacksPostedDuringDeliveryComeNext() {
+    delivery.post(() -> {
+      callback.calls.add("first");
+      delivery.postReply(1, null, null);
+    });
+    assertEquals(1, tasks.size());
+    tasks.remove(0).run();
+    assertEquals(Arrays.asList("first"), callback.calls);
+
+    // The reply posted by the callback gets a delivery of its own.
+    assertEquals(1, tasks.size());
+    runTasks();
+    assertEquals(Arrays.asList("first", "reply(1)"), callback.calls);
+  }
+
+
+  @Test
+  public void failingCallbackDoesNotStopTheDelivery() {
+    delivery.postReply(1, null, null);
+    delivery.post(() -> {
+      throw new IllegalStateException("app bug");
+    });
+    delivery.postReply(2, null, null);
+    delivery.postReply(3, null, null);
+    delivery.post(() -> callback.calls.add("status"));
+    try {
+      runTasks();
+      fail("exception of the callback swallowed");
+    } catch (IllegalStateException e) {
+      assertEquals("app bug", e.getMessage());
+    }
+    // The replies after it have been delivered, so their frames can be released.
+    assertEquals(Arrays.asList("reply(1)", "replies(2,3)", "status"), callback.calls);
+
+    // ...and the next delivery is not held up either.
+    delivery.postReply(4, null, null);
+    runTasks();
+    assertEquals("reply(4)", callback.calls.get(3));
+  }
+
+
+  @Test
+  public void idleSessionGetsItsReplyRightAway() {
+    CallbackDelivery timed = new CallbackDelivery(tasks::add, 60000, callback, metrics);
+    timed.postReply(1, null, null);
+    assertEquals(1, tasks.size());
+    runTasks();
+    assertEquals(Arrays.asList("reply(1)"), callback.calls);
+  }
+
+
+  @Test
+  public void intervalGathersCallbacksQueuedDuringADelivery() throws Exception {
+    BlockingQueue<Runnable> timedTasks = new LinkedBlockingQueue<>();
+    CallbackDelivery timed = new CallbackDelivery(timedTasks::add, 50, callback, metrics);
+    timed.post(() -> {
+      callback.calls.add("first");
+      for (int i = 1; i <= 10; i++)
+        timed.postReply(i, null, null);
+    });
+    timedTasks.take().run();
+    // The next delivery waits for the interval, and takes all replies at once.
+    assertTrue(timedTasks.isEmpty());
+    Runnable next = timedTasks.poll(5, TimeUnit.SECONDS);
+    assertNotNull(next);
+    next.run();
+    assertEquals(Arrays.asList("first", "replies(1,2,3,4,5,6,7,8,9,10)"), callback.calls);
+    assertTrue(timedTasks.isEmpty());
+  }
+
+
+  @Test
+  public void timeOnTheExecutorIsMeasured() {
+    delivery.postReply(1, null, null);
+    runTasks();
+    delivery.post(() -> sleep(30));
+    runTasks();
+
+    SessionMetrics.Snapshot snapshot = metrics.snapshot(1, 0, 0);
+    SessionMetrics.StageStats busy = snapshot.getStage(SessionMetrics.Stage.CALLBACK);
+    assertEquals(2, busy.count);
+    assertTrue(busy.max >= TimeUnit.MILLISECONDS.toNanos(30));
+    // Only the second delivery took longer than a display frame.
+    assertEquals(1, snapshot.slowDeliveries);
+  }
+
+
+  //-----------------------------------------------------------------
+  // Helpers
+  //-----------------------------------------------------------------
+  private void runTasks() {
+    while (!tasks.isEmpty())
+      tasks.remove(0).run();
+  }
+
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
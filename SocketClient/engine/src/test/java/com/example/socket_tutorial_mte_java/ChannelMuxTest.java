@@ -0,0 +1,424 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ChannelMuxTest {
+
+  private static final int WINDOW = ChannelMux.TRANSPORT_WINDOW;
+
+  //-----------------------------------------------------------------
+  // FakeTransport keeps the frames handed to it until the test tells
+  // it to complete them.
+  //-----------------------------------------------------------------
+  private static class FakeTransport implements FrameTransport {
+
+    static class Sent {
+      final int channel;
+      final int header;
+      final SendCallback callback;
+
+      Sent(int channel, int header, SendCallback callback) {
+        this.channel = channel;
+        this.header = header;
+        this.callback = callback;
+      }
+    }
+
+    final List<Sent> sent = new ArrayList<>();
+    StopListener stopListener;
+    boolean running;
+
+    @Override
+    public void setStopListener(StopListener listener) {
+      stopListener = listener;
+    }
+
+    @Override
+    public void start() {
+      running = true;
+    }
+
+    @Override
+    public void stop() {
+      running = false;
+    }
+
+    @Override
+    public synchronized boolean send(int channel, int header, byte[] data,
+                                     SendCallback callback) {
+      if (!running)
+        return false;
+      sent.add(new Sent(channel, header, callback));
+      return true;
+    }
+
+    @Override
+    public boolean sendPooled(int channel, int header, byte[] buffer, int length,
+                              SendCallback callback) {
+      return send(channel, header, buffer, callback);
+    }
+
+    @Override
+    public synchronized int pendingFrames() {
+      return sent.size();
+    }
+
+    //--------------------------------------------------------------
+    // complete() reports the oldest frame as written and returns it.
+    //--------------------------------------------------------------
+    Sent complete() {
+      Sent frame;
+      synchronized (this) {
+        frame = sent.remove(0);
+      }
+      if (frame.callback != null)
+        frame.callback.sendCompleted(true);
+      return frame;
+    }
+
+    synchronized Sent last() {
+      return sent.get(sent.size() - 1);
+    }
+  }
+
+  private final FakeTransport transport = new FakeTransport();
+  private final ChannelMux mux = new ChannelMux();
+
+
+  @Before
+  public void setUp() {
+    transport.start();
+    mux.attach(transport);
+  }
+
+
+  @Test
+  public void framesCarryTheirChannelNumber() {
+    ChannelMux.Channel zero = open(0, 10);
+    ChannelMux.Channel three = open(3, 10);
+    assertTrue(zero.send('a', new byte[1], null));
+    assertTrue(three.send('b', new byte[1], null));
+
+    assertEquals(2, transport.sent.size());
+    assertEquals(0, transport.sent.get(0).channel);
+    assertEquals('a', transport.sent.get(0).header);
+    assertEquals(3, transport.sent.get(1).channel);
+    assertEquals('b', transport.sent.get(1).header);
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void channelsCannotBeNested() {
+    open(1, 10).send(2, 'a', new byte[1], null);
+  }
+
+
+  @Test
+  public void windowLimitsFramesInTheTransport() {
+    ChannelMux.Channel channel = open(1, 100);
+    for (int i = 0; i < WINDOW + 4; i++)
+      assertTrue(channel.send('a', new byte[1], null));
+
+    assertEquals(WINDOW, transport.pendingFrames());
+    assertEquals(4, channel.pendingFrames());
+    assertEquals(WINDOW + 4, channel.unsentFrames());
+
+    transport.complete();
+    assertEquals(WINDOW, transport.pendingFrames());
+    assertEquals(3, channel.pendingFrames());
+    assertEquals(WINDOW + 3, channel.unsentFrames());
+
+    while (transport.pendingFrames() > 0)
+      transport.complete();
+    assertEquals(0, channel.unsentFrames());
+  }
+
+
+  @Test
+  public void channelsAreServedRoundRobin() {
+    ChannelMux.Channel one = open(1, 100);
+    ChannelMux.Channel two = open(2, 100);
+    fillWindow(one);
+    for (int i = 0; i < 3; i++)
+      one.send('a', new byte[1], null);
+    for (int i = 0; i < 3; i++)
+      two.send('b', new byte[1], null);
+
+    StringBuilder order = new StringBuilder();
+    for (int i = 0; i < 6; i++) {
+      transport.complete();
+      order.append(transport.last().channel);
+    }
+    assertEquals("121212", order.toString());
+  }
+
+
+  @Test
+  public void sendFailsWhenTheQueueIsFull() {
+    fillWindow(open(9, 100));
+    ChannelMux.Channel channel = open(1, 2);
+    assertTrue(channel.send('a', new byte[1], null));
+    assertTrue(channel.send('a', new byte[1], null));
+    assertFalse(channel.send('a', new byte[1], null));
+    assertEquals(2, channel.pendingFrames());
+  }
+
+
+  @Test
+  public void reservedPlacesAreKeptForReservedFrames() {
+    fillWindow(open(9, 100));
+    ChannelMux.Channel channel = open(1, 2);
+    assertTrue(channel.reserve());
+    assertTrue(channel.send('a', new byte[1], null));
+    assertEquals(2, channel.pendingFrames());
+
+    // The queue is full for everybody but the holder of the reservation.
+    assertFalse(channel.send('a', new byte[1], null));
+    assertFalse(channel.reserve());
+    assertTrue(channel.sendReserved('b', new byte[1], null));
+    assertEquals(2, channel.pendingFrames());
+
+    // Without a reservation, sendReserved() is just a send().
+    assertFalse(channel.sendReserved('c', new byte[1], null));
+  }
+
+
+  @Test
+  public void cancelledReservationFreesItsPlace() {
+    fillWindow(open(9, 100));
+    ChannelMux.Channel channel = open(1, 1);
+    assertTrue(channel.reserve());
+    assertFalse(channel.send('a', new byte[1], null));
+    channel.cancelReservation();
+    assertEquals(0, channel.pendingFrames());
+    assertTrue(channel.send('a', new byte[1], null));
+  }
+
+
+  @Test
+  public void awaitRoomWakesUpWhenFramesAreWritten() throws Exception {
+    fillWindow(open(9, 100));
+    ChannelMux.Channel channel = open(1, 1);
+    assertTrue(channel.send('a', new byte[1], null));
+
+    AtomicReference<Boolean> result = new AtomicReference<>();
+    Thread waiter = new Thread(() -> {
+      try {
+        result.set(channel.awaitRoom());
+      } catch (InterruptedException e) {
+        // result stays null
+      }
+    });
+    waiter.start();
+    waiter.join(200);
+    assertTrue(waiter.isAlive());
+
+    transport.complete();
+    waiter.join(5000);
+    assertFalse(waiter.isAlive());
+    assertTrue(result.get());
+  }
+
+
+  @Test
+  public void awaitRoomReturnsFalseWhenTheChannelStops() throws Exception {
+    fillWindow(open(9, 100));
+    ChannelMux.Channel channel = open(1, 1);
+    assertTrue(channel.send('a', new byte[1], null));
+
+    AtomicReference<Boolean> result = new AtomicReference<>();
+    Thread waiter = new Thread(() -> {
+      try {
+        result.set(channel.awaitRoom());
+      } catch (InterruptedException e) {
+        // result stays null
+      }
+    });
+    waiter.start();
+    waiter.join(200);
+    channel.stop();
+    waiter.join(5000);
+    assertFalse(waiter.isAlive());
+    assertFalse(result.get());
+  }
+
+
+  @Test
+  public void stoppedChannelFailsItsQueuedFrames() {
+    fillWindow(open(9, 100));
+    ChannelMux.Channel channel = open(1, 10);
+    AtomicReference<Boolean> result = new AtomicReference<>();
+    assertTrue(channel.send('a', new byte[1], result::set));
+    assertTrue(channel.reserve());
+
+    channel.stop();
+    assertFalse(result.get());
+    assertEquals(0, channel.pendingFrames());
+    assertEquals(0, channel.unsentFrames());
+    assertFalse(channel.send('a', new byte[1], null));
+    assertFalse(channel.reserve());
+  }
+
+
+  @Test
+  public void stoppingChannelZeroStopsTheOtherChannels() {
+    ChannelMux.Channel zero = open(0, 10);
+    ChannelMux.Channel one = open(1, 10);
+    AtomicReference<IOException> stopReason = new AtomicReference<>();
+    one.setStopListener(stopReason::set);
+
+    zero.stop();
+    assertFalse(transport.running);
+    assertEquals("connection closed", stopReason.get().getMessage());
+    assertFalse(one.send('a', new byte[1], null));
+  }
+
+
+  @Test
+  public void stoppingAnotherChannelLeavesTheConnectionAlone() {
+    ChannelMux.Channel zero = open(0, 10);
+    ChannelMux.Channel one = open(1, 10);
+    AtomicBoolean told = new AtomicBoolean();
+    zero.setStopListener(e -> told.set(true));
+
+    one.stop();
+    assertTrue(transport.running);
+    assertFalse(told.get());
+    assertTrue(zero.send('a', new byte[1], null));
+  }
+
+
+  @Test
+  public void transportFailureReachesEveryChannel() {
+    ChannelMux.Channel zero = open(0, 10);
+    ChannelMux.Channel one = open(1, 10);
+    AtomicReference<IOException> zeroReason = new AtomicReference<>();
+    AtomicReference<IOException> oneReason = new AtomicReference<>();
+    zero.setStopListener(zeroReason::set);
+    one.setStopListener(oneReason::set);
+
+    IOException failure = new IOException("connection reset");
+    transport.stopListener.transportStopped(failure);
+    assertSame(failure, zeroReason.get());
+    assertSame(failure, oneReason.get());
+  }
+
+
+  @Test
+  public void controlFramesSkipTheQueues() {
+    ChannelMux.Channel channel = open(1, 100);
+    fillWindow(channel);
+    channel.send('a', new byte[1], null);
+
+    assertTrue(mux.sendControl(Heartbeat.PING, new byte[8]));
+    FakeTransport.Sent ping = transport.last();
+    assertEquals(0, ping.channel);
+    assertEquals(Heartbeat.PING, ping.header);
+    assertNull(ping.callback);
+    assertEquals(1, channel.pendingFrames());
+  }
+
+
+  @Test
+  public void receivedFramesReachTheirChannel() {
+    List<InboundFrame> zeroFrames = new ArrayList<>();
+    List<InboundFrame> oneFrames = new ArrayList<>();
+    openReceiving(0, zeroFrames);
+    openReceiving(1, oneFrames);
+
+    mux.getDispatcher().dispatch(frame('m', 1, 2));
+    mux.getDispatcher().dispatch(frame(FrameTransport.CHANNEL_FRAME, 0, 1, 'm', 3, 4));
+    // Nobody listens on channel 2.
+    mux.getDispatcher().dispatch(frame(FrameTransport.CHANNEL_FRAME, 0, 2, 'm', 5));
+    // Too short to carry a channel number.
+    mux.getDispatcher().dispatch(frame(FrameTransport.CHANNEL_FRAME, 0));
+
+    assertEquals(1, zeroFrames.size());
+    assertEquals('m', zeroFrames.get(0).type());
+    assertArrayEquals(new byte[] { 1, 2 }, zeroFrames.get(0).copyPayload());
+    assertEquals(1, oneFrames.size());
+    assertEquals('m', oneFrames.get(0).type());
+    assertArrayEquals(new byte[] { 3, 4 }, oneFrames.get(0).copyPayload());
+  }
+
+
+  @Test
+  public void channelNumbersAreNeverReused() {
+    assertEquals(1, mux.nextChannelNumber());
+    assertEquals(2, mux.nextChannelNumber());
+    assertEquals(3, mux.nextChannelNumber());
+  }
+
+
+  //-----------------------------------------------------------------
+  // Helpers
+  //-----------------------------------------------------------------
+  private ChannelMux.Channel open(int number, int queueCapacity) {
+    ChannelMux.Channel channel = mux.openChannel(number, new FrameDispatcher(), queueCapacity);
+    channel.start();
+    return channel;
+  }
+
+
+  private void openReceiving(int number, List<InboundFrame> frames) {
+    FrameDispatcher dispatcher = new FrameDispatcher();
+    dispatcher.setDefaultHandler(frames::add);
+    mux.openChannel(number, dispatcher, 10).start();
+  }
+
+
+  private void fillWindow(ChannelMux.Channel channel) {
+    for (int i = 0; i < WINDOW; i++)
+      assertTrue(channel.send('w', new byte[1], null));
+    assertEquals(WINDOW, transport.pendingFrames());
+  }
+
+
+  private static InboundFrame frame(int... bytes) {
+    byte[] buffer = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++)
+      buffer[i] = (byte) bytes[i];
+    return new InboundFrame(new FrameBufferPool(), buffer, buffer.length);
+  }
+}
@@ -0,0 +1,172 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class ConnectionSupervisorTest {
+
+  private static final int SAMPLES = 1000;
+  private static final long NO_TIMEOUT = 60000;
+
+  //-----------------------------------------------------------------
+  // FakeReconnector counts its calls; every attempt "connects".
+  //-----------------------------------------------------------------
+  private static class FakeReconnector implements ConnectionSupervisor.Reconnector {
+    final Semaphore attempts = new Semaphore(0);
+    final AtomicInteger abandoned = new AtomicInteger();
+
+    @Override
+    public boolean reconnect() {
+      attempts.release();
+      return true;
+    }
+
+    @Override
+    public void abandon() {
+      abandoned.incrementAndGet();
+    }
+
+    void awaitAttempt() throws InterruptedException {
+      assertTrue(attempts.tryAcquire(5, TimeUnit.SECONDS));
+    }
+  }
+
+  private final FakeReconnector reconnector = new FakeReconnector();
+  private final CountDownLatch gaveUp = new CountDownLatch(1);
+
+
+  @Test
+  public void delayDoublesWithEachAttempt() {
+    long delay = ConnectionSupervisor.BASE_DELAY_MS;
+    for (int attempt = 0; delay < ConnectionSupervisor.MAX_DELAY_MS; attempt++) {
+      assertBetween(delay / 2, delay, attempt);
+      delay *= 2;
+    }
+  }
+
+
+  @Test
+  public void delayIsCapped() {
+    long max = ConnectionSupervisor.MAX_DELAY_MS;
+    for (int attempt : new int[] { 6, 7, 16, 17, 63, 64, 1000, Integer.MAX_VALUE })
+      assertBetween(max / 2, max, attempt);
+  }
+
+
+  @Test
+  public void delayIsSpreadOut() {
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < SAMPLES; i++) {
+      long delay = ConnectionSupervisor.backoffDelay(10);
+      min = Math.min(min, delay);
+      max = Math.max(max, delay);
+    }
+    // Sessions which lost their connection at the same time do not all come back at once.
+    assertTrue(max - min > ConnectionSupervisor.MAX_DELAY_MS / 4);
+  }
+
+
+  @Test
+  public void onlyTheFirstLossStartsReconnecting() {
+    ConnectionSupervisor supervisor = supervisor(3, NO_TIMEOUT);
+    assertTrue(supervisor.connectionLost());
+    assertFalse(supervisor.connectionLost());
+    supervisor.stop();
+    assertFalse(supervisor.connectionLost());
+  }
+
+
+  @Test
+  public void attemptOnlyCountsOnceSecured() throws Exception {
+    ConnectionSupervisor supervisor = supervisor(3, NO_TIMEOUT);
+    supervisor.connectionLost();
+    reconnector.awaitAttempt();
+
+    // The setup failed: the connection is dropped and the next attempt follows.
+    assertTrue(supervisor.setupFailed());
+    assertEquals(1, reconnector.abandoned.get());
+    reconnector.awaitAttempt();
+
+    supervisor.secured();
+    // From now on, setup failures are up to the app again.
+    assertFalse(supervisor.setupFailed());
+    assertEquals(1, reconnector.abandoned.get());
+    assertEquals(1, gaveUp.getCount());
+    supervisor.stop();
+  }
+
+
+  @Test
+  public void lostConnectionOfAnAttemptIsRetried() throws Exception {
+    ConnectionSupervisor supervisor = supervisor(3, NO_TIMEOUT);
+    supervisor.connectionLost();
+    reconnector.awaitAttempt();
+
+    assertFalse(supervisor.connectionLost());
+    reconnector.awaitAttempt();
+    supervisor.stop();
+  }
+
+
+  @Test
+  public void setupWhichTakesTooLongIsAbandoned() throws Exception {
+    ConnectionSupervisor supervisor = supervisor(1, 100);
+    supervisor.connectionLost();
+    assertTrue(gaveUp.await(5, TimeUnit.SECONDS));
+    assertEquals(1, reconnector.abandoned.get());
+    // Reconnecting has ended, a late secured() changes nothing.
+    supervisor.secured();
+    assertFalse(supervisor.setupFailed());
+  }
+
+
+  private ConnectionSupervisor supervisor(int maxAttempts, long setupTimeoutMs) {
+    return new ConnectionSupervisor("ConnectionSupervisorTest", maxAttempts, setupTimeoutMs,
+                                    reconnector, gaveUp::countDown);
+  }
+
+
+  private static void assertBetween(long low, long high, int attempt) {
+    for (int i = 0; i < SAMPLES; i++) {
+      long delay = ConnectionSupervisor.backoffDelay(attempt);
+      assertTrue("attempt " + attempt + ": " + delay + " ms",
+                 (delay >= low) && (delay <= high));
+    }
+  }
+}
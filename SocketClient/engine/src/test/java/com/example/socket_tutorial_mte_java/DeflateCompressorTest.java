@@ -0,0 +1,143 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class DeflateCompressorTest {
+
+  private static final int MAX_DECOMPRESSED_SIZE = 16 * 1024 * 1024;
+
+  private final DeflateCompressor compressor = new DeflateCompressor();
+
+
+  @Test
+  public void roundTrip() throws IOException {
+    byte[] text = new byte[100000];
+    for (int i = 0; i < text.length; i++)
+      text[i] = (byte) ("the quick brown fox ".charAt(i % 20));
+    byte[] compressed = compressor.compress(text, 0, text.length);
+    assertTrue(compressed.length < text.length / 10);
+    assertArrayEquals(text, compressor.decompress(compressed, 0, compressed.length));
+  }
+
+
+  @Test
+  public void roundTripOfIncompressibleData() throws IOException {
+    byte[] noise = new byte[50000];
+    new Random(1).nextBytes(noise);
+    byte[] compressed = compressor.compress(noise, 0, noise.length);
+    assertArrayEquals(noise, compressor.decompress(compressed, 0, compressed.length));
+  }
+
+
+  @Test
+  public void roundTripOfEmptyData() throws IOException {
+    byte[] compressed = compressor.compress(new byte[0], 0, 0);
+    assertEquals(0, compressor.decompress(compressed, 0, compressed.length).length);
+  }
+
+
+  @Test
+  public void offsetAndLengthAreHonoured() throws IOException {
+    byte[] data = { 9, 9, 1, 2, 3, 4, 9 };
+    byte[] compressed = compressor.compress(data, 2, 4);
+    byte[] framed = new byte[compressed.length + 3];
+    System.arraycopy(compressed, 0, framed, 1, compressed.length);
+    assertArrayEquals(new byte[] { 1, 2, 3, 4 },
+                      compressor.decompress(framed, 1, compressed.length));
+  }
+
+
+  @Test
+  public void decompressesUpToTheLimit() throws IOException {
+    byte[] zeros = new byte[MAX_DECOMPRESSED_SIZE];
+    byte[] compressed = compressor.compress(zeros, 0, zeros.length);
+    assertEquals(MAX_DECOMPRESSED_SIZE,
+                 compressor.decompress(compressed, 0, compressed.length).length);
+  }
+
+
+  @Test
+  public void rejectsDataInflatingBeyondTheLimit() {
+    byte[] zeros = new byte[MAX_DECOMPRESSED_SIZE + 1];
+    byte[] compressed = compressor.compress(zeros, 0, zeros.length);
+    try {
+      compressor.decompress(compressed, 0, compressed.length);
+      fail("decompressed beyond the limit");
+    } catch (IOException e) {
+      assertEquals("decompressed data too large", e.getMessage());
+    }
+  }
+
+
+  @Test
+  public void rejectsTruncatedData() {
+    byte[] data = new byte[10000];
+    new Random(2).nextBytes(data);
+    byte[] compressed = compressor.compress(data, 0, data.length);
+    try {
+      compressor.decompress(Arrays.copyOf(compressed, compressed.length / 2), 0,
+                            compressed.length / 2);
+      fail("decompressed truncated data");
+    } catch (IOException e) {
+      assertEquals("truncated deflate data", e.getMessage());
+    }
+  }
+
+
+  @Test(expected = IOException.class)
+  public void rejectsGarbage() throws IOException {
+    byte[] garbage = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF };
+    compressor.decompress(garbage, 0, garbage.length);
+  }
+
+
+  @Test
+  public void isUsableAfterAnError() throws IOException {
+    byte[] garbage = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF };
+    try {
+      compressor.decompress(garbage, 0, garbage.length);
+      fail("decompressed garbage");
+    } catch (IOException e) {
+      // expected
+    }
+    byte[] data = { 1, 2, 3 };
+    byte[] compressed = compressor.compress(data, 0, data.length);
+    assertArrayEquals(data, compressor.decompress(compressed, 0, compressed.length));
+  }
+}
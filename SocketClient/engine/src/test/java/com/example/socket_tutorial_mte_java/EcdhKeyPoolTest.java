@@ -0,0 +1,150 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import com.eclypses.ecdh.EcdhP256;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+
+public class EcdhKeyPoolTest {
+
+  @Test
+  public void keyPairIsClaimedOnce() throws Exception {
+    for (int round = 0; round < 100; round++) {
+      EcdhKeyPool.KeyPair pair = new EcdhKeyPool.KeyPair(null, new byte[1]);
+      CountDownLatch go = new CountDownLatch(1);
+      AtomicInteger owners = new AtomicInteger();
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+        threads[t] = new Thread(() -> {
+          try {
+            go.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          if (pair.claim())
+            owners.incrementAndGet();
+        });
+        threads[t].start();
+      }
+      go.countDown();
+      for (Thread thread : threads)
+        thread.join();
+      assertEquals(1, owners.get());
+      assertFalse(pair.claim());
+    }
+  }
+
+
+  @Test
+  public void freshKeyPairIsNotExpired() {
+    assertFalse(new EcdhKeyPool.KeyPair(null, new byte[1]).isExpired());
+  }
+
+
+  //-----------------------------------------------------------------
+  // The tests below create real key pairs, so they need the ECDH
+  // native library (see -PmteLibDir in engine/build.gradle).
+  //-----------------------------------------------------------------
+  @Test
+  public void acquiredKeyPairsAreClaimedAndDistinct() {
+    assumeNativeLibrary();
+    EcdhKeyPool pool = new EcdhKeyPool(2);
+    EcdhKeyPool.KeyPair first = pool.acquire();
+    EcdhKeyPool.KeyPair second = pool.acquire();
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNotSame(first.ecdh, second.ecdh);
+    assertEquals(EcdhP256.SzPublicKey, first.publicKey.length);
+    // Nobody else can get hold of them any more.
+    assertFalse(first.claim());
+    assertFalse(second.claim());
+  }
+
+
+  @Test
+  public void poolIsRefilledInTheBackground() throws Exception {
+    assumeNativeLibrary();
+    EcdhKeyPool pool = new EcdhKeyPool(2);
+    pool.start();
+    try {
+      awaitAvailable(pool, 2);
+      assertNotNull(pool.acquire());
+      awaitAvailable(pool, 2);
+    } finally {
+      pool.stop();
+    }
+    // Stopping throws the pooled key pairs away.
+    assertEquals(0, pool.available());
+  }
+
+
+  @Test
+  public void wipeZeroizesThePublicKey() {
+    assumeNativeLibrary();
+    EcdhKeyPool.KeyPair pair = new EcdhKeyPool(1).acquire();
+    assertNotNull(pair);
+    EcdhKeyPool.wipe(pair.ecdh, pair.publicKey);
+    for (byte b : pair.publicKey)
+      assertEquals(0, b);
+    // The private key is gone too: no secret can be computed with it any more.
+    EcdhKeyPool.KeyPair peer = new EcdhKeyPool(1).acquire();
+    byte[] secret = new byte[EcdhP256.SzSecretData];
+    assertTrue(pair.ecdh.getSharedSecret(peer.publicKey, secret) != EcdhP256.Success);
+    EcdhKeyPool.wipe(peer.ecdh, peer.publicKey);
+  }
+
+
+  //-----------------------------------------------------------------
+  // Helpers
+  //-----------------------------------------------------------------
+  private static void assumeNativeLibrary() {
+    try {
+      new EcdhP256();
+    } catch (LinkageError e) {
+      Assume.assumeNoException("ECDH native library not available", e);
+    }
+  }
+
+
+  private static void awaitAvailable(EcdhKeyPool pool, int count) throws InterruptedException {
+    for (int i = 0; (i < 100) && (pool.available() < count); i++)
+      Thread.sleep(100);
+    assertEquals(count, pool.available());
+  }
+}
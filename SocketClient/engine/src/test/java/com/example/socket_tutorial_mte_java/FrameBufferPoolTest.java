@@ -0,0 +1,116 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+public class FrameBufferPoolTest {
+
+  private final FrameBufferPool pool = new FrameBufferPool();
+
+
+  @Test
+  public void sizesAreRoundedUpToTheirClass() {
+    assertEquals(256, pool.acquire(0).length);
+    assertEquals(256, pool.acquire(1).length);
+    assertEquals(256, pool.acquire(256).length);
+    assertEquals(512, pool.acquire(257).length);
+    assertEquals(4096, pool.acquire(4000).length);
+    assertEquals(32768, pool.acquire(32768).length);
+    assertEquals(65536, pool.acquire(32769).length);
+    assertEquals(65536, pool.acquire(65536).length);
+  }
+
+
+  @Test
+  public void largeBuffersAreNotPooled() {
+    byte[] buffer = pool.acquire(65537);
+    assertEquals(65537, buffer.length);
+    pool.release(buffer);
+    assertNotSame(buffer, pool.acquire(65537));
+  }
+
+
+  @Test
+  public void releasedBuffersAreReused() {
+    byte[] buffer = pool.acquire(1000);
+    pool.release(buffer);
+    // Any size of the same class gets it.
+    assertSame(buffer, pool.acquire(600));
+    // ...but only once.
+    assertNotSame(buffer, pool.acquire(600));
+  }
+
+
+  @Test
+  public void buffersOfOtherClassesAreNotReused() {
+    byte[] buffer = pool.acquire(1000);
+    pool.release(buffer);
+    assertNotSame(buffer, pool.acquire(2000));
+    assertNotSame(buffer, pool.acquire(500));
+  }
+
+
+  @Test
+  public void foreignBuffersAreDropped() {
+    byte[] foreign = new byte[1000];
+    pool.release(foreign);
+    byte[] buffer = pool.acquire(1000);
+    assertNotSame(foreign, buffer);
+    assertEquals(1024, buffer.length);
+  }
+
+
+  @Test
+  public void idleBuffersPerClassAreLimited() {
+    List<byte[]> buffers = new ArrayList<>();
+    for (int i = 0; i < 40; i++)
+      buffers.add(pool.acquire(300));
+    for (byte[] buffer : buffers)
+      pool.release(buffer);
+
+    Set<byte[]> released = Collections.newSetFromMap(new IdentityHashMap<>());
+    released.addAll(buffers);
+    int reused = 0;
+    for (int i = 0; i < 40; i++) {
+      if (released.contains(pool.acquire(300)))
+        reused++;
+    }
+    assertEquals(32, reused);
+  }
+}
@@ -0,0 +1,263 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+
+//---------------------------------------------------------------------------------------
+// Frames written by a FrameWriter are read back by a FrameReader, and the FrameReader
+// stops on a bad length field or on the end of the stream.
+//---------------------------------------------------------------------------------------
+public class FramingTest {
+
+  private static final int[] PAYLOAD_SIZES = { 0, 1, 255, 256, 65535, 65536, 65537, 300000 };
+
+
+  @Test
+  public void framesOfAllSizesSurviveTheRoundTrip() throws Exception {
+    List<byte[]> payloads = new ArrayList<>();
+    for (int size : PAYLOAD_SIZES)
+      payloads.add(payload(size));
+    byte[] wire = write(0, 'm', payloads);
+
+    List<byte[]> frames = read(wire);
+    assertEquals(payloads.size(), frames.size());
+    for (int i = 0; i < payloads.size(); i++) {
+      assertEquals('m', frames.get(i)[0]);
+      assertArrayEquals(payloads.get(i), payload(frames.get(i)));
+    }
+  }
+
+
+  @Test
+  public void frameLayoutOnTheWire() throws Exception {
+    byte[] wire = write(0, 'm', listOf(new byte[] { 1, 2, 3 }));
+    assertArrayEquals(new byte[] { 0, 0, 0, 3, 'm', 1, 2, 3 }, wire);
+
+    wire = write(0x1234, 'm', listOf(new byte[] { 1, 2, 3 }));
+    assertArrayEquals(new byte[] { 0, 0, 0, 6, 'x', 0x12, 0x34, 'm', 1, 2, 3 }, wire);
+  }
+
+
+  @Test
+  public void channelFramesAreUnwrapped() throws Exception {
+    byte[] data = payload(1000);
+    byte[] wire = write(7, 'm', listOf(data));
+
+    List<InboundFrame> frames = new ArrayList<>();
+    FrameDispatcher dispatcher = new FrameDispatcher();
+    dispatcher.setDefaultHandler(frames::add);
+    assertNull(readInto(wire, dispatcher));
+
+    assertEquals(1, frames.size());
+    InboundFrame frame = frames.get(0);
+    assertEquals(FrameTransport.CHANNEL_FRAME, frame.type());
+    assertEquals(7, frame.channel());
+    InboundFrame inner = frame.unwrap();
+    assertEquals('m', inner.type());
+    assertArrayEquals(data, inner.copyPayload());
+    inner.release();
+  }
+
+
+  @Test
+  public void pooledFramesAreWritten() throws Exception {
+    byte[] buffer = FrameBufferPool.getShared().acquire(100);
+    for (int i = 0; i < 100; i++)
+      buffer[i] = (byte) i;
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FrameWriter writer = new FrameWriter(out, 4);
+    writer.start();
+    CountDownLatch sent = new CountDownLatch(1);
+    assertTrue(writer.sendPooled(0, 'm', buffer, 10, success -> sent.countDown()));
+    assertTrue(sent.await(5, TimeUnit.SECONDS));
+    writer.stop();
+
+    assertArrayEquals(new byte[] { 0, 0, 0, 10, 'm', 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 },
+                      out.toByteArray());
+  }
+
+
+  @Test
+  public void writerRefusesFramesWhenNotRunning() {
+    FrameWriter writer = new FrameWriter(new ByteArrayOutputStream(), 4);
+    assertFalse(writer.send(0, 'm', new byte[1], null));
+  }
+
+
+  @Test
+  public void writerReportsFailedWrites() throws Exception {
+    AtomicReference<IOException> stopReason = new AtomicReference<>();
+    CountDownLatch stopped = new CountDownLatch(1);
+    CountDownLatch sent = new CountDownLatch(1);
+    AtomicReference<Boolean> result = new AtomicReference<>();
+
+    FrameWriter writer = new FrameWriter(new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("broken pipe");
+      }
+    }, 4);
+    writer.setStopListener(e -> {
+      stopReason.set(e);
+      stopped.countDown();
+    });
+    writer.start();
+    assertTrue(writer.send(0, 'm', new byte[10], success -> {
+      result.set(success);
+      sent.countDown();
+    }));
+
+    assertTrue(sent.await(5, TimeUnit.SECONDS));
+    assertFalse(result.get());
+    assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    assertEquals("broken pipe", stopReason.get().getMessage());
+  }
+
+
+  @Test
+  public void readerRejectsNegativeLength() throws Exception {
+    byte[] wire = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 'm' };
+    IOException e = readInto(wire, new FrameDispatcher());
+    assertTrue(e.getMessage().startsWith("invalid frame length"));
+  }
+
+
+  @Test
+  public void readerRejectsLengthAboveLimit() throws Exception {
+    byte[] wire = ByteBuffer.allocate(5).putInt(FrameTransport.MAX_FRAME_LENGTH + 1)
+        .put((byte) 'm').array();
+    IOException e = readInto(wire, new FrameDispatcher());
+    assertTrue(e.getMessage().startsWith("invalid frame length"));
+  }
+
+
+  @Test
+  public void readerStopsQuietlyOnEndOfStream() throws Exception {
+    byte[] wire = write(0, 'm', listOf(payload(10)));
+    // Cut off the last byte of the payload.
+    byte[] truncated = new byte[wire.length - 1];
+    System.arraycopy(wire, 0, truncated, 0, truncated.length);
+    assertTrue(read(truncated).isEmpty());
+  }
+
+
+  //-----------------------------------------------------------------
+  // Helpers
+  //-----------------------------------------------------------------
+  private static byte[] payload(int size) {
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++)
+      data[i] = (byte) (i * 31 + 7);
+    return data;
+  }
+
+
+  private static byte[] payload(byte[] frame) {
+    byte[] data = new byte[frame.length - 1];
+    System.arraycopy(frame, 1, data, 0, data.length);
+    return data;
+  }
+
+
+  private static List<byte[]> listOf(byte[] data) {
+    List<byte[]> list = new ArrayList<>();
+    list.add(data);
+    return list;
+  }
+
+
+  private static byte[] write(int channel, int header, List<byte[]> payloads)
+      throws InterruptedException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FrameWriter writer = new FrameWriter(out, payloads.size());
+    writer.start();
+    CountDownLatch sent = new CountDownLatch(payloads.size());
+    for (byte[] data : payloads)
+      assertTrue(writer.send(channel, header, data, success -> {
+        if (success)
+          sent.countDown();
+      }));
+    assertTrue(sent.await(5, TimeUnit.SECONDS));
+    writer.stop();
+    return out.toByteArray();
+  }
+
+
+  //-----------------------------------------------------------------
+  // read() returns the frames (type byte plus payload) read from
+  // "wire"; it fails if the reader stops with an error.
+  //-----------------------------------------------------------------
+  private static List<byte[]> read(byte[] wire) throws Exception {
+    List<byte[]> received = new ArrayList<>();
+    FrameDispatcher dispatcher = new FrameDispatcher();
+    dispatcher.setDefaultHandler(frame -> {
+      received.add(frame.copyFrame());
+      frame.release();
+    });
+    assertNull(readInto(wire, dispatcher));
+    return received;
+  }
+
+
+  //-----------------------------------------------------------------
+  // readInto() reads "wire" until the reader stops and returns the
+  // IOException it stopped with, null at the end of the stream.
+  //-----------------------------------------------------------------
+  private static IOException readInto(byte[] wire, FrameDispatcher dispatcher)
+      throws InterruptedException {
+    AtomicReference<IOException> stopReason = new AtomicReference<>();
+    CountDownLatch stopped = new CountDownLatch(1);
+    FrameReader reader = new FrameReader(new ByteArrayInputStream(wire), dispatcher);
+    reader.setStopListener(e -> {
+      stopReason.set(e);
+      stopped.countDown();
+    });
+    reader.start();
+    assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    return stopReason.get();
+  }
+}
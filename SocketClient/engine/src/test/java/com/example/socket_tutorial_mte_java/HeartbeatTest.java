@@ -0,0 +1,200 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class HeartbeatTest {
+
+  private static final long INTERVAL_MS = 20;
+  private static final long NO_TIMEOUT = 60000;
+
+  //-----------------------------------------------------------------
+  // PingTransport hands the payload of every PING to the test, which
+  // decides whether to answer it.
+  //-----------------------------------------------------------------
+  private static class PingTransport implements FrameTransport {
+    final BlockingQueue<byte[]> pings = new LinkedBlockingQueue<>();
+    volatile boolean running;
+
+    @Override
+    public void setStopListener(StopListener listener) {
+    }
+
+    @Override
+    public void start() {
+      running = true;
+    }
+
+    @Override
+    public void stop() {
+      running = false;
+    }
+
+    @Override
+    public boolean send(int channel, int header, byte[] data, SendCallback callback) {
+      if (!running)
+        return false;
+      if (header == Heartbeat.PING)
+        pings.add(data);
+      return true;
+    }
+
+    @Override
+    public boolean sendPooled(int channel, int header, byte[] buffer, int length,
+                              SendCallback callback) {
+      return send(channel, header, buffer, callback);
+    }
+
+    @Override
+    public int pendingFrames() {
+      return 0;
+    }
+
+    byte[] awaitPing() throws InterruptedException {
+      byte[] ping = pings.poll(5, TimeUnit.SECONDS);
+      assertNotNull(ping);
+      return ping;
+    }
+  }
+
+  private final PingTransport transport = new PingTransport();
+  private final ChannelMux mux = new ChannelMux();
+  private final RttStats rttStats = new RttStats();
+  private final AtomicInteger deaths = new AtomicInteger();
+  private final CountDownLatch dead = new CountDownLatch(1);
+  private Heartbeat heartbeat;
+
+
+  @Before
+  public void setUp() {
+    transport.start();
+    mux.attach(transport);
+  }
+
+
+  @After
+  public void tearDown() {
+    if (heartbeat != null)
+      heartbeat.stop();
+  }
+
+
+  @Test
+  public void pongMeasuresTheRoundTrip() throws Exception {
+    start(NO_TIMEOUT);
+    byte[] ping = transport.awaitPing();
+    Thread.sleep(5);
+    heartbeat.pongReceived(pong(ping));
+
+    assertEquals(1, rttStats.count());
+    assertTrue(rttStats.latest() >= TimeUnit.MILLISECONDS.toNanos(5));
+    // The next ping follows once the last one has been answered.
+    heartbeat.pongReceived(pong(transport.awaitPing()));
+    assertEquals(2, rttStats.count());
+  }
+
+
+  @Test
+  public void strayPongsAreIgnored() throws Exception {
+    start(NO_TIMEOUT);
+    byte[] ping = transport.awaitPing();
+    byte[] other = ping.clone();
+    other[7]++;
+    heartbeat.pongReceived(pong(other));
+    heartbeat.pongReceived(pong(new byte[] { 1, 2, 3 }));
+    assertEquals(0, rttStats.count());
+
+    heartbeat.pongReceived(pong(ping));
+    // A second answer to the same ping counts only once.
+    heartbeat.pongReceived(pong(ping));
+    assertEquals(1, rttStats.count());
+  }
+
+
+  @Test
+  public void unansweredPingMeansTheConnectionIsDead() throws Exception {
+    start(100);
+    assertTrue(dead.await(5, TimeUnit.SECONDS));
+    Thread.sleep(10 * INTERVAL_MS);
+    assertEquals(1, deaths.get());
+  }
+
+
+  @Test
+  public void pingWhichCannotBeSentCountsAsMissed() throws Exception {
+    transport.stop();
+    start(100);
+    assertTrue(dead.await(5, TimeUnit.SECONDS));
+    assertTrue(transport.pings.isEmpty());
+  }
+
+
+  @Test
+  public void stoppedHeartbeatStaysQuiet() throws Exception {
+    start(50);
+    heartbeat.stop();
+    assertFalse(dead.await(300, TimeUnit.MILLISECONDS));
+    transport.pings.clear();
+    Thread.sleep(5 * INTERVAL_MS);
+    assertTrue(transport.pings.isEmpty());
+  }
+
+
+  //-----------------------------------------------------------------
+  // Helpers
+  //-----------------------------------------------------------------
+  private void start(long timeoutMs) {
+    heartbeat = new Heartbeat("HeartbeatTest", mux, rttStats, INTERVAL_MS, timeoutMs, () -> {
+      deaths.incrementAndGet();
+      dead.countDown();
+    });
+    heartbeat.start();
+  }
+
+
+  private static InboundFrame pong(byte[] payload) {
+    byte[] buffer = new byte[payload.length + 1];
+    buffer[0] = (byte) Heartbeat.PONG;
+    System.arraycopy(payload, 0, buffer, 1, payload.length);
+    return new InboundFrame(new FrameBufferPool(), buffer, buffer.length);
+  }
+}
@@ -0,0 +1,136 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class LatencyHistogramTest {
+
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+
+  @Test
+  public void emptyHistogramReportsZero() {
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.max());
+    assertEquals(0, histogram.mean(), 0);
+    assertEquals(0, histogram.percentile(50));
+    assertEquals(0, histogram.percentile(100));
+  }
+
+
+  @Test
+  public void smallValuesAreExact() {
+    histogram.record(5);
+    histogram.record(10);
+    histogram.record(100);
+
+    assertEquals(5, histogram.percentile(0));
+    assertEquals(5, histogram.percentile(33));
+    assertEquals(10, histogram.percentile(50));
+    assertEquals(100, histogram.percentile(99));
+    assertEquals(100, histogram.percentile(100));
+    assertEquals(100, histogram.max());
+    assertEquals(115.0 / 3, histogram.mean(), 1e-9);
+  }
+
+
+  @Test
+  public void negativeValuesCountAsZero() {
+    histogram.record(-7);
+    assertEquals(1, histogram.count());
+    assertEquals(0, histogram.percentile(100));
+    assertEquals(0, histogram.mean(), 0);
+  }
+
+
+  @Test
+  public void percentilesStayWithinTheirPrecision() {
+    Random random = new Random(3);
+    long[] values = new long[20000];
+    for (int i = 0; i < values.length; i++) {
+      // Spread over all magnitudes, from nanoseconds to hours.
+      values[i] = random.nextLong() >>> (1 + random.nextInt(62));
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double percentile : new double[] { 0, 1, 10, 25, 50, 75, 90, 99, 99.9, 100 }) {
+      int rank = Math.max(1, (int) Math.ceil(percentile / 100 * values.length));
+      long exact = values[rank - 1];
+      long reported = histogram.percentile(percentile);
+      assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+      assertTrue(percentile + ": " + reported + " too far above " + exact,
+                 reported - exact <= exact / 64);
+    }
+  }
+
+
+  @Test
+  public void percentileNeverExceedsTheMaximum() {
+    histogram.record(1000001);
+    // The bucket of 1000001 reaches up to 1007615.
+    assertEquals(1000001, histogram.percentile(100));
+  }
+
+
+  @Test
+  public void largestValuesDoNotOverflow() {
+    histogram.record(Long.MAX_VALUE);
+    histogram.record(Long.MAX_VALUE - 1);
+    assertEquals(Long.MAX_VALUE, histogram.percentile(50));
+    assertEquals(Long.MAX_VALUE, histogram.percentile(100));
+    assertEquals(Long.MAX_VALUE, histogram.max());
+  }
+
+
+  @Test
+  public void concurrentRecordingCountsEverything() throws Exception {
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      long value = 1000L * (t + 1);
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100000; i++)
+          histogram.record(value);
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads)
+      thread.join();
+
+    assertEquals(400000, histogram.count());
+    assertEquals(4000, histogram.max());
+    assertEquals(2500, histogram.mean(), 1e-9);
+  }
+}
@@ -0,0 +1,153 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class MessageBatcherTest {
+
+  // Long enough that the flush timer never fires during a test, unless it is meant to.
+  private static final long NO_TIMEOUT_MS = 60000;
+
+  private final List<byte[]> batches = new ArrayList<>();
+
+
+  @Test
+  public void flushPacksMessagesIntoOneBatch() {
+    MessageBatcher batcher = new MessageBatcher(1024, NO_TIMEOUT_MS, Runnable::run, batches::add);
+    byte[][] messages = { { 1, 2, 3 }, {}, { 4 } };
+    for (byte[] message : messages)
+      batcher.add(message);
+    assertTrue(batches.isEmpty());
+    assertFalse(batcher.isIdle());
+
+    batcher.flush();
+    assertEquals(1, batches.size());
+    assertArrayEquals(new byte[] { 0, 0, 0, 3, 1, 2, 3, 0, 0, 0, 0, 0, 0, 0, 1, 4 },
+                      batches.get(0));
+    List<byte[]> unpacked = MessageBatcher.unpack(batches.get(0));
+    assertEquals(messages.length, unpacked.size());
+    for (int i = 0; i < messages.length; i++)
+      assertArrayEquals(messages[i], unpacked.get(i));
+    assertTrue(batcher.isIdle());
+  }
+
+
+  @Test
+  public void flushWithNothingPendingSendsNothing() {
+    MessageBatcher batcher = new MessageBatcher(1024, NO_TIMEOUT_MS, Runnable::run, batches::add);
+    batcher.flush();
+    assertTrue(batches.isEmpty());
+    assertTrue(batcher.isIdle());
+  }
+
+
+  @Test
+  public void fullBatchIsSentRightAway() {
+    MessageBatcher batcher = new MessageBatcher(16, NO_TIMEOUT_MS, Runnable::run, batches::add);
+    batcher.add(new byte[6]);
+    assertTrue(batches.isEmpty());
+    // 10 + 10 bytes would not fit, so the first message goes on its own.
+    batcher.add(new byte[6]);
+    assertEquals(1, batches.size());
+    assertEquals(10, batches.get(0).length);
+    // Exactly full.
+    batcher.add(new byte[2]);
+    assertEquals(2, batches.size());
+    assertEquals(16, batches.get(1).length);
+    assertTrue(batcher.isIdle());
+  }
+
+
+  @Test
+  public void oversizedMessageIsSentOnItsOwn() {
+    MessageBatcher batcher = new MessageBatcher(16, NO_TIMEOUT_MS, Runnable::run, batches::add);
+    batcher.add(new byte[1]);
+    batcher.add(new byte[100]);
+    assertEquals(2, batches.size());
+    assertEquals(1, MessageBatcher.unpack(batches.get(0)).size());
+    assertEquals(100, MessageBatcher.unpack(batches.get(1)).get(0).length);
+  }
+
+
+  @Test
+  public void timerFlushesPendingMessages() throws Exception {
+    CountDownLatch sent = new CountDownLatch(1);
+    MessageBatcher batcher = new MessageBatcher(1024, 10, Runnable::run, batch -> {
+      batches.add(batch);
+      sent.countDown();
+    });
+    batcher.add(new byte[] { 42 });
+    assertTrue(sent.await(5, TimeUnit.SECONDS));
+    assertArrayEquals(new byte[] { 42 }, MessageBatcher.unpack(batches.get(0)).get(0));
+  }
+
+
+  @Test
+  public void batchHandedToTheExecutorIsNotIdle() {
+    List<Runnable> tasks = new ArrayList<>();
+    MessageBatcher batcher = new MessageBatcher(1024, NO_TIMEOUT_MS, tasks::add, batches::add);
+    batcher.add(new byte[1]);
+    batcher.flush();
+    assertFalse(batcher.isIdle());
+
+    tasks.get(0).run();
+    assertEquals(1, batches.size());
+    assertTrue(batcher.isIdle());
+  }
+
+
+  @Test
+  public void unpackEmptyBatch() {
+    assertTrue(MessageBatcher.unpack(new byte[0]).isEmpty());
+  }
+
+
+  @Test
+  public void unpackRejectsMalformedBatches() {
+    // Length field cut short.
+    assertNull(MessageBatcher.unpack(new byte[] { 0, 0, 0 }));
+    // Message shorter than its length field.
+    assertNull(MessageBatcher.unpack(new byte[] { 0, 0, 0, 2, 1 }));
+    // Negative length.
+    assertNull(MessageBatcher.unpack(new byte[] { (byte) 0x80, 0, 0, 0 }));
+    // A good message followed by garbage.
+    assertNull(MessageBatcher.unpack(new byte[] { 0, 0, 0, 1, 7, 0 }));
+  }
+}
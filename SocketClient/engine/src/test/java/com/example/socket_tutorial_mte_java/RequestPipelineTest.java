@@ -0,0 +1,169 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class RequestPipelineTest {
+
+  @Test
+  public void answersCompleteRequestsInOrder() {
+    RequestPipeline pipeline = new RequestPipeline(4, 0);
+    byte[] first = { 1 };
+    byte[] second = { 2 };
+    assertEquals(0, pipeline.begin(first));
+    assertEquals(1, pipeline.begin(second));
+    assertEquals(2, pipeline.inFlight());
+
+    RequestPipeline.Entry entry = pipeline.complete();
+    assertEquals(0, entry.id);
+    assertSame(first, entry.data);
+    entry = pipeline.complete();
+    assertEquals(1, entry.id);
+    assertSame(second, entry.data);
+    assertNull(pipeline.complete());
+    assertEquals(0, pipeline.inFlight());
+  }
+
+
+  @Test
+  public void windowLimitsRequestsInFlight() {
+    RequestPipeline pipeline = new RequestPipeline(2, 0);
+    assertEquals(2, pipeline.getWindow());
+    pipeline.begin(new byte[0]);
+    assertFalse(pipeline.isFull());
+    pipeline.begin(new byte[0]);
+    assertTrue(pipeline.isFull());
+    assertEquals(RequestPipeline.NO_REQUEST, pipeline.begin(new byte[0]));
+
+    pipeline.complete();
+    assertFalse(pipeline.isFull());
+    assertEquals(2, pipeline.begin(new byte[0]));
+  }
+
+
+  @Test
+  public void windowIsAtLeastOne() {
+    RequestPipeline pipeline = new RequestPipeline(0, -1);
+    assertEquals(1, pipeline.getWindow());
+    assertEquals(0, pipeline.begin(new byte[0]));
+    assertEquals(RequestPipeline.NO_REQUEST, pipeline.begin(new byte[0]));
+  }
+
+
+  @Test
+  public void cancelTakesBackOnlyTheNewestRequest() {
+    RequestPipeline pipeline = new RequestPipeline(4, 0);
+    long first = pipeline.begin(new byte[0]);
+    long second = pipeline.begin(new byte[0]);
+
+    pipeline.cancel(first);
+    assertEquals(2, pipeline.inFlight());
+    pipeline.cancel(second);
+    assertEquals(1, pipeline.inFlight());
+    assertEquals(first, pipeline.unanswered().get(0).id);
+  }
+
+
+  @Test
+  public void skippedRequestsCanBeAnsweredLate() {
+    RequestPipeline pipeline = new RequestPipeline(8, 4);
+    for (int i = 0; i < 4; i++)
+      pipeline.begin(new byte[] { (byte) i });
+
+    // The answer to request 2 arrives first; 0 and 1 are skipped.
+    List<RequestPipeline.Entry> lost = pipeline.skip(2);
+    assertEquals(2, lost.size());
+    assertEquals(0, lost.get(0).id);
+    assertEquals(1, lost.get(1).id);
+    assertEquals(2, pipeline.complete().id);
+
+    // The answer to request 0 comes 2 places late, the one to 1 a place late.
+    assertEquals(0, pipeline.completeLate(2).id);
+    assertEquals(1, pipeline.completeLate(1).id);
+    assertNull(pipeline.completeLate(1));
+
+    // Late answers never touch the requests in flight.
+    assertEquals(1, pipeline.inFlight());
+    assertEquals(3, pipeline.complete().id);
+  }
+
+
+  @Test
+  public void lateAnswersBeyondTheWindowAreNotMatched() {
+    RequestPipeline pipeline = new RequestPipeline(8, 2);
+    for (int i = 0; i < 6; i++)
+      pipeline.begin(new byte[0]);
+
+    pipeline.skip(1);
+    pipeline.complete();
+    pipeline.skip(1);
+    pipeline.complete();
+    // The answer to request 0 is 3 places late, beyond the window of 2.
+    assertNull(pipeline.completeLate(3));
+    assertEquals(2, pipeline.completeLate(1).id);
+  }
+
+
+  @Test
+  public void skippedRequestsAreDroppedWithoutLateWindow() {
+    RequestPipeline pipeline = new RequestPipeline(4, 0);
+    pipeline.begin(new byte[0]);
+    pipeline.begin(new byte[0]);
+
+    assertEquals(1, pipeline.skip(1).size());
+    assertEquals(1, pipeline.complete().id);
+    assertNull(pipeline.completeLate(1));
+  }
+
+
+  @Test
+  public void resetForgetsEverything() {
+    RequestPipeline pipeline = new RequestPipeline(4, 4);
+    pipeline.begin(new byte[0]);
+    pipeline.begin(new byte[0]);
+    pipeline.begin(new byte[0]);
+    pipeline.skip(1);
+
+    assertEquals(2, pipeline.unanswered().size());
+    pipeline.reset();
+    assertEquals(0, pipeline.inFlight());
+    assertTrue(pipeline.unanswered().isEmpty());
+    assertNull(pipeline.completeLate(0));
+    // Ids keep counting, so an old answer can never match a new request.
+    assertEquals(3, pipeline.begin(new byte[0]));
+  }
+}
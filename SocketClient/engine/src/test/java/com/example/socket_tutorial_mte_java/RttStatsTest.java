@@ -0,0 +1,80 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+
+public class RttStatsTest {
+
+  private final RttStats stats = new RttStats();
+
+
+  @Test
+  public void nothingMeasuredYet() {
+    assertEquals(0, stats.count());
+    assertEquals(-1, stats.latest());
+    assertEquals(-1, stats.percentile(50));
+  }
+
+
+  @Test
+  public void latestIsTheLastSample() {
+    stats.add(30);
+    stats.add(10);
+    assertEquals(2, stats.count());
+    assertEquals(10, stats.latest());
+  }
+
+
+  @Test
+  public void percentilesUseTheNearestRank() {
+    for (int rtt = 100; rtt >= 1; rtt--)
+      stats.add(rtt);
+    assertEquals(1, stats.percentile(0));
+    assertEquals(50, stats.percentile(50));
+    assertEquals(91, stats.percentile(90.5));
+    assertEquals(99, stats.percentile(99));
+    assertEquals(100, stats.percentile(100));
+    // Out of range percentiles are clamped.
+    assertEquals(1, stats.percentile(-5));
+    assertEquals(100, stats.percentile(150));
+  }
+
+
+  @Test
+  public void onlyTheLastSamplesAreKept() {
+    for (int rtt = 1; rtt <= RttStats.SAMPLES + 10; rtt++)
+      stats.add(rtt);
+    assertEquals(RttStats.SAMPLES + 10, stats.count());
+    assertEquals(RttStats.SAMPLES + 10, stats.latest());
+    assertEquals(11, stats.percentile(0));
+    assertEquals(RttStats.SAMPLES + 10, stats.percentile(100));
+  }
+}
@@ -0,0 +1,121 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+//---------------------------------------------------------------------------------------
+// LoadClient drives a session through its setup the way MainActivity does: once the
+// socket is open ("Ready"), it runs setupMTE(null) and waits for the second "Ready" which
+// tells that the session is secured. Replies to requests are handed to a ReplyListener.
+//---------------------------------------------------------------------------------------
+class LoadClient implements SocketCallback {
+
+  private static final long SETUP_TIMEOUT_MS = 30000;
+
+  interface ReplyListener {
+    void replyReceived(long requestId, byte[] decoded);
+  }
+
+  private final ReplyListener replyListener;
+  private final CompletableFuture<SecureSession> opened = new CompletableFuture<>();
+  private final CompletableFuture<SecureSession> secured = new CompletableFuture<>();
+  private boolean connected;     // Only touched by the callback thread.
+
+
+  private LoadClient(ReplyListener replyListener) {
+    this.replyListener = replyListener;
+  }
+
+
+  static SecureSession openSecured(SessionManager manager, int port, boolean compactHandshake)
+      throws IOException {
+    SecureSession.SetupParams setupParams = new SecureSession.SetupParams();
+    setupParams.ipAddress = "127.0.0.1";
+    setupParams.port = port;
+    setupParams.compactHandshake = compactHandshake;
+    setupParams.deliveryInterval = 0;
+    return openSecured(manager, setupParams, null);
+  }
+
+
+  //------------------------------------------------------------------
+  // openSecured() opens a session to the server given in "setupParams"
+  // and returns it once it is secured.
+  //------------------------------------------------------------------
+  static SecureSession openSecured(SessionManager manager, SecureSession.SetupParams setupParams,
+                                   ReplyListener replyListener) throws IOException {
+    LoadClient client = new LoadClient(replyListener);
+    SecureSession session = manager.openSession(setupParams, client);
+    if (session == null)
+      throw new IOException("session could not be opened");
+    client.opened.complete(session);
+    try {
+      return client.secured.get(SETUP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+      manager.closeSession(session);
+      throw new IOException("session could not be secured", e);
+    }
+  }
+
+
+  @Override
+  public void answerFromServer(byte[] data) {
+    SecureSession session = opened.join();
+    String answer = new String(data, StandardCharsets.UTF_8);
+    if (answer.equals("Ready")) {
+      if (!connected) {
+        connected = true;
+        session.setupMTE(null);
+      } else {
+        secured.complete(session);
+      }
+    } else if (answer.equals("Error")) {
+      secured.completeExceptionally(new IOException("session setup failed"));
+    }
+  }
+
+
+  @Override
+  public void replyFromServer(long requestId, InboundFrame frame, byte[] decoded) {
+    frame.release();
+    if (replyListener != null)
+      replyListener.replyReceived(requestId, decoded);
+  }
+
+
+  @Override
+  public void messagesFromServer(List<byte[]> messages) {
+  }
+}
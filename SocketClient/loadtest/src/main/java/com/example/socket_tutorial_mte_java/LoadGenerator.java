@@ -0,0 +1,315 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+//---------------------------------------------------------------------------------------
+// LoadGenerator runs any number of SecureSessions at the same time against a server and
+// reports throughput and latency. Every session runs on a thread of its own and keeps up
+// to "window" requests in flight (see SetupParams.pipelineWindow); each reply frees the
+// slot for the next request. The latency of a request is measured from the moment it is
+// handed to sendRequest() until its reply has been decoded and delivered to the app, so
+// it includes encoding, the transport, the server, decoding and the callback thread.
+// Replies are delivered through the one callback thread of the SessionManager for all
+// sessions, just like through the main UI thread in the app.
+//
+// Without --host, an in-process ReferenceServer on the loopback interface is used, so no
+// network and no other server is needed:
+//   java ... com.example.socket_tutorial_mte_java.LoadGenerator
+//       [--host=<address>] [--port=27015] [--sessions=16] [--window=8] [--size=256]
+//       [--duration=30] [--transport=STREAM|NIO] [--variant=CORE|MKE|FLEN]
+//       [--compact] [--compress] [--delivery=0] [--metrics]
+// --delivery is SetupParams.deliveryInterval; it defaults to 0 here, so that callbacks
+// are delivered as soon as possible instead of once per display frame.
+// With --metrics, the SessionMetrics of every session are printed at the end, which
+// tells where the time goes: encoding, sending, the server, decoding or delivery.
+//---------------------------------------------------------------------------------------
+class LoadGenerator {
+
+  private static final long DRAIN_TIMEOUT_MS = 5000;
+
+  private final Map<String, String> options;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LatencyHistogram setupTime = new LatencyHistogram();
+  private final AtomicLong messages = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final ConcurrentLinkedQueue<SessionMetrics.Snapshot> metrics =
+      new ConcurrentLinkedQueue<>();
+  private final SessionManager manager = new SessionManager();
+  private volatile boolean running;
+
+
+  private LoadGenerator(Map<String, String> options) {
+    this.options = options;
+  }
+
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        System.err.println("unknown argument " + arg);
+        System.exit(1);
+      }
+      int eq = arg.indexOf('=');
+      if (eq < 0)
+        options.put(arg.substring(2), "true");
+      else
+        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+    }
+    System.exit(new LoadGenerator(options).run() ? 0 : 1);
+  }
+
+
+  private boolean run() throws IOException, InterruptedException {
+    int sessions = intOption("sessions", 16);
+    int durationSec = intOption("duration", 30);
+    ReferenceServer server = null;
+    SecureSession.SetupParams template = new SecureSession.SetupParams();
+    if (options.containsKey("host")) {
+      template.ipAddress = options.get("host");
+      template.port = intOption("port", template.port);
+    } else {
+      server = new ReferenceServer();
+      template.ipAddress = "127.0.0.1";
+      template.port = server.getPort();
+    }
+    template.pipelineWindow = intOption("window", 8);
+    template.transport = SecureSession.TransportType.valueOf(
+        options.getOrDefault("transport", template.transport.name()));
+    template.mteVariant = SecureSession.MteVariant.valueOf(
+        options.getOrDefault("variant", template.mteVariant.name()));
+    template.compactHandshake = options.containsKey("compact");
+    template.deliveryInterval = intOption("delivery", 0);
+    if (options.containsKey("compress"))
+      template.compressor = new DeflateCompressor();
+    byte[] payload = createPayload(intOption("size", 256), template);
+    System.out.println("LoadGenerator: " + sessions + " session(s) to " + template.ipAddress + ":"
+                       + template.port + ((server != null) ? " (in-process server)" : "")
+                       + ", window " + template.pipelineWindow + ", " + payload.length
+                       + " byte(s) per request, " + template.transport + ", " + template.mteVariant);
+
+    //-----------------------------------------------------------
+    // Open and secure all sessions first, then start them all at
+    // the same time.
+    //-----------------------------------------------------------
+    CountDownLatch secured = new CountDownLatch(sessions);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    AtomicLong failedSessions = new AtomicLong();
+    for (int i = 0; i < sessions; i++) {
+      SecureSession.SetupParams setupParams = copy(template);
+      Thread thread = new Thread(() -> runSession(setupParams, payload, secured, start,
+                                                  failedSessions), "LoadSession-" + i);
+      threads.add(thread);
+      thread.start();
+    }
+    secured.await();
+    if (failedSessions.get() == sessions) {
+      System.out.println("no session could be secured");
+      return false;
+    }
+    running = true;
+    start.countDown();
+    long startTime = System.nanoTime();
+    long lastMessages = 0;
+    for (int second = 1; second <= durationSec; second++) {
+      Thread.sleep(1000);
+      long total = messages.get();
+      System.out.printf("%4d s  %10d msgs/s  p50 %8.3f ms  p99 %8.3f ms%n", second,
+                        total - lastMessages, ms(latency.percentile(50)),
+                        ms(latency.percentile(99)));
+      lastMessages = total;
+    }
+    running = false;
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    for (Thread thread : threads)
+      thread.join();
+    manager.closeAll();
+    if (server != null)
+      server.close();
+    report(sessions - failedSessions.get(), seconds);
+    return errors.get() == 0;
+  }
+
+
+  //-------------------------------------------------------------------
+  // runSession() runs on the session's own thread: it secures the
+  // session, waits for the start and then keeps the window full until
+  // the run is over.
+  //-------------------------------------------------------------------
+  private void runSession(SecureSession.SetupParams setupParams, byte[] payload,
+                          CountDownLatch secured, CountDownLatch start,
+                          AtomicLong failedSessions) {
+    Semaphore window = new Semaphore(setupParams.pipelineWindow);
+    ArrayDeque<Long> sendTimes = new ArrayDeque<>();
+    LoadClient.ReplyListener replyListener = (requestId, decoded) -> {
+      long sent;
+      synchronized (sendTimes) {
+        sent = sendTimes.poll();
+      }
+      latency.record(System.nanoTime() - sent);
+      if (decoded == null || !Arrays.equals(decoded, payload)) {
+        errors.incrementAndGet();
+      } else {
+        messages.incrementAndGet();
+        bytes.addAndGet(2L * decoded.length);
+      }
+      window.release();
+    };
+    SecureSession session;
+    long setupStart = System.nanoTime();
+    try {
+      session = LoadClient.openSecured(manager, setupParams, replyListener);
+      setupTime.record(System.nanoTime() - setupStart);
+    } catch (IOException e) {
+      System.err.println(Thread.currentThread().getName() + ": " + e.getMessage());
+      failedSessions.incrementAndGet();
+      secured.countDown();
+      return;
+    }
+    secured.countDown();
+    try {
+      start.await();
+      while (running) {
+        if (!window.tryAcquire(100, TimeUnit.MILLISECONDS))
+          continue;
+        SecureSession.Request request;
+        //---------------------------------------------------------
+        // The send time must be queued before the reply can come
+        // in, and only if the request has actually been sent.
+        //---------------------------------------------------------
+        synchronized (sendTimes) {
+          long now = System.nanoTime();
+          request = session.sendRequest(payload);
+          if ((request != null) && (request.encoded != null))
+            sendTimes.add(now);
+        }
+        if (request == null) {
+          // The send queue is full, try again a little later.
+          window.release();
+          Thread.sleep(1);
+        } else if (request.encoded == null) {
+          errors.incrementAndGet();
+          window.release();
+        }
+      }
+      //---------------------------------------------------------
+      // Wait for the replies which are still on their way.
+      //---------------------------------------------------------
+      if (!window.tryAcquire(setupParams.pipelineWindow, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        errors.addAndGet(setupParams.pipelineWindow - window.availablePermits());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    metrics.add(session.getMetrics());
+    manager.closeSession(session);
+  }
+
+
+  private void report(long sessions, double seconds) {
+    System.out.println("----------------------------------------------------------------");
+    System.out.printf("sessions        %d%n", sessions);
+    System.out.printf("duration        %.1f s%n", seconds);
+    System.out.printf("messages        %d (%d error(s))%n", messages.get(), errors.get());
+    System.out.printf("throughput      %.0f msgs/s, %.0f bytes/s (payload, both directions)%n",
+                      messages.get() / seconds, bytes.get() / seconds);
+    System.out.printf("latency         mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, "
+                      + "p99.9 %.3f ms, max %.3f ms%n",
+                      latency.mean() / 1e6, ms(latency.percentile(50)),
+                      ms(latency.percentile(90)), ms(latency.percentile(99)),
+                      ms(latency.percentile(99.9)), ms(latency.max()));
+    System.out.printf("session setup   mean %.3f ms, p99 %.3f ms%n", setupTime.mean() / 1e6,
+                      ms(setupTime.percentile(99)));
+    if (options.containsKey("metrics")) {
+      for (SessionMetrics.Snapshot snapshot : metrics)
+        System.out.println(snapshot);
+    }
+  }
+
+
+  //-------------------------------------------------------------------
+  // With FLEN, every request must fit into the fixed size. With
+  // compression, the payload is text which compresses well; random
+  // bytes would not get any smaller.
+  //-------------------------------------------------------------------
+  private byte[] createPayload(int size, SecureSession.SetupParams setupParams) {
+    if (setupParams.mteVariant == SecureSession.MteVariant.FLEN)
+      size = Math.min(size, setupParams.flenBytes);
+    byte[] payload = new byte[size];
+    if (setupParams.compressor != null) {
+      byte[] text = "The quick brown fox jumps over the lazy dog. ".getBytes(StandardCharsets.UTF_8);
+      for (int i = 0; i < size; i++)
+        payload[i] = text[i % text.length];
+    } else {
+      new Random(size).nextBytes(payload);
+    }
+    return payload;
+  }
+
+
+  private static SecureSession.SetupParams copy(SecureSession.SetupParams template) {
+    SecureSession.SetupParams setupParams = new SecureSession.SetupParams();
+    setupParams.ipAddress = template.ipAddress;
+    setupParams.port = template.port;
+    setupParams.pipelineWindow = template.pipelineWindow;
+    setupParams.transport = template.transport;
+    setupParams.mteVariant = template.mteVariant;
+    setupParams.flenBytes = template.flenBytes;
+    setupParams.compactHandshake = template.compactHandshake;
+    setupParams.compressor = template.compressor;
+    setupParams.deliveryInterval = template.deliveryInterval;
+    return setupParams;
+  }
+
+
+  private int intOption(String name, int defaultValue) {
+    String value = options.get(name);
+    return (value == null) ? defaultValue : Integer.parseInt(value);
+  }
+
+
+  private static double ms(long ns) {
+    return ns / 1e6;
+  }
+}
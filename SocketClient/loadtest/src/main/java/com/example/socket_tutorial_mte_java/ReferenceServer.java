@@ -0,0 +1,513 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import com.eclypses.ecdh.EcdhP256;
+import com.eclypses.mte.MteBase;
+import com.eclypses.mte.MteStatus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+//---------------------------------------------------------------------------------------
+// ReferenceServer is a pure Java stand-in for the tutorial server, so the client can be
+// load tested (see LoadGenerator) and benchmarked without one. It speaks the protocol of
+// SecureSession:
+//   '1' - '4', 'A'   the handshake: the client's four values, answered with "ACK" and
+//                    our own four values (public keys and nonces)
+//   'H'              the compact handshake, answered with 'h'
+//   'V'              the MTE variant (Core, MKE or FLEN, see SecureSession.MteVariant),
+//                    answered with 'E' if it cannot be used
+//   'C'              compression, "deflate" is accepted
+//   'T', 'R'         session tickets and resumption; the states are kept in memory
+//   'm'              decoded, and the plaintext is encoded again and sent back; if it
+//                    cannot be decoded, an empty 'e' frame is sent back instead
+//   'b', 'c', 'z'    one-way messages and streams, decoded and dropped
+//   'K'              heartbeat, answered with 'k'
+// Channels ('x') are not supported. Every connection is served by a thread of its own.
+//
+// Run it on its own with
+//   java ... com.example.socket_tutorial_mte_java.ReferenceServer [port]
+//---------------------------------------------------------------------------------------
+class ReferenceServer implements Closeable {
+
+  private static final int DEFAULT_PORT = 27015;
+
+  private final ServerSocket serverSocket;
+  private final Thread acceptThread;
+  private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+  //-----------------------------------------------------------
+  // The saved Encoder and Decoder states of closed connections,
+  // by the hex string of their session ticket.
+  //-----------------------------------------------------------
+  private final ConcurrentHashMap<String, SavedState> savedStates = new ConcurrentHashMap<>();
+  private volatile Connection lastConnection;
+
+
+  private static class SavedState {
+    final SecureSession.MteVariant variant;
+    final int flenBytes;
+    final byte[] encoderState;
+    final byte[] decoderState;
+
+    SavedState(SecureSession.MteVariant variant, int flenBytes, byte[] encoderState,
+               byte[] decoderState) {
+      this.variant = variant;
+      this.flenBytes = flenBytes;
+      this.encoderState = encoderState;
+      this.decoderState = decoderState;
+    }
+  }
+
+
+  //---------------------------------------------------------------
+  // This constructor listens on the loopback interface on a port
+  // chosen by the system, see getPort().
+  //---------------------------------------------------------------
+  ReferenceServer() throws IOException {
+    this(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+
+  ReferenceServer(InetSocketAddress address) throws IOException {
+    serverSocket = new ServerSocket();
+    serverSocket.bind(address, 128);
+    acceptThread = new Thread(this::acceptLoop, "ReferenceServer");
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+  }
+
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    if (!MteBase.initLicense("Eclypses Inc", "Eclypses123")) {
+      System.err.println("MTE license check failed");
+      System.exit(1);
+    }
+    ReferenceServer server = new ReferenceServer(new InetSocketAddress(port));
+    System.out.println("ReferenceServer listening on port " + server.getPort()
+                       + ", MTE " + MteBase.getVersion());
+    server.acceptThread.join();
+  }
+
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+
+  int connectionCount() {
+    return connections.size();
+  }
+
+
+  //---------------------------------------------------------------
+  // The connection accepted last, e.g. to encode data the client's
+  // Decoder can decode (see Connection.encode()).
+  //---------------------------------------------------------------
+  Connection lastConnection() {
+    return lastConnection;
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    for (Connection connection : connections)
+      connection.close();
+  }
+
+
+  private void acceptLoop() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Connection connection = new Connection(serverSocket.accept());
+        connections.add(connection);
+        lastConnection = connection;
+        Thread thread = new Thread(connection::serve, "ReferenceServer-connection");
+        thread.setDaemon(true);
+        thread.start();
+      } catch (IOException e) {
+        // The server socket has been closed.
+      }
+    }
+  }
+
+
+  class Connection {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private SecureSession.MteVariant variant = SecureSession.MteVariant.CORE;
+    private int flenBytes;
+    private Compressor compressor;
+    private byte[] ticket;
+    //-----------------------------------------------------------
+    // The handshake values of the client: public keys and
+    // personalization strings of its Encoder and its Decoder.
+    //-----------------------------------------------------------
+    private byte[] peerEncoderKey;
+    private byte[] peerEncoderPersonalization;
+    private byte[] peerDecoderKey;
+    private byte[] peerDecoderPersonalization;
+    //-----------------------------------------------------------
+    // Our own values: public keys and nonces of our Encoder and
+    // our Decoder.
+    //-----------------------------------------------------------
+    private byte[] encoderKey;
+    private byte[] encoderNonce;
+    private byte[] decoderKey;
+    private byte[] decoderNonce;
+    private volatile MteEncoder encoder;
+    private volatile MteDecoder decoder;
+    private boolean streamDecrypting;
+
+    Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      socket.setTcpNoDelay(true);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    //-----------------------------------------------------------
+    // encode() encodes data with the Encoder of this connection,
+    // which is the peer of the client's Decoder. Anything encoded
+    // here must be decoded by the client in the same order.
+    //-----------------------------------------------------------
+    synchronized byte[] encode(byte[] data) {
+      MteBase.ArrStatus result = encoder.encode(data);
+      return (result.status == MteStatus.mte_status_success) ? result.arr : null;
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Nothing we can do about it.
+      }
+    }
+
+    private void serve() {
+      try {
+        while (true) {
+          int length = in.readInt();
+          if ((length < 0) || (length > FrameTransport.MAX_FRAME_LENGTH))
+            throw new IOException("invalid frame length " + length);
+          int type = in.readUnsignedByte();
+          byte[] payload = new byte[length];
+          in.readFully(payload);
+          frameReceived(type, payload);
+        }
+      } catch (EOFException e) {
+        // The client closed the connection.
+      } catch (IOException e) {
+        // The connection broke down or has been closed.
+      }
+      // The state is saved before the connection counts as gone.
+      close();
+      saveState();
+      connections.remove(this);
+    }
+
+    private void frameReceived(int type, byte[] payload) throws IOException {
+      boolean compressed = (type & Compressor.COMPRESSED) != 0;
+      switch (type & ~Compressor.COMPRESSED) {
+        case '1':
+          peerEncoderKey = payload;
+          break;
+        case '2':
+          peerEncoderPersonalization = payload;
+          break;
+        case '3':
+          peerDecoderKey = payload;
+          break;
+        case '4':
+          peerDecoderPersonalization = payload;
+          //-------------------------------------------------------
+          // The client sends its four values in order, so this is
+          // the last one.
+          //-------------------------------------------------------
+          if (!setup()) {
+            send('E', "ERR".getBytes(StandardCharsets.UTF_8));
+            break;
+          }
+          send('A', "ACK".getBytes(StandardCharsets.UTF_8));
+          send('1', encoderKey);
+          send('2', encoderNonce);
+          send('3', decoderKey);
+          send('4', decoderNonce);
+          break;
+        case 'H':
+          compactHandshake(ByteBuffer.wrap(payload));
+          break;
+        case 'V':
+          variantReceived(new String(payload, StandardCharsets.UTF_8));
+          break;
+        case 'C': {
+          Compressor deflate = new DeflateCompressor();
+          compressor = new String(payload, StandardCharsets.UTF_8).equals(deflate.name())
+                       ? deflate : null;
+          send('C', (compressor == null) ? new byte[0]
+                                         : compressor.name().getBytes(StandardCharsets.UTF_8));
+          break;
+        }
+        case 'T':
+          ticket = payload;
+          break;
+        case 'R':
+          resume(payload);
+          break;
+        case 'm': {
+          //-------------------------------------------------------
+          // Every request gets an answer, so the client does not
+          // wait forever for its window to free up.
+          //-------------------------------------------------------
+          byte[] decoded = decode(payload, compressed);
+          if (decoded != null)
+            echo(decoded, compressed);
+          else
+            send('e', new byte[0]);
+          break;
+        }
+        case 'b':
+          decode(payload, compressed);
+          break;
+        case 'c':
+          if ((decoder != null) && decoder.canDecryptChunks()) {
+            if (!streamDecrypting)
+              streamDecrypting = decoder.startDecrypt() == MteStatus.mte_status_success;
+            decoder.decryptChunk(payload);
+          } else {
+            decode(payload, compressed);
+          }
+          break;
+        case 'z':
+          if (streamDecrypting) {
+            streamDecrypting = false;
+            decoder.finishDecrypt();
+          }
+          break;
+        case 'K':
+          send('k', payload);
+          break;
+        default:
+          // 'A' from the client and anything we do not know about.
+          break;
+      }
+    }
+
+    private void variantReceived(String name) throws IOException {
+      if (name.equals("MKE")) {
+        variant = SecureSession.MteVariant.MKE;
+      } else if (name.startsWith("FLEN:")) {
+        try {
+          flenBytes = Integer.parseInt(name.substring(5));
+        } catch (NumberFormatException e) {
+          send('E', "ERR".getBytes(StandardCharsets.UTF_8));
+          return;
+        }
+        variant = SecureSession.MteVariant.FLEN;
+      }
+    }
+
+    //-----------------------------------------------------------
+    // setup() creates our values and our Encoder and Decoder from
+    // them and the client's values.
+    //-----------------------------------------------------------
+    private boolean setup() throws IOException {
+      encoderKey = new byte[EcdhP256.SzPublicKey];
+      decoderKey = new byte[EcdhP256.SzPublicKey];
+      encoderNonce = createNonce();
+      decoderNonce = createNonce();
+      //-----------------------------------------------------------
+      // Our Encoder is the peer of the client's Decoder and vice
+      // versa.
+      //-----------------------------------------------------------
+      MteEncoder encoder = MteEncoder.create(variant, flenBytes);
+      encoder.setEntropy(createSecret(encoderKey, peerDecoderKey));
+      encoder.setNonce(encoderNonce);
+      if (encoder.instantiate(new String(peerDecoderPersonalization, StandardCharsets.UTF_8))
+          != MteStatus.mte_status_success)
+        return false;
+      MteDecoder decoder = MteDecoder.create(variant, 0, 0);
+      decoder.setEntropy(createSecret(decoderKey, peerEncoderKey));
+      decoder.setNonce(decoderNonce);
+      if (decoder.instantiate(new String(peerEncoderPersonalization, StandardCharsets.UTF_8))
+          != MteStatus.mte_status_success)
+        return false;
+      this.encoder = encoder;
+      this.decoder = decoder;
+      return true;
+    }
+
+    private void compactHandshake(ByteBuffer hello) throws IOException {
+      try {
+        peerEncoderKey = getField(hello);
+        peerDecoderKey = getField(hello);
+        peerEncoderPersonalization = getField(hello);
+        peerDecoderPersonalization = getField(hello);
+      } catch (BufferUnderflowException e) {
+        send('E', "ERR".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      if (!setup()) {
+        send('E', "ERR".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      ByteBuffer reply = ByteBuffer.allocate(8 + encoderKey.length + encoderNonce.length
+                                             + decoderKey.length + decoderNonce.length);
+      putField(reply, encoderKey);
+      putField(reply, encoderNonce);
+      putField(reply, decoderKey);
+      putField(reply, decoderNonce);
+      send('h', reply.array());
+    }
+
+    private void resume(byte[] ticket) throws IOException {
+      SavedState state = savedStates.remove(SecureSession.bytesToHex(ticket));
+      if ((state != null) && (state.variant == variant)) {
+        MteEncoder encoder = MteEncoder.create(state.variant, state.flenBytes);
+        MteDecoder decoder = MteDecoder.create(state.variant, 0, 0);
+        if ((encoder.restoreState(state.encoderState) == MteStatus.mte_status_success)
+            && (decoder.restoreState(state.decoderState) == MteStatus.mte_status_success)) {
+          this.ticket = ticket;
+          this.encoder = encoder;
+          this.decoder = decoder;
+          send('r', "ACK".getBytes(StandardCharsets.UTF_8));
+          return;
+        }
+      }
+      send('r', "ERR".getBytes(StandardCharsets.UTF_8));
+    }
+
+    //-----------------------------------------------------------
+    // saveState() keeps the states of our Encoder and Decoder for
+    // a resumption, if the client has given us a ticket.
+    //-----------------------------------------------------------
+    private void saveState() {
+      if ((ticket == null) || (encoder == null) || (decoder == null))
+        return;
+      savedStates.put(SecureSession.bytesToHex(ticket),
+                      new SavedState(variant, flenBytes, encoder.saveState(),
+                                     decoder.saveState()));
+    }
+
+    private byte[] decode(byte[] data, boolean compressed) {
+      if (decoder == null)
+        return null;
+      MteBase.ArrStatus result = decoder.decode(data);
+      if (MteBase.statusIsError(result.status))
+        return null;
+      if (!compressed)
+        return result.arr;
+      if (compressor == null)
+        return null;
+      try {
+        return compressor.decompress(result.arr, 0, result.arr.length);
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
+    //-----------------------------------------------------------
+    // echo() sends the data back, compressed if the client sent it
+    // compressed and it gets any smaller.
+    //-----------------------------------------------------------
+    private void echo(byte[] data, boolean compress) throws IOException {
+      int type = 'm';
+      if (compress && (compressor != null)) {
+        byte[] compressed = compressor.compress(data, 0, data.length);
+        if (compressed.length < data.length) {
+          data = compressed;
+          type |= Compressor.COMPRESSED;
+        }
+      }
+      byte[] encoded = encode(data);
+      if (encoded != null)
+        send(type, encoded);
+    }
+
+    private void send(int type, byte[] payload) throws IOException {
+      synchronized (out) {
+        out.writeInt(payload.length);
+        out.writeByte(type);
+        out.write(payload);
+        out.flush();
+      }
+    }
+  }
+
+
+  //-------------------------------------------------------------------
+  // createSecret() creates a key pair, puts its public key into
+  // "publicKey" and returns the secret shared with "peerKey".
+  //-------------------------------------------------------------------
+  private static byte[] createSecret(byte[] publicKey, byte[] peerKey) throws IOException {
+    EcdhP256 ecdh = new EcdhP256();
+    byte[] secret = new byte[EcdhP256.SzSecretData];
+    if ((ecdh.createKeyPair(publicKey) != EcdhP256.Success)
+        || (ecdh.getSharedSecret(peerKey, secret) != EcdhP256.Success))
+      throw new IOException("ECDH key exchange failed");
+    return secret;
+  }
+
+
+  private static byte[] createNonce() throws IOException {
+    byte[] nonce = new byte[MteBase.getDrbgsNonceMinBytes(MteBase.getDefaultDrbg())];
+    if (EcdhP256.getRandom(nonce) != EcdhP256.Success)
+      throw new IOException("no random data for the nonce");
+    return nonce;
+  }
+
+
+  private static void putField(ByteBuffer buffer, byte[] field) {
+    buffer.putShort((short) field.length);
+    buffer.put(field);
+  }
+
+
+  private static byte[] getField(ByteBuffer buffer) {
+    byte[] field = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(field);
+    return field;
+  }
+}
@@ -0,0 +1,291 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.eclypses.ecdh.EcdhP256;
+import com.eclypses.mte.MteBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+//---------------------------------------------------------------------------------------
+// These tests run the handshakes of SecureSession against the ReferenceServer and check
+// that the Encoders and Decoders of both sides are in step afterwards. They need the MTE
+// and ECDH native libraries (see -PmteLibDir in build.gradle) and are skipped without.
+//---------------------------------------------------------------------------------------
+public class HandshakeTest {
+
+  private static final byte[] NOT_DECODED = new byte[0];
+
+  //-----------------------------------------------------------------
+  // MemorySessionStore keeps tickets and states in plain memory,
+  // which is good enough for a test.
+  //-----------------------------------------------------------------
+  private static class MemorySessionStore implements SessionStore {
+    final Map<String, byte[]> values = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, byte[] value) {
+      values.put(key, value.clone());
+    }
+
+    @Override
+    public byte[] get(String key) {
+      byte[] value = values.get(key);
+      return (value == null) ? null : value.clone();
+    }
+
+    @Override
+    public void remove(String key) {
+      values.remove(key);
+    }
+
+    boolean holds(String keyPrefix) {
+      for (String key : values.keySet()) {
+        if (key.startsWith(keyPrefix))
+          return true;
+      }
+      return false;
+    }
+  }
+
+  private final BlockingQueue<byte[]> replies = new LinkedBlockingQueue<>();
+  private final MemorySessionStore store = new MemorySessionStore();
+  private final List<SessionManager> managers = new ArrayList<>();
+  private ReferenceServer server;
+  private SessionManager manager;
+
+
+  @BeforeClass
+  public static void checkNativeLibraries() {
+    try {
+      MteBase.getVersion();
+      new EcdhP256();
+    } catch (LinkageError e) {
+      Assume.assumeNoException("MTE native libraries not available", e);
+    }
+  }
+
+
+  @Before
+  public void setUp() throws IOException {
+    server = new ReferenceServer();
+    manager = newManager();
+  }
+
+
+  @After
+  public void tearDown() throws IOException {
+    for (SessionManager sessionManager : managers)
+      sessionManager.closeAll();
+    server.close();
+  }
+
+
+  @Test
+  public void fullHandshakeSecuresTheSession() throws Exception {
+    SecureSession session = open(setupParams());
+    assertRoundTrip(session, "full");
+  }
+
+
+  @Test
+  public void compactHandshakeSecuresTheSession() throws Exception {
+    SecureSession.SetupParams setupParams = setupParams();
+    setupParams.compactHandshake = true;
+    SecureSession session = open(setupParams);
+    assertRoundTrip(session, "compact");
+    assertRoundTrip(session, "and again");
+  }
+
+
+  @Test
+  public void closedSessionIsResumed() throws Exception {
+    SecureSession.SetupParams setupParams = setupParams();
+    setupParams.resumeSessions = true;
+    SecureSession session = open(setupParams);
+    assertRoundTrip(session, "before");
+    manager.closeSession(session);
+    awaitClosedOnServer();
+    assertTrue(store.holds("state/"));
+
+    //-------------------------------------------------------------
+    // As after a restart of the app: a new SessionManager, whose
+    // first session has the same id as the one closed above.
+    //-------------------------------------------------------------
+    SecureSession resumed = LoadClient.openSecured(newManager(), setupParams, this::replyReceived);
+    assertEquals(session.getId(), resumed.getId());
+    assertRoundTrip(resumed, "after");
+    // A saved state is used once only, but the ticket is kept; a full setup would drop it.
+    assertFalse(store.holds("state/"));
+    assertTrue(store.holds("ticket/"));
+  }
+
+
+  @Test
+  public void refusedResumptionRunsTheFullSetup() throws Exception {
+    SecureSession.SetupParams setupParams = setupParams();
+    setupParams.resumeSessions = true;
+    //-------------------------------------------------------------
+    // A ticket the server has never seen, for the first session of
+    // the manager (see SecureSession.ticketKey()).
+    //-------------------------------------------------------------
+    byte[] ticket = new byte[16];
+    store.put("ticket/127.0.0.1:" + server.getPort() + "#1", ticket);
+    store.put("state/" + SecureSession.bytesToHex(ticket), new byte[4]);
+
+    SecureSession session = open(setupParams);
+    assertRoundTrip(session, "full setup after all");
+    assertFalse(store.holds("ticket/"));
+    assertFalse(store.holds("state/"));
+  }
+
+
+  @Test
+  public void mkeSessionSendsRequestsAndStreams() throws Exception {
+    SecureSession.SetupParams setupParams = setupParams();
+    setupParams.mteVariant = SecureSession.MteVariant.MKE;
+    SecureSession session = open(setupParams);
+    assertRoundTrip(session, "mke");
+
+    byte[] data = new byte[100000];
+    CompletableFuture<Long> streamed = new CompletableFuture<>();
+    assertTrue(session.sendStream(new ByteArrayInputStream(data), (success, bytes) -> {
+      if (success)
+        streamed.complete(bytes);
+      else
+        streamed.completeExceptionally(new IOException("stream failed"));
+    }));
+    assertEquals(Long.valueOf(data.length), streamed.get(10, TimeUnit.SECONDS));
+    // The stream has left both sides in step.
+    assertRoundTrip(session, "after the stream");
+  }
+
+
+  @Test
+  public void flenSessionOnlySendsWhatFitsIntoItsSize() throws Exception {
+    SecureSession.SetupParams setupParams = setupParams();
+    setupParams.mteVariant = SecureSession.MteVariant.FLEN;
+    setupParams.flenBytes = 8;
+    SecureSession session = open(setupParams);
+    assertRoundTrip(session, "8 bytes!");
+
+    assertNull(session.sendRequest(new byte[9]));
+    assertFalse(session.sendMessage(new byte[1]));
+    assertFalse(session.sendStream(new ByteArrayInputStream(new byte[1]), null));
+    // Nothing has been encoded for the refused data.
+    assertRoundTrip(session, "8 again!");
+  }
+
+
+  @Test
+  public void requestTheServerCannotDecodeIsAnswered() throws Exception {
+    SecureSession session = open(setupParams());
+    // Not MTE encoded, so the server cannot decode it.
+    assertTrue(session.sendToServer('m', new byte[] { 1, 2, 3 }));
+    byte[] reply = replies.poll(10, TimeUnit.SECONDS);
+    assertNotNull("no answer to a request which could not be decoded", reply);
+    assertArrayEquals(NOT_DECODED, reply);
+  }
+
+
+  //-----------------------------------------------------------------
+  // Helpers
+  //-----------------------------------------------------------------
+  private SessionManager newManager() {
+    SessionManager sessionManager = new SessionManager();
+    sessionManager.setSessionStore(store);
+    managers.add(sessionManager);
+    return sessionManager;
+  }
+
+
+  private SecureSession.SetupParams setupParams() {
+    SecureSession.SetupParams setupParams = new SecureSession.SetupParams();
+    setupParams.ipAddress = "127.0.0.1";
+    setupParams.port = server.getPort();
+    setupParams.deliveryInterval = 0;
+    return setupParams;
+  }
+
+
+  private SecureSession open(SecureSession.SetupParams setupParams) throws IOException {
+    return LoadClient.openSecured(manager, setupParams, this::replyReceived);
+  }
+
+
+  private void replyReceived(long requestId, byte[] decoded) {
+    replies.add((decoded != null) ? decoded : NOT_DECODED);
+  }
+
+
+  //-----------------------------------------------------------------
+  // awaitClosedOnServer() waits until the server has seen all
+  // connections closed and saved their states.
+  //-----------------------------------------------------------------
+  private void awaitClosedOnServer() throws InterruptedException {
+    for (int i = 0; (i < 100) && (server.connectionCount() > 0); i++)
+      Thread.sleep(50);
+    assertEquals(0, server.connectionCount());
+  }
+
+
+  //-----------------------------------------------------------------
+  // assertRoundTrip() sends a request, which the server decodes and
+  // sends back encoded again, and checks the decoded reply.
+  //-----------------------------------------------------------------
+  private void assertRoundTrip(SecureSession session, String text) throws InterruptedException {
+    byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    assertNotNull(session.sendRequest(data));
+    byte[] reply = replies.poll(10, TimeUnit.SECONDS);
+    assertNotNull("no reply to \"" + text + "\"", reply);
+    assertArrayEquals(data, reply);
+  }
+}
@@ -0,0 +1,118 @@
+//**************************************************************************************************
+// The MIT License (MIT)
+//
+// Copyright (c) Eclypses, Inc.
+//
+// All rights reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+//**************************************************************************************************
+package com.example.socket_tutorial_mte_java;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+//---------------------------------------------------------------------------------------
+// These tests talk to the ReferenceServer through a plain socket and only use frames
+// which need no MTE, so they run without the native libraries.
+//---------------------------------------------------------------------------------------
+public class ReferenceServerTest {
+
+  private ReferenceServer server;
+  private Socket socket;
+  private DataInputStream in;
+  private DataOutputStream out;
+
+
+  @Before
+  public void setUp() throws IOException {
+    server = new ReferenceServer();
+    socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    socket.setSoTimeout(10000);
+    in = new DataInputStream(socket.getInputStream());
+    out = new DataOutputStream(socket.getOutputStream());
+  }
+
+
+  @After
+  public void tearDown() throws IOException {
+    socket.close();
+    server.close();
+  }
+
+
+  @Test
+  public void heartbeatIsAnswered() throws IOException {
+    byte[] ping = { 1, 2, 3, 4, 5, 6, 7, 8 };
+    send(Heartbeat.PING, ping);
+    assertArrayEquals(ping, receive(Heartbeat.PONG));
+  }
+
+
+  @Test
+  public void invalidFixedLengthIsRefused() throws IOException {
+    send('V', "FLEN:eight".getBytes(StandardCharsets.UTF_8));
+    assertArrayEquals("ERR".getBytes(StandardCharsets.UTF_8), receive('E'));
+    // The connection is still being served.
+    send(Heartbeat.PING, new byte[8]);
+    receive(Heartbeat.PONG);
+    assertEquals(1, server.connectionCount());
+  }
+
+
+  @Test
+  public void requestWhichCannotBeDecodedIsAnswered() throws IOException {
+    // Without a handshake, there is no Decoder to decode it.
+    send('m', new byte[] { 1, 2, 3 });
+    assertEquals(0, receive('e').length);
+  }
+
+
+  //-----------------------------------------------------------------
+  // Helpers
+  //-----------------------------------------------------------------
+  private void send(int type, byte[] payload) throws IOException {
+    out.writeInt(payload.length);
+    out.writeByte(type);
+    out.write(payload);
+    out.flush();
+  }
+
+
+  private byte[] receive(int expectedType) throws IOException {
+    int length = in.readInt();
+    assertEquals(expectedType, in.readUnsignedByte());
+    byte[] payload = new byte[length];
+    in.readFully(payload);
+    return payload;
+  }
+}